@@ -9,16 +9,7 @@ import android.widget.FrameLayout;
 import com.badlogic.gdx.ApplicationListener;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.*;
-import com.badlogic.gdx.graphics.Mesh;
-import com.badlogic.gdx.graphics.g3d.Material;
-import com.badlogic.gdx.graphics.g3d.ModelBatch;
-import com.badlogic.gdx.graphics.g3d.ModelInstance;
-import com.badlogic.gdx.graphics.g3d.model.MeshPart;
-import com.badlogic.gdx.graphics.g3d.model.Node;
-import com.badlogic.gdx.graphics.g3d.model.NodePart;
-import com.badlogic.gdx.graphics.g3d.utils.MeshPartBuilder;
-import com.badlogic.gdx.graphics.g3d.utils.ModelBuilder;
-import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.graphics.g3d.Shader;
 import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.utils.*;
 import com.google.ar.core.*;
@@ -32,7 +23,10 @@ import com.google.ar.core.exceptions.CameraNotAvailableException;
 import games.rednblack.gdxar.*;
 import games.rednblack.gdxar.android.util.ARCoreToGdxAR;
 import games.rednblack.gdxar.android.util.InstructionsController;
-import games.rednblack.gdxar.util.DebugShaderProvider;
+import games.rednblack.gdxar.util.DebugPlaneRenderer;
+import games.rednblack.gdxar.util.PlaneMaterial;
+import games.rednblack.gdxar.util.PlaneOcclusionRenderer;
+import games.rednblack.gdxar.util.ProgramBinaryCache;
 import games.rednblack.gdxar.util.RawAugmentedImageAsset;
 
 /**
@@ -45,12 +39,21 @@ import games.rednblack.gdxar.util.RawAugmentedImageAsset;
  * @author fgnm
  */
 public class ARCoreApplication implements ApplicationListener, GdxAR {
+    private static final String PROGRAM_BINARY_CACHE_DIR = "gdxar/programs";
+
     // The camera which is controlled by the ARCore pose.
     private PerspectiveCamera arCamera;
     // Renderer for the camera image which is the background for the ARCore app.
     private BackgroundRenderer backgroundRenderer;
-    // Drawing batch.
-    private ModelBatch debugModelBatch;
+    // Plane outlines drawn in debug mode.
+    private DebugPlaneRenderer debugPlaneRenderer;
+    private PlaneOcclusionRenderer planeOcclusionRenderer;
+    // Keeps the plane shader program compiled when warm up is enabled.
+    private Shader planeShader;
+    // CPU depth image of the current frame, acquired on demand.
+    private final DepthImageSource depthImageSource = new DepthImageSource();
+    // CPU camera image of the current frame, acquired on demand.
+    private final CameraImageSource cameraImageSource = new CameraImageSource();
 
     protected GdxArApplicationListener gdxArApplicationListener;
     protected GdxARConfiguration gdxARConfiguration;
@@ -64,21 +67,29 @@ public class ARCoreApplication implements ApplicationListener, GdxAR {
     protected boolean renderAR = false;
     protected boolean enableSurfaceGeometry = false;
     protected final GdxFrame frameInstance;
-
-    private final Array<ModelInstance> planeInstances = new Array<>();
-    private final IntMap<ModelInstance> polygonsCache = new IntMap<>();
-    private final ModelBuilder builder = new ModelBuilder();
-    private final float[] tmpVerts = new float[14];
+    protected final GdxFrameExchange frameExchange;
+    protected final PosePredictor posePredictor = new PosePredictor();
+    protected final PlaneRaycaster planeRaycaster = new PlaneRaycaster();
+    protected final PlaneGrid planeGrid = new PlaneGrid();
+    protected final HitTestQueue hitTestQueue = new HitTestQueue();
+    protected final PoseFilter poseFilter;
 
     private InstructionsController instructionsController;
     private Earth earth;
 
+    // Frame used to resolve queued hit tests.
+    private Frame hitTestFrame;
+    private final HitTestQueue.Resolver hitTestResolver = this::resolveHitTest;
+
     public ARCoreApplication(GdxArApplicationListener gdxArApplicationListener, GdxARConfiguration gdxARConfiguration) {
         this.gdxArApplicationListener = gdxArApplicationListener;
         this.gdxArApplicationListener.setArAPI(this);
         this.gdxARConfiguration = new GdxARConfiguration(gdxARConfiguration);
 
         frameInstance = new GdxFrame();
+        frameInstance.setDeltaMode(this.gdxARConfiguration.enableDeltaFrame);
+        frameExchange = new GdxFrameExchange(frameInstance.getTrackableRegistry());
+        poseFilter = new PoseFilter(this.gdxARConfiguration);
     }
 
     @Override
@@ -152,6 +163,26 @@ public class ARCoreApplication implements ApplicationListener, GdxAR {
         return arCamera;
     }
 
+    @Override
+    public PosePredictor getPosePredictor() {
+        return posePredictor;
+    }
+
+    @Override
+    public PlaneRaycaster getPlaneRaycaster() {
+        return planeRaycaster;
+    }
+
+    @Override
+    public PlaneGrid getPlaneGrid() {
+        return planeGrid;
+    }
+
+    @Override
+    public PlaneGraph getPlaneGraph() {
+        return frameInstance.getTrackableRegistry().getPlaneGraph();
+    }
+
     /**
      * Get current ARCore session from framework.
      *
@@ -173,9 +204,15 @@ public class ARCoreApplication implements ApplicationListener, GdxAR {
         arCamera.far = 30f;
         arCamera.update();
 
+        if (gdxARConfiguration.enableProgramBinaryCache)
+            ProgramBinaryCache.setBackend(new ProgramBinaryHandler(), Gdx.files.local(PROGRAM_BINARY_CACHE_DIR));
         backgroundRenderer = new BackgroundRenderer();
 
-        debugModelBatch = new ModelBatch(new DebugShaderProvider());
+        debugPlaneRenderer = new DebugPlaneRenderer();
+        if (gdxARConfiguration.occlusionMode != GdxOcclusionMode.DISABLED)
+            planeOcclusionRenderer = new PlaneOcclusionRenderer();
+        if (gdxARConfiguration.enablePlaneShaderWarmUp)
+            planeShader = PlaneMaterial.warmUp();
 
         sessionConfig = new Config(getSession());
         sessionConfig.setUpdateMode(Config.UpdateMode.LATEST_CAMERA_IMAGE);
@@ -183,7 +220,7 @@ public class ARCoreApplication implements ApplicationListener, GdxAR {
         cameraConfigFilter = new CameraConfigFilter(getSession());
 
         //Setup Depth
-        if (gdxARConfiguration.enableDepth) {
+        if (gdxARConfiguration.enableDepth || gdxARConfiguration.occlusionMode == GdxOcclusionMode.DEPTH) {
             // Check whether the user's device supports the Depth API.
             boolean isDepthSupported = getSession().isDepthModeSupported(Config.DepthMode.AUTOMATIC);
             if (isDepthSupported) {
@@ -273,34 +310,44 @@ public class ARCoreApplication implements ApplicationListener, GdxAR {
 
             backgroundRenderer.render(frame);
 
+            // Resolve queued hit tests on every frame, they miss while tracking or planes are not available
+            hitTestFrame = frame;
+            hitTestQueue.resolve(hitTestResolver);
+            hitTestFrame = null;
+
             Collection<Plane> surfaces = getSession().getAllTrackables(Plane.class);
             // If we're still loading/detecting planes, just return.
             if (handleLoadingMessage(frame, surfaces)) {
+                frameInstance.beginUpdate();
+
                 frame.getCamera().getProjectionMatrix(cameraProjectionMatrix, 0, arCamera.near, arCamera.far);
-                arCamera.projection.set(cameraProjectionMatrix);
+                frameInstance.cameraProjection.set(cameraProjectionMatrix);
                 frame.getCamera().getViewMatrix(cameraProjectionMatrix, 0);
-                arCamera.view.set(cameraProjectionMatrix);
-                arCamera.combined.set(arCamera.projection);
-                Matrix4.mul(arCamera.combined.val, arCamera.view.val);
-
-                frameInstance.reset();
-                planeInstances.clear();
-
-                for (Plane plane : surfaces) {
-                    GdxPlane gdxPlane = ARCoreToGdxAR.createGdxPlane(plane, enableSurfaceGeometry);
-                    frameInstance.addPlane(gdxPlane);
-                    if (gdxARConfiguration.debugMode)
-                        addPlane(plane, gdxPlane);
-                }
+                frameInstance.cameraView.set(cameraProjectionMatrix);
+                frameInstance.timestamp = frame.getTimestamp();
+
+                if (frameInstance.isDeltaMode()) {
+                    updateFrameDelta(frame, surfaces);
+                } else {
+                    TrackableRegistry registry = frameInstance.getTrackableRegistry();
+                    for (Plane plane : surfaces) {
+                        if (dropIfSubsumed(plane)) continue;
+                        GdxPlane gdxPlane = ARCoreToGdxAR.createGdxPlane(plane, enableSurfaceGeometry, registry);
+                        frameInstance.addPlane(gdxPlane);
+                        evictIfStopped(gdxPlane);
+                    }
 
-                for (Anchor anchor : frame.getUpdatedAnchors()) {
-                    GdxAnchor gdxAnchor = ARCoreToGdxAR.createGdxAnchor(anchor);
-                    frameInstance.addAnchor(gdxAnchor);
-                }
+                    for (Anchor anchor : frame.getUpdatedAnchors()) {
+                        GdxAnchor gdxAnchor = ARCoreToGdxAR.createGdxAnchor(anchor, registry);
+                        frameInstance.addAnchor(gdxAnchor);
+                        evictIfStopped(gdxAnchor);
+                    }
 
-                for (AugmentedImage img : frame.getUpdatedTrackables(AugmentedImage.class)) {
-                    GdxAugmentedImage augmentedImage = ARCoreToGdxAR.createGdxAugmentedImage(img);
-                    frameInstance.addAugmentedImage(augmentedImage);
+                    for (AugmentedImage img : frame.getUpdatedTrackables(AugmentedImage.class)) {
+                        GdxAugmentedImage augmentedImage = ARCoreToGdxAR.createGdxAugmentedImage(img, registry);
+                        frameInstance.addAugmentedImage(augmentedImage);
+                        evictIfStopped(augmentedImage);
+                    }
                 }
 
                 // Get the light estimate for the current frame.
@@ -330,36 +377,48 @@ public class ARCoreApplication implements ApplicationListener, GdxAR {
                     frameInstance.lightColor.set(colorCorrection[0], colorCorrection[1], colorCorrection[2], 1);
                 }
 
+                poseFilter.apply(frameInstance);
+                frameExchange.publish(frameInstance);
+                GdxFrame gdxFrame = frameExchange.acquire();
+                gdxFrame.applyCamera(arCamera);
                 if (gdxARConfiguration.enableDepth) {
-                    /*Gdx.gl.glDepthMask(true);
-                    Gdx.gl.glDepthFunc(GL20.GL_LESS);
-                    Gdx.gl.glEnable(GL20.GL_DEPTH_TEST);
-                    Gdx.gl.glEnable(GL20.GL_CULL_FACE);
-                    Gdx.gl.glCullFace(GL20.GL_FRONT_AND_BACK);
-                    Gdx.gl.glColorMask(false, false, false, false);
-
-                    try {
-                        backgroundRenderer.renderDepth(frame);
-                    } catch (NotYetAvailableException e) {
-                        e.printStackTrace();
-                    }
+                    depthImageSource.setFrame(frame);
+                    gdxFrame.setDepthSource(depthImageSource);
+                } else {
+                    gdxFrame.setDepthSource(null);
+                }
+                cameraImageSource.setFrame(frame);
+                gdxFrame.setCameraSource(cameraImageSource);
+                planeRaycaster.update(gdxFrame);
+                if (gdxARConfiguration.enablePlaneGrid)
+                    planeGrid.update(gdxFrame);
+                if (gdxARConfiguration.enablePosePrediction) {
+                    posePredictor.update(gdxFrame);
+                    posePredictor.predictCamera(posePredictor.getDisplayTime(), arCamera);
+                }
 
-                    Gdx.gl.glColorMask(true, true, true, true);
-                    Gdx.gl.glDepthFunc(GL20.GL_EQUAL);*/
+                if (planeOcclusionRenderer != null) {
+                    // Planes are the fallback while depth is not available
+                    GdxDepthImage depthImage = gdxARConfiguration.occlusionMode == GdxOcclusionMode.DEPTH ? gdxFrame.getDepthImage() : null;
+                    if (depthImage == null || !backgroundRenderer.renderOcclusion(depthImage, arCamera, gdxARConfiguration.occlusionDownsample))
+                        planeOcclusionRenderer.render(gdxFrame, arCamera);
                 }
 
                 if (gdxARConfiguration.debugMode) {
-                    Gdx.gl.glLineWidth(10);
-                    debugModelBatch.begin(arCamera);
-                    debugModelBatch.render(planeInstances);
-                    debugModelBatch.end();
-                    Gdx.gl.glLineWidth(1);
+                    debugPlaneRenderer.render(gdxFrame, arCamera);
                 }
 
-                gdxArApplicationListener.renderARModels(frameInstance);
+                gdxArApplicationListener.renderARModels(gdxFrame);
 
                 gdxArApplicationListener.arPipelineEnd();
+                gdxFrame.setDepthSource(null);
+                depthImageSource.release();
+                // Images still referenced by the application stay alive until released
+                gdxFrame.setCameraSource(null);
+                cameraImageSource.setFrame(null);
             }
+        } else {
+            hitTestQueue.cancelAll();
         }
 
         gdxArApplicationListener.render();
@@ -390,6 +449,14 @@ public class ARCoreApplication implements ApplicationListener, GdxAR {
     @Override
     public void dispose() {
         gdxArApplicationListener.dispose();
+        if (backgroundRenderer != null)
+            backgroundRenderer.dispose();
+        if (debugPlaneRenderer != null)
+            debugPlaneRenderer.dispose();
+        if (planeOcclusionRenderer != null)
+            planeOcclusionRenderer.dispose();
+        if (planeShader != null)
+            planeShader.dispose();
     }
 
     @Override
@@ -408,34 +475,18 @@ public class ARCoreApplication implements ApplicationListener, GdxAR {
         if (!renderAR) return null;
 
         ARCoreGraphics arCoreGraphics = (ARCoreGraphics) Gdx.graphics;
-        Frame frame = arCoreGraphics.getCurrentFrame();
-
-        List<HitResult> hitResultList = frame.hitTest(x, y);
-        if (hitResultList.size() == 0) return null;
+        HitResult hit = hitTest(arCoreGraphics.getCurrentFrame(), x, y, planeType);
+        if (hit == null) return null;
 
-        for (HitResult hit : hitResultList) {
-            Trackable trackable = hit.getTrackable();
-            Pose pose = hit.getHitPose();
-            if (trackable instanceof Plane) {
-                Plane plane = (Plane) trackable;
-                if (plane.getSubsumedBy() != null
-                        || !plane.isPoseInPolygon(pose)
-                        || (planeType != GdxPlaneType.ANY && ARCoreToGdxAR.map(plane.getType()) != planeType)
-                        || plane.getTrackingState() != TrackingState.TRACKING
-                        || plane.getPolygon().capacity() == 0) continue;
-
-                Anchor newAnchor = plane.createAnchor(pose);
-                return ARCoreToGdxAR.createGdxAnchor(newAnchor);
-            }
-        }
-        return null;
+        Anchor newAnchor = hit.getTrackable().createAnchor(hit.getHitPose());
+        return ARCoreToGdxAR.createGdxAnchor(newAnchor, frameInstance.getTrackableRegistry());
     }
 
     @Null
     public GdxAnchor createGeospatialAnchor(double latitude, double longitude, double altitude, Quaternion rotation) {
         if (earth != null && earth.getTrackingState() == TrackingState.TRACKING) {
             Anchor anchor = earth.createAnchor(latitude, longitude, altitude, rotation.x, rotation.y, rotation.z, rotation.w);
-            return ARCoreToGdxAR.createGdxAnchor(anchor);
+            return ARCoreToGdxAR.createGdxAnchor(anchor, frameInstance.getTrackableRegistry());
         }
         return null;
     }
@@ -445,36 +496,157 @@ public class ARCoreApplication implements ApplicationListener, GdxAR {
     public GdxPose requestHitPlanePose(float x, float y, GdxPlaneType planeType) {
         if (!renderAR) return null;
 
+        ARCoreGraphics arCoreGraphics = (ARCoreGraphics) Gdx.graphics;
+        HitResult hit = hitTest(arCoreGraphics.getCurrentFrame(), x, y, planeType);
+        if (hit == null) return null;
+
+        GdxPose gdxPose = Pools.obtain(GdxPose.class);
+        ARCoreToGdxAR.map(hit.getHitPose(), gdxPose);
+        return gdxPose;
+    }
+
+    @Override
+    public int requestHitPlanePoses(float[] screenPoints, int count, GdxPlaneType planeType, float[] positions, float[] rotations,
+                                    @Null GdxPlaneType[] planeTypes, boolean[] hits) {
+        if (!renderAR) {
+            for (int i = 0; i < count; i++)
+                hits[i] = false;
+            return 0;
+        }
+
         ARCoreGraphics arCoreGraphics = (ARCoreGraphics) Gdx.graphics;
         Frame frame = arCoreGraphics.getCurrentFrame();
+        if (frame == null)
+            return planeRaycaster.raycast(screenPoints, count, planeType, positions, rotations, planeTypes, hits);
 
-        List<HitResult> hitResultList = frame.hitTest(x, y);
-        if (hitResultList.size() == 0) return null;
+        int hitCount = 0;
+        for (int i = 0; i < count; i++) {
+            hits[i] = false;
+            HitResult hit = hitTest(frame, screenPoints[i * 2], screenPoints[i * 2 + 1], planeType);
+            if (hit == null) continue;
 
-        for (HitResult hit : hitResultList) {
-            Trackable trackable = hit.getTrackable();
             Pose pose = hit.getHitPose();
-            if (trackable instanceof Plane) {
-                Plane plane = (Plane) trackable;
-                if (plane.getSubsumedBy() != null
-                        || !plane.isPoseInPolygon(pose)
-                        || (planeType != GdxPlaneType.ANY && ARCoreToGdxAR.map(plane.getType()) != planeType)
-                        || plane.getTrackingState() != TrackingState.TRACKING
-                        || plane.getPolygon().capacity() == 0) continue;
-
-                GdxPose gdxPose = Pools.obtain(GdxPose.class);
-                ARCoreToGdxAR.map(pose, gdxPose);
-                return gdxPose;
-            }
+            pose.getTranslation(positions, i * 3);
+            pose.getRotationQuaternion(rotations, i * 4);
+            if (planeTypes != null)
+                planeTypes[i] = ARCoreToGdxAR.map(((Plane) hit.getTrackable()).getType());
+            hits[i] = true;
+            hitCount++;
+        }
+        return hitCount;
+    }
+
+    @Override
+    public HitTestRequest queueHitPlanePose(float x, float y, GdxPlaneType planeType, @Null HitTestRequest.Callback callback) {
+        return hitTestQueue.enqueue(x, y, planeType, false, callback);
+    }
+
+    @Override
+    public HitTestRequest queueHitPlaneAnchor(float x, float y, GdxPlaneType planeType, @Null HitTestRequest.Callback callback) {
+        return hitTestQueue.enqueue(x, y, planeType, true, callback);
+    }
+
+    private boolean resolveHitTest(HitTestRequest request) {
+        HitResult hit = hitTest(hitTestFrame, request.x, request.y, request.planeType);
+        if (hit == null) return false;
+
+        Plane plane = (Plane) hit.getTrackable();
+        Pose pose = hit.getHitPose();
+        ARCoreToGdxAR.map(pose, request.pose);
+        request.hitPlaneType = ARCoreToGdxAR.map(plane.getType());
+        if (request.createAnchor)
+            request.anchor = ARCoreToGdxAR.createGdxAnchor(plane.createAnchor(pose), frameInstance.getTrackableRegistry());
+        return true;
+    }
+
+    /**
+     * First valid plane hit, with the same filter of every hit test function.
+     */
+    @Null
+    private HitResult hitTest(Frame frame, float x, float y, GdxPlaneType planeType) {
+        List<HitResult> hitResultList = frame.hitTest(x, y);
+        for (int i = 0, n = hitResultList.size(); i < n; i++) {
+            HitResult hit = hitResultList.get(i);
+            Trackable trackable = hit.getTrackable();
+            if (trackable instanceof Plane && isValidHit((Plane) trackable, hit.getHitPose(), planeType))
+                return hit;
         }
         return null;
     }
 
+    private boolean isValidHit(Plane plane, Pose pose, GdxPlaneType planeType) {
+        return plane.getSubsumedBy() == null
+                && plane.isPoseInPolygon(pose)
+                && (planeType == GdxPlaneType.ANY || ARCoreToGdxAR.map(plane.getType()) == planeType)
+                && plane.getTrackingState() == TrackingState.TRACKING
+                && plane.getPolygon().capacity() != 0;
+    }
+
     @Override
     public GdxLightEstimationMode getLightEstimationMode() {
         return gdxARConfiguration.lightEstimationMode;
     }
 
+    /**
+     * Update only trackables changed since the last frame, unchanged ones keep their previous state.
+     *
+     * @param frame - the ARCore frame.
+     * @param surfaces - all the planes known by the session, used only for debug rendering.
+     */
+    private void updateFrameDelta(Frame frame, Collection<Plane> surfaces) {
+        TrackableRegistry registry = frameInstance.getTrackableRegistry();
+        for (Plane plane : frame.getUpdatedTrackables(Plane.class)) {
+            if (dropIfSubsumed(plane)) continue;
+            GdxPlane gdxPlane = frameInstance.obtainPlane(registry.getId(plane));
+            ARCoreToGdxAR.map(plane, gdxPlane, enableSurfaceGeometry);
+        }
+
+        for (Anchor anchor : frame.getUpdatedAnchors()) {
+            GdxAnchor gdxAnchor = frameInstance.obtainAnchor(registry.getId(anchor));
+            ARCoreToGdxAR.map(anchor, gdxAnchor);
+        }
+
+        for (AugmentedImage img : frame.getUpdatedTrackables(AugmentedImage.class)) {
+            GdxAugmentedImage augmentedImage = frameInstance.obtainAugmentedImage(registry.getId(img));
+            ARCoreToGdxAR.map(img, augmentedImage);
+        }
+
+        frameInstance.endUpdate();
+    }
+
+    /**
+     * Subsumed planes are not converted anymore, the first time one is seen its id is redirected to the
+     * parent plane and released.
+     *
+     * @param plane ARCore plane
+     * @return true if the plane has been subsumed
+     */
+    private boolean dropIfSubsumed(Plane plane) {
+        Plane parent = plane.getSubsumedBy();
+        if (parent == null) return false;
+
+        TrackableRegistry registry = frameInstance.getTrackableRegistry();
+        long id = registry.findId(plane);
+        if (id != -1) {
+            registry.getPlaneGraph().subsume(id, registry.getId(parent));
+            if (frameInstance.isDeltaMode())
+                frameInstance.removePlane(id);
+            else
+                registry.evict(id);
+        }
+        return true;
+    }
+
+    /**
+     * Stopped trackables will never be reported again, release their ids.
+     *
+     * @param gdxAnchor trackable just converted from ARCore
+     */
+    private void evictIfStopped(GdxAnchor gdxAnchor) {
+        if (gdxAnchor.trackingState == GdxTrackingState.STOPPED)
+            frameInstance.getTrackableRegistry().evict(gdxAnchor.id);
+    }
+
     /**
      * Handles showing the loading message, then hiding it once a plane is detected.
      *
@@ -511,65 +683,4 @@ public class ARCoreApplication implements ApplicationListener, GdxAR {
         }
         return hasSurface;
     }
-
-    private void addPlane(Plane plane, GdxPlane gdxPlane) {
-        // check for planes that are no longer valid
-        if (plane.getSubsumedBy() != null
-                || plane.getType() == Plane.Type.HORIZONTAL_DOWNWARD_FACING
-                || plane.getTrackingState() != TrackingState.TRACKING
-                || plane.getPolygon().capacity() == 0) {
-            return;
-        }
-
-        FloatArray polygon = gdxPlane.vertices;
-        ModelInstance m = getPolygonModel(polygon.size / 2);
-        updateVertices(m, polygon, Color.YELLOW);
-
-        Pose pose = plane.getCenterPose();
-        m.transform.set(pose.tx(), pose.ty(), pose.tz(), pose.qx(), pose.qy(), pose.qz(), pose.qw());
-        planeInstances.add(m);
-    }
-
-    private ModelInstance getPolygonModel(int vertexCount) {
-        ModelInstance model = polygonsCache.get(vertexCount);
-        if (model != null) return model;
-
-        builder.begin();
-        for (int i = 0; i < vertexCount; i++) {
-            MeshPartBuilder meshPartBuilder = builder.part("line" + i, GL20.GL_LINES, 3, new Material());
-            meshPartBuilder.setColor(Color.WHITE);
-            meshPartBuilder.line(0, 0, 0, 0, 0, 0);
-        }
-
-        model = new ModelInstance(builder.end());
-        polygonsCache.put(vertexCount, model);
-        return model;
-    }
-
-    private void updateVertices(ModelInstance modelInstance, FloatArray vertices, Color color) {
-        Node node = modelInstance.nodes.get(0);
-        int verticesCount = vertices.size / 2;
-        for (int i = 0; i < verticesCount; i++) {
-            int j = i == 0 ? verticesCount - 1 : i - 1;
-            NodePart line = node.parts.get(i);
-            MeshPart lineMesh = line.meshPart;
-            Mesh mesh = lineMesh.mesh;
-            tmpVerts[0] = vertices.get(j * 2);
-            tmpVerts[1] = 0.0f;
-            tmpVerts[2] = vertices.get((j * 2) + 1);
-            tmpVerts[3] = color.r;
-            tmpVerts[4] = color.g;
-            tmpVerts[5] = color.b;
-            tmpVerts[6] = color.a;
-            tmpVerts[7] = vertices.get(i * 2);
-            tmpVerts[8] = 0.0f;
-            tmpVerts[9] = vertices.get((i * 2) + 1);
-            tmpVerts[10] = color.r;
-            tmpVerts[11] = color.g;
-            tmpVerts[12] = color.b;
-            tmpVerts[13] = color.a;
-            mesh.updateVertices(i * 14, tmpVerts);
-        }
-    }
 }
-
@@ -5,8 +5,12 @@ import android.opengl.GLES20;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.*;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
 import com.google.ar.core.Frame;
 
+import games.rednblack.gdxar.GdxDepthImage;
+import games.rednblack.gdxar.util.ProgramBinaryCache;
+
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
@@ -18,14 +22,14 @@ import java.nio.IntBuffer;
  * @author claywilkinson
  */
 class BackgroundRenderer {
-    private final ShaderProgram shader, depthShader;
+    private final ShaderProgram shader;
+    private ShaderProgram occlusionShader;
     private final Mesh mesh;
     private final IntBuffer intbuf;
     private final int[] saveFlags;
 
-    private byte[] depthBytes = new byte[1];
-    //private Texture depthTexture;
     private DepthTextureHandler depthTexture;
+    private boolean occlusionSupported = true;
 
     // The Shader class in GDX is aware of some common uniform and attribute names.
     // These are used to make setting the values when drawing "automatic".
@@ -54,21 +58,54 @@ class BackgroundRenderer {
                     + "    gl_FragColor = texture2D(sTexture, v_TexCoord);\n"
                     + "}";
 
-    private static final String depthFragmentShaderCode =
-                    "precision mediump float;\n"
-                    + "varying vec2 v_TexCoord;\n"
-                    + "uniform sampler2D sTexture;\n"
+    // Depth only pass: writes the depth of the real world, decoded from the RG8 depth texture, so virtual
+    // content behind it fails the depth test. Pixels without depth don't occlude anything.
+    private static final String occlusionVertexShaderCode30 =
+            "#version 300 es\n"
+                    + "in vec4 a_position;\n"
+                    + "in vec2 a_texCoord0;\n"
+                    + "out vec2 v_TexCoord;\n"
+                    + "void main() {\n"
+                    + "    gl_Position = a_position;\n"
+                    + "    v_TexCoord = a_texCoord0;\n"
+                    + "}";
+
+    private static final String occlusionFragmentShaderCode30 =
+            "#version 300 es\n"
+                    + "precision highp float;\n"
+                    + "in vec2 v_TexCoord;\n"
+                    + "uniform sampler2D u_depthTexture;\n"
+                    + "// Projection matrix M22 and M23, view space z to clip space z\n"
+                    + "uniform vec2 u_depthProjection;\n"
+                    + "out vec4 fragColor;\n"
                     + "\n"
+                    + "void main() {\n"
+                    + "    vec2 packedDepth = texture(u_depthTexture, v_TexCoord).rg;\n"
+                    + "    float depth = dot(packedDepth, vec2(255.0, 65280.0)) * 0.001;\n"
+                    + "    if (depth <= 0.0) discard;\n"
+                    + "    float ndc = (u_depthProjection.y - u_depthProjection.x * depth) / depth;\n"
+                    + "    gl_FragDepth = clamp(ndc * 0.5 + 0.5, 0.0, 1.0);\n"
+                    + "    fragColor = vec4(0.0);\n"
+                    + "}";
+
+    private static final String occlusionFragmentShaderCodeExt =
+            "#extension GL_EXT_frag_depth : require\n"
+                    + "precision highp float;\n"
+                    + "varying vec2 v_TexCoord;\n"
+                    + "uniform sampler2D u_depthTexture;\n"
+                    + "uniform vec2 u_depthProjection;\n"
                     + "\n"
                     + "void main() {\n"
-                    + "    gl_FragColor = texture2D(sTexture, v_TexCoord);\n"
+                    + "    vec2 packedDepth = texture2D(u_depthTexture, v_TexCoord).ra;\n"
+                    + "    float depth = dot(packedDepth, vec2(255.0, 65280.0)) * 0.001;\n"
+                    + "    if (depth <= 0.0) discard;\n"
+                    + "    float ndc = (u_depthProjection.y - u_depthProjection.x * depth) / depth;\n"
+                    + "    gl_FragDepthEXT = clamp(ndc * 0.5 + 0.5, 0.0, 1.0);\n"
+                    + "    gl_FragColor = vec4(0.0);\n"
                     + "}";
 
     public BackgroundRenderer() {
-        depthTexture = new DepthTextureHandler();
-        depthTexture.createOnGlThread();
-        shader = new ShaderProgram(vertexShaderCode, fragmentShaderCode);
-        depthShader = new ShaderProgram(vertexShaderCode, depthFragmentShaderCode);
+        shader = ProgramBinaryCache.compile(vertexShaderCode, fragmentShaderCode);
 
         mesh = new Mesh(true, 4, 0, VertexAttribute.Position(), VertexAttribute.TexCoords(0));
 
@@ -108,12 +145,73 @@ class BackgroundRenderer {
         gl.glDepthFunc(saveFlags[2]);
     }
 
-    public void renderDepth(Frame frame) {
-        depthTexture.update(frame);
-        Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
-        Gdx.gl.glBindTexture(GLES20.GL_TEXTURE_2D, depthTexture.getDepthTexture());
-        depthShader.bind();
-        depthShader.setUniformi("sTexture", 0);
-        mesh.render(depthShader, GL20.GL_TRIANGLE_STRIP);
+    /**
+     * Write the depth of the real world into the depth buffer, color is not touched. Virtual content drawn
+     * afterwards with depth test is hidden behind real objects.
+     *
+     * @param depthImage depth image of the current frame
+     * @param camera AR camera
+     * @param level depth pyramid level, each level halves the resolution
+     * @return false if depth occlusion is not supported by the device
+     */
+    public boolean renderOcclusion(GdxDepthImage depthImage, Camera camera, int level) {
+        if (!occlusionSupported) return false;
+        // Created only when occlusion is actually rendered
+        if (occlusionShader == null) {
+            occlusionShader = createOcclusionShader();
+            if (occlusionShader == null) {
+                occlusionSupported = false;
+                return false;
+            }
+            depthTexture = new DepthTextureHandler();
+            depthTexture.createOnGlThread();
+        }
+
+        depthTexture.update(depthImage, level);
+
+        GL20 gl = Gdx.gl;
+        gl.glEnable(GL20.GL_DEPTH_TEST);
+        gl.glDepthFunc(GL20.GL_ALWAYS);
+        gl.glDepthMask(true);
+        gl.glColorMask(false, false, false, false);
+
+        gl.glActiveTexture(GL20.GL_TEXTURE0);
+        gl.glBindTexture(GL20.GL_TEXTURE_2D, depthTexture.getDepthTexture());
+        occlusionShader.bind();
+        occlusionShader.setUniformi("u_depthTexture", 0);
+        occlusionShader.setUniformf("u_depthProjection", camera.projection.val[Matrix4.M22], camera.projection.val[Matrix4.M23]);
+        mesh.render(occlusionShader, GL20.GL_TRIANGLE_STRIP);
+
+        gl.glColorMask(true, true, true, true);
+        gl.glDepthFunc(GL20.GL_LEQUAL);
+        return true;
+    }
+
+    private ShaderProgram createOcclusionShader() {
+        ShaderProgram program;
+        if (Gdx.graphics.isGL30Available()) {
+            program = ProgramBinaryCache.compile(occlusionVertexShaderCode30, occlusionFragmentShaderCode30);
+        } else if (Gdx.graphics.supportsExtension("GL_EXT_frag_depth")) {
+            program = ProgramBinaryCache.compile(vertexShaderCode, occlusionFragmentShaderCodeExt);
+        } else {
+            Gdx.app.error("BackgroundRenderer", "Depth occlusion needs GL ES 3.0 or GL_EXT_frag_depth");
+            return null;
+        }
+
+        if (!program.isCompiled()) {
+            Gdx.app.error("BackgroundRenderer", "Error compiling occlusion shader: " + program.getLog());
+            program.dispose();
+            return null;
+        }
+        return program;
+    }
+
+    public void dispose() {
+        shader.dispose();
+        mesh.dispose();
+        if (occlusionShader != null)
+            occlusionShader.dispose();
+        if (depthTexture != null)
+            depthTexture.dispose();
     }
 }
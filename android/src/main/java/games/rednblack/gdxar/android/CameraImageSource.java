@@ -0,0 +1,61 @@
+package games.rednblack.gdxar.android;
+
+import android.media.Image;
+
+import com.badlogic.gdx.Gdx;
+import com.google.ar.core.CameraIntrinsics;
+import com.google.ar.core.Frame;
+import com.google.ar.core.exceptions.NotYetAvailableException;
+import com.google.ar.core.exceptions.ResourceExhaustedException;
+
+import games.rednblack.gdxar.GdxCameraImage;
+
+/**
+ * Provide the ARCore YUV_420_888 CPU image of the current frame to {@link GdxCameraImage}, planes are wrapped
+ * without copies and the native image is closed when the last reference is released.
+ *
+ * @author fgnm
+ */
+class CameraImageSource implements GdxCameraImage.Source {
+    private final float[] intrinsics = new float[4];
+    private Frame frame;
+
+    /**
+     * Set the ARCore frame of the current render call.
+     *
+     * @param frame current frame, null when the render call is done
+     */
+    void setFrame(Frame frame) {
+        this.frame = frame;
+    }
+
+    @Override
+    public GdxCameraImage acquire() {
+        if (frame == null) return null;
+        final Image image;
+        try {
+            image = frame.acquireCameraImage();
+        } catch (NotYetAvailableException e) {
+            // This normally means that the camera image is not available yet.
+            return null;
+        } catch (ResourceExhaustedException e) {
+            Gdx.app.error("CameraImageSource", "Too many camera images alive, release them sooner");
+            return null;
+        }
+
+        Image.Plane[] planes = image.getPlanes();
+        GdxCameraImage cameraImage = new GdxCameraImage();
+        cameraImage.setYPlane(planes[0].getBuffer().asReadOnlyBuffer(), image.getWidth(), image.getHeight(),
+                planes[0].getRowStride(), planes[0].getPixelStride());
+        cameraImage.setUVPlanes(planes[1].getBuffer().asReadOnlyBuffer(), planes[2].getBuffer().asReadOnlyBuffer(),
+                planes[1].getRowStride(), planes[1].getPixelStride());
+
+        // CPU image intrinsics are already at the image resolution
+        CameraIntrinsics cameraIntrinsics = frame.getCamera().getImageIntrinsics();
+        cameraIntrinsics.getFocalLength(intrinsics, 0);
+        cameraIntrinsics.getPrincipalPoint(intrinsics, 2);
+        cameraImage.setIntrinsics(intrinsics[0], intrinsics[1], intrinsics[2], intrinsics[3]);
+        cameraImage.setNativeImage(image.getTimestamp(), image::close);
+        return cameraImage;
+    }
+}
@@ -0,0 +1,86 @@
+package games.rednblack.gdxar.android;
+
+import android.media.Image;
+
+import com.google.ar.core.Camera;
+import com.google.ar.core.CameraIntrinsics;
+import com.google.ar.core.Coordinates2d;
+import com.google.ar.core.Frame;
+import com.google.ar.core.exceptions.NotYetAvailableException;
+
+import java.nio.ByteOrder;
+
+import games.rednblack.gdxar.GdxDepthImage;
+
+/**
+ * Provide the ARCore DEPTH16 image of the current frame to {@link GdxDepthImage}, without copies.
+ * The native image is acquired only when requested and closed at the end of the render call.
+ *
+ * @author fgnm
+ */
+class DepthImageSource implements GdxDepthImage.Source {
+    /** Corners of the view in normalized coordinates: origin, x axis, y axis */
+    private static final float[] VIEW_CORNERS = new float[]{0, 0, 1, 0, 0, 1};
+
+    private final float[] imageCorners = new float[6];
+    private final float[] intrinsics = new float[4];
+    private final int[] imageSize = new int[2];
+    private final float[] cameraTransform = new float[16];
+    private Frame frame;
+    private Image image;
+
+    /**
+     * Set the ARCore frame of the current render call.
+     *
+     * @param frame current frame
+     */
+    void setFrame(Frame frame) {
+        release();
+        this.frame = frame;
+    }
+
+    @Override
+    public boolean acquire(GdxDepthImage depthImage) {
+        if (frame == null) return false;
+        if (image == null) {
+            try {
+                image = frame.acquireDepthImage16Bits();
+            } catch (NotYetAvailableException e) {
+                // This normally means that depth data is not available yet.
+                return false;
+            }
+        }
+
+        Image.Plane plane = image.getPlanes()[0];
+        depthImage.set(plane.getBuffer().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().asReadOnlyBuffer(),
+                image.getWidth(), image.getHeight(), plane.getRowStride() / 2, image.getTimestamp());
+
+        // Depth image is aligned with the CPU camera image
+        frame.transformCoordinates2d(Coordinates2d.VIEW_NORMALIZED, VIEW_CORNERS, Coordinates2d.IMAGE_NORMALIZED, imageCorners);
+        depthImage.setViewTransform(imageCorners[2] - imageCorners[0], imageCorners[4] - imageCorners[0], imageCorners[0],
+                imageCorners[3] - imageCorners[1], imageCorners[5] - imageCorners[1], imageCorners[1]);
+
+        // Intrinsics of the CPU image, scaled to the depth resolution
+        Camera camera = frame.getCamera();
+        CameraIntrinsics cameraIntrinsics = camera.getImageIntrinsics();
+        cameraIntrinsics.getFocalLength(intrinsics, 0);
+        cameraIntrinsics.getPrincipalPoint(intrinsics, 2);
+        cameraIntrinsics.getImageDimensions(imageSize, 0);
+        float scaleX = (float) image.getWidth() / imageSize[0], scaleY = (float) image.getHeight() / imageSize[1];
+        depthImage.setIntrinsics(intrinsics[0] * scaleX, intrinsics[1] * scaleY, intrinsics[2] * scaleX, intrinsics[3] * scaleY);
+        camera.getPose().toMatrix(cameraTransform, 0);
+        depthImage.setCameraTransform(cameraTransform);
+        return true;
+    }
+
+    /**
+     * Close the native image, depth images filled by this source are invalid afterwards.
+     */
+    void release() {
+        if (image != null) {
+            image.close();
+            image = null;
+        }
+        frame = null;
+    }
+}
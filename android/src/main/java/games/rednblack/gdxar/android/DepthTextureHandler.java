@@ -1,21 +1,28 @@
 package games.rednblack.gdxar.android;
 
 import static android.opengl.GLES20.*;
-import static android.opengl.GLES30.GL_LINEAR;
 import static android.opengl.GLES30.GL_RG;
 import static android.opengl.GLES30.GL_RG8;
 
-import android.media.Image;
-import com.google.ar.core.Frame;
-import com.google.ar.core.exceptions.NotYetAvailableException;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.BufferUtils;
 
-/** Handle RG8 GPU texture containing a DEPTH16 depth image. */
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import games.rednblack.gdxar.GdxDepthImage;
+
+/** Handle RG8 GPU texture containing a DEPTH16 depth image, LUMINANCE_ALPHA on GLES 2.0 (low byte in r, high byte in a). */
 public final class DepthTextureHandler {
 
     private int depthTextureId = -1;
     private int depthTextureWidth = -1;
     private int depthTextureHeight = -1;
 
+    private final boolean rgSupported = Gdx.graphics.isGL30Available();
+    private ByteBuffer uploadBuffer = BufferUtils.newByteBuffer(2);
+
     /**
      * Creates and initializes the depth texture. This method needs to be called on a
      * thread with a EGL context attached.
@@ -27,47 +34,64 @@ public final class DepthTextureHandler {
         glBindTexture(GL_TEXTURE_2D, depthTextureId);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        // Depth is split in two bytes, they can't be interpolated separately
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
     }
 
     /**
-     * Updates the depth texture with the content from acquireDepthImage().
-     * This method needs to be called on a thread with a EGL context attached.
+     * Updates the depth texture with a level of the depth image pyramid, lower levels keep the nearest
+     * depth of each block. This method needs to be called on a thread with a EGL context attached.
+     *
+     * @param depthImage depth image of the current frame
+     * @param level pyramid level, 0 for full resolution
      */
-    public void update(final Frame frame) {
-        try {
-            Image depthImage = frame.acquireDepthImage16Bits();
-            glBindTexture(GL_TEXTURE_2D, depthTextureId);
+    public void update(GdxDepthImage depthImage, int level) {
+        level = Math.max(0, Math.min(level, depthImage.getLevelCount() - 1));
+        int width = depthImage.getLevelWidth(level);
+        int height = depthImage.getLevelHeight(level);
+
+        if (uploadBuffer.capacity() < width * height * 2)
+            uploadBuffer = BufferUtils.newByteBuffer(width * height * 2);
+        uploadBuffer.clear();
+        // RG8 expects the low byte first
+        ShortBuffer values = uploadBuffer.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        depthImage.copyLevel(level, values);
+        uploadBuffer.limit(width * height * 2);
 
-            if (depthTextureWidth == -1) {
-                depthTextureWidth = depthImage.getWidth();
-                depthTextureHeight = depthImage.getHeight();
-                glTexImage2D(
-                        GL_TEXTURE_2D,
-                        0,
-                        GL_RG8,
-                        depthTextureWidth,
-                        depthTextureHeight,
-                        0,
-                        GL_RG,
-                        GL_UNSIGNED_BYTE,
-                        depthImage.getPlanes()[0].getBuffer());
-            } else {
-                glTexSubImage2D(
-                        GL_TEXTURE_2D,
-                        0,
-                        0, 0,
-                        depthTextureWidth,
-                        depthTextureHeight,
-                        GL_RG,
-                        GL_UNSIGNED_BYTE,
-                        depthImage.getPlanes()[0].getBuffer());
-            }
+        glBindTexture(GL_TEXTURE_2D, depthTextureId);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 2);
+        if (width != depthTextureWidth || height != depthTextureHeight) {
+            depthTextureWidth = width;
+            depthTextureHeight = height;
+            glTexImage2D(
+                    GL_TEXTURE_2D,
+                    0,
+                    rgSupported ? GL_RG8 : GL_LUMINANCE_ALPHA,
+                    depthTextureWidth,
+                    depthTextureHeight,
+                    0,
+                    rgSupported ? GL_RG : GL_LUMINANCE_ALPHA,
+                    GL_UNSIGNED_BYTE,
+                    uploadBuffer);
+        } else {
+            glTexSubImage2D(
+                    GL_TEXTURE_2D,
+                    0,
+                    0, 0,
+                    depthTextureWidth,
+                    depthTextureHeight,
+                    rgSupported ? GL_RG : GL_LUMINANCE_ALPHA,
+                    GL_UNSIGNED_BYTE,
+                    uploadBuffer);
+        }
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
+    }
 
-            depthImage.close();
-        } catch (NotYetAvailableException e) {
-            // This normally means that depth data is not available yet.
+    public void dispose() {
+        if (depthTextureId != -1) {
+            glDeleteTextures(1, new int[]{depthTextureId}, 0);
+            depthTextureId = -1;
         }
     }
 
@@ -82,4 +106,4 @@ public final class DepthTextureHandler {
     public int getDepthHeight() {
         return depthTextureHeight;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,51 @@
+package games.rednblack.gdxar.android;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import games.rednblack.gdxar.util.ProgramBinaryCache;
+
+/**
+ * Program binary API of GL ES 3.0 for {@link ProgramBinaryCache}.
+ *
+ * @author fgnm
+ */
+class ProgramBinaryHandler implements ProgramBinaryCache.Backend {
+    private final int[] tmp = new int[1];
+
+    @Override
+    public boolean isSupported() {
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        if (version == null || !version.startsWith("OpenGL ES ") || version.length() < 11 || version.charAt(10) < '3')
+            return false;
+
+        GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, tmp, 0);
+        return tmp[0] > 0;
+    }
+
+    @Override
+    public void setRetrievable(int program) {
+        GLES30.glProgramParameteri(program, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+    }
+
+    @Override
+    public ByteBuffer getBinary(int program, int[] format) {
+        GLES20.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, tmp, 0);
+        int length = tmp[0];
+        if (length <= 0) return null;
+
+        ByteBuffer binary = ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
+        GLES30.glGetProgramBinary(program, length, tmp, 0, format, 0, binary);
+        if (GLES20.glGetError() != GLES20.GL_NO_ERROR) return null;
+        binary.limit(tmp[0]);
+        return binary;
+    }
+
+    @Override
+    public void loadBinary(int program, int format, ByteBuffer binary) {
+        GLES30.glProgramBinary(program, format, binary, binary.remaining());
+    }
+}
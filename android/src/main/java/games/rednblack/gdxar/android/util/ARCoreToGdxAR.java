@@ -1,9 +1,6 @@
 package games.rednblack.gdxar.android.util;
 
 import com.badlogic.gdx.utils.Pools;
-import com.badlogic.gdx.utils.reflect.ClassReflection;
-import com.badlogic.gdx.utils.reflect.Field;
-import com.badlogic.gdx.utils.reflect.ReflectionException;
 import com.google.ar.core.*;
 
 import games.rednblack.gdxar.*;
@@ -20,24 +17,29 @@ public class ARCoreToGdxAR {
     // Allocate temporary storage to avoid multiple allocations per frame.
     private static final float[] tmpPoseTranslation = new float[3];
     private static final float[] tmpPoseRotation = new float[4];
+    private static float[] tmpPolygon = new float[64];
 
-    public static GdxAnchor createGdxAnchor(Anchor anchor) {
+    public static GdxAnchor createGdxAnchor(Anchor anchor, TrackableRegistry registry) {
         GdxAnchor gdxAnchor = Pools.obtain(GdxAnchor.class);
+        map(anchor, gdxAnchor);
+        gdxAnchor.id = registry.getId(anchor);
+        return gdxAnchor;
+    }
+
+    public static void map(Anchor anchor, GdxAnchor gdxAnchor) {
         Pose pose = anchor.getPose();
         map(pose, gdxAnchor.gdxPose);
         gdxAnchor.trackingState = map(anchor.getTrackingState());
-        try {
-            Field field = ClassReflection.getDeclaredField(Anchor.class, "nativeHandle");
-            field.setAccessible(true);
-            gdxAnchor.id = (Long) field.get(anchor);
-        } catch (ReflectionException e) {
-            gdxAnchor.id = anchor.hashCode();
-        }
-        return gdxAnchor;
     }
 
-    public static GdxAugmentedImage createGdxAugmentedImage(AugmentedImage img) {
+    public static GdxAugmentedImage createGdxAugmentedImage(AugmentedImage img, TrackableRegistry registry) {
         GdxAugmentedImage augmentedImage = Pools.obtain(GdxAugmentedImage.class);
+        map(img, augmentedImage);
+        augmentedImage.id = registry.getId(img);
+        return augmentedImage;
+    }
+
+    public static void map(AugmentedImage img, GdxAugmentedImage augmentedImage) {
         Pose pose = img.getCenterPose();
         ARCoreToGdxAR.map(pose, augmentedImage.gdxPose);
         augmentedImage.trackingState = ARCoreToGdxAR.map(img.getTrackingState());
@@ -46,12 +48,16 @@ public class ARCoreToGdxAR {
         augmentedImage.extentX = img.getExtentX();
         augmentedImage.extentZ = img.getExtentZ();
         augmentedImage.name = img.getName();
-
-        return augmentedImage;
     }
 
-    public static GdxPlane createGdxPlane(Plane plane, boolean enableGeometry) {
+    public static GdxPlane createGdxPlane(Plane plane, boolean enableGeometry, TrackableRegistry registry) {
         GdxPlane gdxPlane = Pools.obtain(GdxPlane.class);
+        map(plane, gdxPlane, enableGeometry);
+        gdxPlane.id = registry.getId(plane);
+        return gdxPlane;
+    }
+
+    public static void map(Plane plane, GdxPlane gdxPlane, boolean enableGeometry) {
         Pose pose = plane.getCenterPose();
         ARCoreToGdxAR.map(pose, gdxPlane.gdxPose);
         gdxPlane.trackingState = ARCoreToGdxAR.map(plane.getTrackingState());
@@ -60,12 +66,14 @@ public class ARCoreToGdxAR {
         gdxPlane.type = ARCoreToGdxAR.map(plane.getType());
         if (enableGeometry) {
             FloatBuffer polygon = plane.getPolygon();
-            gdxPlane.vertices.ensureCapacity(polygon.limit());
-            for (int i = 0; i < polygon.limit(); i++) {
-                gdxPlane.vertices.add(polygon.get(i));
-            }
+            int count = polygon.limit();
+            if (tmpPolygon.length < count)
+                tmpPolygon = new float[count];
+            polygon.get(tmpPolygon, 0, count);
+            gdxPlane.setVertices(tmpPolygon, 0, count);
+        } else {
+            gdxPlane.setVertices(tmpPolygon, 0, 0);
         }
-        return gdxPlane;
     }
 
     public static void map(Pose pose, GdxPose gdxPose) {
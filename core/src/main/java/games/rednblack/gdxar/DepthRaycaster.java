@@ -0,0 +1,208 @@
+package games.rednblack.gdxar;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
+
+/**
+ * Hit test against the depth image of a frame, finds any surface even if no plane was detected on it.
+ * The hit pose has the Y axis along the surface normal, estimated from neighbor depth samples, like the
+ * pose of a {@link GdxPlane}.
+ * <p>
+ * Nothing is allocated, it's cheap enough to place a reticle every frame. Must be used from the render
+ * thread while the depth image is valid, see {@link GdxFrame#getDepthImage()}.
+ *
+ * @author fgnm
+ */
+public class DepthRaycaster {
+    /** Max distance in pixels searched around the hit point when it has no depth */
+    public int searchRadius = 4;
+
+    /** Distance in pixels of the samples used to estimate the normal */
+    public int normalRadius = 2;
+
+    /** Min and max distance in meters of a ray marched with {@link #raycast(GdxDepthImage, Ray, GdxPose)} */
+    public float near = 0.1f, far = 8f;
+
+    /** Surface normal of the last hit */
+    public final Vector3 normal = new Vector3();
+
+    /** Distance in meters of the last hit from the camera or from the ray origin */
+    public float distance;
+
+    private final Vector2 pixel = new Vector2();
+    private final Vector3 position = new Vector3();
+    private final Vector3 point = new Vector3();
+    private final Vector3 cameraPoint = new Vector3();
+    private final Vector3 left = new Vector3();
+    private final Vector3 right = new Vector3();
+    private final Vector3 up = new Vector3();
+    private final Vector3 down = new Vector3();
+    private final Vector3 cameraPosition = new Vector3();
+    private final Matrix4 worldToCamera = new Matrix4();
+    private final Quaternion rotation = new Quaternion();
+
+    /**
+     * Hit test the depth under a screen point, using the size of the libGDX window.
+     *
+     * @param frame current frame, depth image is acquired if needed
+     * @param screenX position in screen coordinate
+     * @param screenY position in screen coordinate
+     * @param out hit pose
+     * @return false if depth is not available around the point
+     */
+    public boolean raycast(GdxFrame frame, float screenX, float screenY, GdxPose out) {
+        GdxDepthImage image = frame.getDepthImage();
+        if (image == null) return false;
+        return raycast(image, screenX, screenY, Gdx.graphics.getWidth(), Gdx.graphics.getHeight(), out);
+    }
+
+    /**
+     * Hit test the depth under a screen point. The screen point is unprojected with the camera intrinsics,
+     * if it has no depth the nearest valid sample within {@link #searchRadius} is used.
+     *
+     * @param image depth image of the current frame
+     * @param screenX position in screen coordinate
+     * @param screenY position in screen coordinate
+     * @param screenWidth width of the view
+     * @param screenHeight height of the view
+     * @param out hit pose
+     * @return false if depth is not available around the point
+     */
+    public boolean raycast(GdxDepthImage image, float screenX, float screenY, float screenWidth, float screenHeight, GdxPose out) {
+        image.screenToImage(screenX, screenY, screenWidth, screenHeight, pixel);
+        int x = (int) pixel.x, y = (int) pixel.y;
+        int width = image.getWidth(), height = image.getHeight();
+        if (x < -searchRadius || y < -searchRadius || x >= width + searchRadius || y >= height + searchRadius) return false;
+
+        // Walk rings of growing radius until a valid sample is found
+        for (int radius = 0; radius <= searchRadius; radius++) {
+            for (int dy = -radius; dy <= radius; dy++) {
+                int step = dy == -radius || dy == radius ? 1 : radius * 2;
+                for (int dx = -radius; dx <= radius; dx += Math.max(1, step)) {
+                    int px = x + dx, py = y + dy;
+                    if (px < 0 || py < 0 || px >= width || py >= height) continue;
+                    float depth = image.getDepth(px, py);
+                    if (depth == 0) continue;
+
+                    image.unproject(px + 0.5f, py + 0.5f, depth, position);
+                    image.getCameraTransform().getTranslation(cameraPosition);
+                    distance = position.dst(cameraPosition);
+                    return setPose(image, px, py, out);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * March a ray through the depth image, the hit is the first point behind the observed surface, refined
+     * with a binary search. Works with rays not starting from the camera, like a controller or a model.
+     *
+     * @param image depth image of the current frame
+     * @param ray ray in world space, direction must be normalized
+     * @param out hit pose
+     * @return false if the ray doesn't cross any surface between {@link #near} and {@link #far}
+     */
+    public boolean raycast(GdxDepthImage image, Ray ray, GdxPose out) {
+        worldToCamera.set(image.getCameraTransform()).inv();
+        image.getCameraTransform().getTranslation(cameraPosition);
+
+        float previous = -1;
+        for (float t = near; t <= far; ) {
+            int sample = sample(image, ray, t);
+            if (sample > 0) {
+                if (previous < 0) {
+                    // Already behind the surface at the first valid sample
+                    distance = t;
+                } else {
+                    // Binary search between the last point in front and the first behind
+                    float front = previous, back = t;
+                    for (int i = 0; i < 8; i++) {
+                        float middle = (front + back) / 2f;
+                        if (sample(image, ray, middle) > 0)
+                            back = middle;
+                        else
+                            front = middle;
+                    }
+                    distance = back;
+                }
+                ray.getEndPoint(position, distance);
+                cameraPoint.set(position).mul(worldToCamera);
+                if (!image.project(cameraPoint, pixel)) return false;
+                return setPose(image, (int) pixel.x, (int) pixel.y, out);
+            }
+            if (sample == 0)
+                previous = t;
+            // Depth resolution drops with distance, so does the step
+            t += Math.max(0.01f, t * 0.02f);
+        }
+        return false;
+    }
+
+    /**
+     * @return 1 if the ray point is behind the surface, 0 if in front, -1 if there is no depth
+     */
+    private int sample(GdxDepthImage image, Ray ray, float t) {
+        ray.getEndPoint(point, t);
+        cameraPoint.set(point).mul(worldToCamera);
+        if (!image.project(cameraPoint, pixel)) return -1;
+        int px = (int) pixel.x, py = (int) pixel.y;
+        if (px < 0 || py < 0 || px >= image.getWidth() || py >= image.getHeight()) return -1;
+        float depth = image.getDepth(px, py);
+        if (depth == 0) return -1;
+        return -cameraPoint.z >= depth ? 1 : 0;
+    }
+
+    private boolean setPose(GdxDepthImage image, int x, int y, GdxPose out) {
+        computeNormal(image, x, y);
+        rotation.setFromCross(Vector3.Y, normal);
+        out.setPosition(position.x, position.y, position.z);
+        out.setRotation(rotation.x, rotation.y, rotation.z, rotation.w);
+        return true;
+    }
+
+    /**
+     * Normal from the cross product of horizontal and vertical neighbor differences, facing the camera.
+     * Falls back to the direction of the camera when neighbors have no depth.
+     */
+    private void computeNormal(GdxDepthImage image, int x, int y) {
+        boolean hasLeft = neighbor(image, x - normalRadius, y, left);
+        boolean hasRight = neighbor(image, x + normalRadius, y, right);
+        boolean hasUp = neighbor(image, x, y - normalRadius, up);
+        boolean hasDown = neighbor(image, x, y + normalRadius, down);
+        if (!hasLeft) left.set(position);
+        if (!hasRight) right.set(position);
+        if (!hasUp) up.set(position);
+        if (!hasDown) down.set(position);
+
+        normal.set(cameraPosition).sub(position);
+        if ((hasLeft || hasRight) && (hasUp || hasDown)) {
+            right.sub(left);
+            down.sub(up);
+            float nx = down.y * right.z - down.z * right.y;
+            float ny = down.z * right.x - down.x * right.z;
+            float nz = down.x * right.y - down.y * right.x;
+            if (nx * nx + ny * ny + nz * nz > 0.00000001f) {
+                if (nx * normal.x + ny * normal.y + nz * normal.z < 0) {
+                    nx = -nx;
+                    ny = -ny;
+                    nz = -nz;
+                }
+                normal.set(nx, ny, nz);
+            }
+        }
+        normal.nor();
+    }
+
+    private boolean neighbor(GdxDepthImage image, int x, int y, Vector3 out) {
+        if (x < 0 || y < 0 || x >= image.getWidth() || y >= image.getHeight()) return false;
+        float depth = image.getDepth(x, y);
+        if (depth == 0) return false;
+        image.unproject(x + 0.5f, y + 0.5f, depth, out);
+        return true;
+    }
+}
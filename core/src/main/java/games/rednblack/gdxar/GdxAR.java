@@ -40,6 +40,46 @@ public interface GdxAR {
     @Null
     GdxPose requestHitPlanePose(float x, float y, GdxPlaneType planeType);
 
+    /**
+     * Batched hit plane check, results are written into caller owned arrays so nothing is allocated.
+     * All points are tested against the same AR frame.
+     *
+     * @param screenPoints positions in screen coordinate in the form [x1, y1, x2, y2, ... ]
+     * @param count number of points to test
+     * @param planeType filter hit test with a specific plane type
+     * @param positions output hit positions in the form [x1, y1, z1, ... ], at least count * 3 floats
+     * @param rotations output hit rotations in the form [x1, y1, z1, w1, ... ], at least count * 4 floats
+     * @param planeTypes output type of the hit planes, can be null
+     * @param hits output true for points that hit a plane, at least count elements
+     * @return number of points that hit a plane
+     */
+    int requestHitPlanePoses(float[] screenPoints, int count, GdxPlaneType planeType, float[] positions, float[] rotations,
+                             @Null GdxPlaneType[] planeTypes, boolean[] hits);
+
+    /**
+     * Queue an hit plane check, resolved with the next rendered frame before
+     * {@link GdxArApplicationListener#renderARModels(GdxFrame)}. Can be called from any thread.
+     *
+     * @param x position in screen coordinate
+     * @param y position in screen coordinate
+     * @param planeType filter hit test with a specific plane type
+     * @param callback notified on the render thread when resolved, can be null to poll the returned handle
+     * @return completion handle with the hit pose
+     */
+    HitTestRequest queueHitPlanePose(float x, float y, GdxPlaneType planeType, @Null HitTestRequest.Callback callback);
+
+    /**
+     * Queue an hit plane check that attaches a new Anchor to the hit plane, resolved with the next rendered
+     * frame before {@link GdxArApplicationListener#renderARModels(GdxFrame)}. Can be called from any thread.
+     *
+     * @param x position in screen coordinate
+     * @param y position in screen coordinate
+     * @param planeType filter hit test with a specific plane type
+     * @param callback notified on the render thread when resolved, can be null to poll the returned handle
+     * @return completion handle with the hit pose and the new {@link GdxAnchor}
+     */
+    HitTestRequest queueHitPlaneAnchor(float x, float y, GdxPlaneType planeType, @Null HitTestRequest.Callback callback);
+
     /**
      * Request to create a new geospatial anchor for further tracking
      *
@@ -67,6 +107,38 @@ public interface GdxAR {
      */
     PerspectiveCamera getARCamera();
 
+    /**
+     * Poses history of camera and trackables, updated at every rendered frame when pose prediction is
+     * enabled in {@link GdxARConfiguration}. Use it to render anchored models at their predicted pose.
+     *
+     * @return pose predictor used by the backend
+     */
+    PosePredictor getPosePredictor();
+
+    /**
+     * CPU raycaster over the planes of the last rendered frame, updated by the backend at every frame.
+     * Can be queried from any thread.
+     *
+     * @return plane raycaster used by the backend
+     */
+    PlaneRaycaster getPlaneRaycaster();
+
+    /**
+     * Height and occupancy grid of detected planes, updated by the backend at every frame when enabled in
+     * {@link GdxARConfiguration}. Can be queried from any thread.
+     *
+     * @return plane grid used by the backend
+     */
+    PlaneGrid getPlaneGrid();
+
+    /**
+     * Planes merged into others by the AR framework, filled by the backend as merges are detected. Use it to
+     * redirect content attached to a subsumed plane, can be queried from any thread.
+     *
+     * @return plane graph used by the backend
+     */
+    PlaneGraph getPlaneGraph();
+
     /**
      * AR rendering is not always needed during app execution, this function disable AR updates.
      * If disabled {@link GdxArApplicationListener#renderARModels(GdxFrame)} will not be called.
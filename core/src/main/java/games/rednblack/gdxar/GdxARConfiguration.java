@@ -12,6 +12,10 @@ public class GdxARConfiguration {
     public GdxPlaneFindingMode planeFindingMode = GdxPlaneFindingMode.HORIZONTAL;
     /** Enable depth processing if device is able to support it */
     public boolean enableDepth = false;
+    /** Hide virtual content behind real objects, {@link GdxOcclusionMode#DEPTH} enables depth processing */
+    public GdxOcclusionMode occlusionMode = GdxOcclusionMode.DISABLED;
+    /** Depth pyramid level used for occlusion, each level halves the resolution of the depth texture */
+    public int occlusionDownsample = 1;
     /** Enable internal debug mode */
     public boolean debugMode = false;
     /** Enable on screen instruction while AR framework is trying to find surfaces */
@@ -19,6 +23,24 @@ public class GdxARConfiguration {
     /** Enable geospatial anchors and API (Still WIP) */
     @Deprecated
     public boolean enableGeospatial = false;
+    /** Keep trackables alive across frames and update only the changed ones, see {@link GdxFrame#setDeltaMode(boolean)} */
+    public boolean enableDeltaFrame = false;
+    /** Move AR camera to its predicted pose at display time, see {@link PosePredictor} */
+    public boolean enablePosePrediction = false;
+    /** Rasterize planes into a height and occupancy grid at every frame, see {@link PlaneGrid} */
+    public boolean enablePlaneGrid = false;
+    /** Store compiled shader programs on disk to speed up next launches, if supported by the device, see
+     * {@link games.rednblack.gdxar.util.ProgramBinaryCache} */
+    public boolean enableProgramBinaryCache = true;
+    /** Compile the plane shader at create time, the first detected plane doesn't cause a compile hitch, see
+     * {@link games.rednblack.gdxar.util.PlaneMaterial#warmUp()} */
+    public boolean enablePlaneShaderWarmUp = false;
+    /** Smoothing filter applied to anchors poses, see {@link PoseFilter} */
+    public final PoseFilterSettings anchorsFilter = new PoseFilterSettings();
+    /** Smoothing filter applied to planes center poses */
+    public final PoseFilterSettings planesFilter = new PoseFilterSettings();
+    /** Smoothing filter applied to augmented images poses */
+    public final PoseFilterSettings augmentedImagesFilter = new PoseFilterSettings();
 
     public GdxARConfiguration() {
 
@@ -28,8 +50,18 @@ public class GdxARConfiguration {
         lightEstimationMode = configuration.lightEstimationMode;
         planeFindingMode = configuration.planeFindingMode;
         enableDepth = configuration.enableDepth;
+        occlusionMode = configuration.occlusionMode;
+        occlusionDownsample = configuration.occlusionDownsample;
         debugMode = configuration.debugMode;
         enableGeospatial = configuration.enableGeospatial;
         enableOnScreenInstructions = configuration.enableOnScreenInstructions;
+        enableDeltaFrame = configuration.enableDeltaFrame;
+        enablePosePrediction = configuration.enablePosePrediction;
+        enablePlaneGrid = configuration.enablePlaneGrid;
+        enableProgramBinaryCache = configuration.enableProgramBinaryCache;
+        enablePlaneShaderWarmUp = configuration.enablePlaneShaderWarmUp;
+        anchorsFilter.set(configuration.anchorsFilter);
+        planesFilter.set(configuration.planesFilter);
+        augmentedImagesFilter.set(configuration.augmentedImagesFilter);
     }
 }
@@ -1,5 +1,7 @@
 package games.rednblack.gdxar;
 
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Pool;
 
 /**
@@ -14,13 +16,42 @@ public class GdxAnchor implements Pool.Poolable {
     /** Current trcking state of the Anchor */
     public GdxTrackingState trackingState = GdxTrackingState.STOPPED;
 
-    /** Native id assigned by AR framework */
+    /** Stable id assigned by {@link TrackableRegistry} to the native AR framework object */
     public long id = -1;
 
+    /** Last update of {@link GdxTrackableDelta} that reported this trackable */
+    long updateId = -1;
+
+    /** Sequence numbers of {@link GdxFrameExchange} publishes that added, updated or removed this trackable */
+    long addedSequence = -1;
+    long updatedSequence = -1;
+    long removedSequence = -1;
+
+    /**
+     * Copy the state of another trackable.
+     *
+     * @param anchor source trackable
+     */
+    public void set(GdxAnchor anchor) {
+        Vector3 position = anchor.gdxPose.getPosition();
+        Quaternion rotation = anchor.gdxPose.getRotation();
+        gdxPose.setPosition(position.x, position.y, position.z);
+        gdxPose.setRotation(rotation.x, rotation.y, rotation.z, rotation.w);
+        trackingState = anchor.trackingState;
+        id = anchor.id;
+        addedSequence = anchor.addedSequence;
+        updatedSequence = anchor.updatedSequence;
+        removedSequence = anchor.removedSequence;
+    }
+
     @Override
     public void reset() {
         trackingState = GdxTrackingState.STOPPED;
         gdxPose.reset();
         id = -1;
+        updateId = -1;
+        addedSequence = -1;
+        updatedSequence = -1;
+        removedSequence = -1;
     }
 }
@@ -1,7 +1,5 @@
 package games.rednblack.gdxar;
 
-import java.util.Objects;
-
 /**
  * Wrapper class to Augmented Image object in native AR framework.
  *
@@ -23,6 +21,19 @@ public class GdxAugmentedImage extends GdxAnchor {
     /** Name in the augmented image database */
     public String name;
 
+    @Override
+    public void set(GdxAnchor anchor) {
+        super.set(anchor);
+        if (anchor instanceof GdxAugmentedImage) {
+            GdxAugmentedImage image = (GdxAugmentedImage) anchor;
+            trackingMethod = image.trackingMethod;
+            index = image.index;
+            extentX = image.extentX;
+            extentZ = image.extentZ;
+            name = image.name;
+        }
+    }
+
     @Override
     public void reset() {
         super.reset();
@@ -43,6 +54,6 @@ public class GdxAugmentedImage extends GdxAnchor {
 
     @Override
     public int hashCode() {
-        return Objects.hash(index);
+        return index;
     }
 }
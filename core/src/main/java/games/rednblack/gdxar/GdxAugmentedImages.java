@@ -1,14 +1,26 @@
 package games.rednblack.gdxar;
 
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.ObjectMap;
 
 /**
  * Utility class for Augmented Images management.
+ * <p>
+ * Images are indexed by database index and by name as they are added, so lookups don't scan the array.
+ * Images added before their index or name is known are indexed at the next lookup.
  *
  * @author fgnm
  */
 public class GdxAugmentedImages extends Array<GdxAugmentedImage> {
-    private final GdxAugmentedImage tmpImage = new GdxAugmentedImage();
+    /** Images by index in the augmented image database */
+    private final IntMap<GdxAugmentedImage> byIndex = new IntMap<>();
+
+    /** Images by name in the augmented image database */
+    private final ObjectMap<String, GdxAugmentedImage> byName = new ObjectMap<>();
+
+    /** Images added without index or name */
+    private final Array<GdxAugmentedImage> pending = new Array<>(false, 4, GdxAugmentedImage.class);
 
     public GdxAugmentedImages() {
         super(GdxAugmentedImage.class);
@@ -24,18 +36,195 @@ public class GdxAugmentedImages extends Array<GdxAugmentedImage> {
 
     public GdxAugmentedImages(Array<? extends GdxAugmentedImage> array) {
         super(array);
+        rebuildIndex();
     }
 
     public GdxAugmentedImages(GdxAugmentedImage[] array) {
         super(array);
+        rebuildIndex();
     }
 
     public GdxAugmentedImages(boolean ordered, GdxAugmentedImage[] array, int start, int count) {
         super(ordered, array, start, count);
+        rebuildIndex();
     }
 
+    /**
+     * Check if an image is currently tracked.
+     *
+     * @param index index in the augmented image database
+     * @return true if the image is in the list
+     */
     public boolean contains(int index) {
-        tmpImage.index = index;
-        return contains(tmpImage, false);
+        return getByIndex(index) != null;
+    }
+
+    /**
+     * Check if an image is currently tracked.
+     *
+     * @param name name in the augmented image database
+     * @return true if the image is in the list
+     */
+    public boolean contains(String name) {
+        return get(name) != null;
+    }
+
+    /**
+     * Get an image by its database index, while {@link #get(int)} returns the image at a position of the array.
+     *
+     * @param index index in the augmented image database
+     * @return the image or null if not tracked
+     */
+    public GdxAugmentedImage getByIndex(int index) {
+        indexPending();
+        GdxAugmentedImage image = byIndex.get(index);
+        if (image != null && image.index != index) {
+            rebuildIndex();
+            image = byIndex.get(index);
+        }
+        return image;
+    }
+
+    /**
+     * Get an image by its database name.
+     *
+     * @param name name in the augmented image database
+     * @return the image or null if not tracked
+     */
+    public GdxAugmentedImage get(String name) {
+        indexPending();
+        GdxAugmentedImage image = byName.get(name);
+        if (image != null && !name.equals(image.name)) {
+            rebuildIndex();
+            image = byName.get(name);
+        }
+        return image;
+    }
+
+    private void index(GdxAugmentedImage image) {
+        if (image == null) return;
+        if (image.index >= 0)
+            byIndex.put(image.index, image);
+        if (image.name != null)
+            byName.put(image.name, image);
+        if (image.index < 0 || image.name == null)
+            pending.add(image);
+    }
+
+    private void unindex(GdxAugmentedImage image) {
+        if (image == null) return;
+        if (byIndex.get(image.index) == image)
+            byIndex.remove(image.index);
+        if (image.name != null && byName.get(image.name) == image)
+            byName.remove(image.name);
+        if (pending.size > 0)
+            pending.removeValue(image, true);
+    }
+
+    private void indexPending() {
+        for (int i = pending.size - 1; i >= 0; i--) {
+            GdxAugmentedImage image = pending.get(i);
+            if (image.index >= 0)
+                byIndex.put(image.index, image);
+            if (image.name != null)
+                byName.put(image.name, image);
+            if (image.index >= 0 && image.name != null)
+                pending.removeIndex(i);
+        }
+    }
+
+    private void rebuildIndex() {
+        byIndex.clear();
+        byName.clear();
+        pending.clear();
+        for (int i = 0; i < size; i++)
+            index(items[i]);
+    }
+
+    @Override
+    public void add(GdxAugmentedImage value) {
+        super.add(value);
+        index(value);
+    }
+
+    @Override
+    public void add(GdxAugmentedImage value1, GdxAugmentedImage value2) {
+        super.add(value1, value2);
+        index(value1);
+        index(value2);
+    }
+
+    @Override
+    public void add(GdxAugmentedImage value1, GdxAugmentedImage value2, GdxAugmentedImage value3) {
+        super.add(value1, value2, value3);
+        index(value1);
+        index(value2);
+        index(value3);
+    }
+
+    @Override
+    public void add(GdxAugmentedImage value1, GdxAugmentedImage value2, GdxAugmentedImage value3, GdxAugmentedImage value4) {
+        super.add(value1, value2, value3, value4);
+        index(value1);
+        index(value2);
+        index(value3);
+        index(value4);
+    }
+
+    @Override
+    public void addAll(GdxAugmentedImage[] array, int start, int count) {
+        super.addAll(array, start, count);
+        for (int i = start, n = start + count; i < n; i++)
+            index(array[i]);
+    }
+
+    @Override
+    public void set(int index, GdxAugmentedImage value) {
+        if (index < size)
+            unindex(items[index]);
+        super.set(index, value);
+        index(value);
+    }
+
+    @Override
+    public void insert(int index, GdxAugmentedImage value) {
+        super.insert(index, value);
+        index(value);
+    }
+
+    @Override
+    public GdxAugmentedImage removeIndex(int index) {
+        GdxAugmentedImage value = super.removeIndex(index);
+        unindex(value);
+        return value;
+    }
+
+    @Override
+    public void removeRange(int start, int end) {
+        for (int i = start; i <= end && i < size; i++)
+            unindex(items[i]);
+        super.removeRange(start, end);
+    }
+
+    @Override
+    public GdxAugmentedImage pop() {
+        GdxAugmentedImage value = super.pop();
+        unindex(value);
+        return value;
+    }
+
+    @Override
+    public void truncate(int newSize) {
+        for (int i = newSize; i < size; i++)
+            unindex(items[i]);
+        super.truncate(newSize);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        byIndex.clear();
+        byName.clear();
+        pending.clear();
     }
 }
@@ -0,0 +1,215 @@
+package games.rednblack.gdxar;
+
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.Null;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CPU access to the YUV camera image of a frame, see {@link GdxFrame#acquireCameraImage()}. Buffers are read
+ * only views over the native image, nothing is copied. Pixels are addressed with row and pixel strides:
+ * the Y value of (x, y) is at {@code y * yRowStride + x * yPixelStride}, U and V of (x, y) are at
+ * {@code (y / 2) * uvRowStride + (x / 2) * uvPixelStride} of their buffers. When U and V are interleaved in a
+ * single native plane their buffers are two views over the same memory, offset by one byte.
+ * <p>
+ * Images are reference counted, the native image is released as soon as the last reference is released.
+ * It can be kept after the render call and used from another thread, but AR frameworks allow only a few
+ * camera images alive at the same time, so it should be released promptly.
+ *
+ * @author fgnm
+ */
+public class GdxCameraImage {
+
+    /**
+     * Acquire the camera image of the current frame, implemented by backends.
+     */
+    public interface Source {
+        /**
+         * @return a new image with one reference or null if the camera image is not available
+         */
+        @Null
+        GdxCameraImage acquire();
+    }
+
+    private ByteBuffer yBuffer, uBuffer, vBuffer;
+    private int width, height;
+    private int yRowStride, yPixelStride, uvRowStride, uvPixelStride;
+    private long timestamp;
+
+    /** Focal length and principal point in image pixels */
+    private float focalX = 1, focalY = 1, principalX = 0, principalY = 0;
+
+    private final AtomicInteger references = new AtomicInteger(1);
+    private Disposable nativeImage;
+
+    /**
+     * Set the Y plane, called by backends.
+     *
+     * @param buffer read only view of the plane
+     * @param width image width in pixels
+     * @param height image height in pixels
+     * @param rowStride distance between rows in bytes
+     * @param pixelStride distance between pixels in bytes
+     */
+    public void setYPlane(ByteBuffer buffer, int width, int height, int rowStride, int pixelStride) {
+        yBuffer = buffer;
+        this.width = width;
+        this.height = height;
+        yRowStride = rowStride;
+        yPixelStride = pixelStride;
+    }
+
+    /**
+     * Set the chroma planes, half resolution in both directions, called by backends.
+     *
+     * @param uBuffer read only view of the U plane
+     * @param vBuffer read only view of the V plane
+     * @param rowStride distance between rows in bytes, same for both planes
+     * @param pixelStride distance between pixels in bytes, 2 when planes are interleaved
+     */
+    public void setUVPlanes(ByteBuffer uBuffer, ByteBuffer vBuffer, int rowStride, int pixelStride) {
+        this.uBuffer = uBuffer;
+        this.vBuffer = vBuffer;
+        uvRowStride = rowStride;
+        uvPixelStride = pixelStride;
+    }
+
+    /**
+     * Set the camera intrinsics of the image, called by backends.
+     *
+     * @param focalX focal length in pixels
+     * @param focalY focal length in pixels
+     * @param principalX principal point in pixels
+     * @param principalY principal point in pixels
+     */
+    public void setIntrinsics(float focalX, float focalY, float principalX, float principalY) {
+        this.focalX = focalX;
+        this.focalY = focalY;
+        this.principalX = principalX;
+        this.principalY = principalY;
+    }
+
+    /**
+     * Called by backends.
+     *
+     * @param timestamp capture time in nanoseconds
+     * @param nativeImage disposed when the last reference is released
+     */
+    public void setNativeImage(long timestamp, Disposable nativeImage) {
+        this.timestamp = timestamp;
+        this.nativeImage = nativeImage;
+    }
+
+    /**
+     * Add a reference, every call must be matched by {@link #release()}.
+     *
+     * @return this image
+     */
+    public GdxCameraImage retain() {
+        if (references.getAndIncrement() <= 0)
+            throw new GdxRuntimeException("Camera image already released.");
+        return this;
+    }
+
+    /**
+     * Drop a reference, the native image is released with the last one and buffers must not be used anymore.
+     */
+    public void release() {
+        int count = references.decrementAndGet();
+        if (count < 0)
+            throw new GdxRuntimeException("Camera image already released.");
+        if (count == 0) {
+            yBuffer = uBuffer = vBuffer = null;
+            if (nativeImage != null) {
+                nativeImage.dispose();
+                nativeImage = null;
+            }
+        }
+    }
+
+    /**
+     * @return false after the last reference was released
+     */
+    public boolean isValid() {
+        return references.get() > 0;
+    }
+
+    /**
+     * @return luma values, read only view over the native image
+     */
+    public ByteBuffer getYBuffer() {
+        return yBuffer;
+    }
+
+    /**
+     * @return Cb values, read only view over the native image
+     */
+    public ByteBuffer getUBuffer() {
+        return uBuffer;
+    }
+
+    /**
+     * @return Cr values, read only view over the native image
+     */
+    public ByteBuffer getVBuffer() {
+        return vBuffer;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getYRowStride() {
+        return yRowStride;
+    }
+
+    public int getYPixelStride() {
+        return yPixelStride;
+    }
+
+    public int getUVRowStride() {
+        return uvRowStride;
+    }
+
+    public int getUVPixelStride() {
+        return uvPixelStride;
+    }
+
+    /**
+     * @return capture time of the image in nanoseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public float getFocalX() {
+        return focalX;
+    }
+
+    public float getFocalY() {
+        return focalY;
+    }
+
+    public float getPrincipalX() {
+        return principalX;
+    }
+
+    public float getPrincipalY() {
+        return principalY;
+    }
+
+    /**
+     * @param x pixel column
+     * @param y pixel row
+     * @return luma from 0 to 255
+     */
+    public int getY(int x, int y) {
+        return yBuffer.get(y * yRowStride + x * yPixelStride) & 0xff;
+    }
+}
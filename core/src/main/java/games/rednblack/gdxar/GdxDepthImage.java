@@ -0,0 +1,372 @@
+package games.rednblack.gdxar;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.Vector3;
+
+import java.nio.ShortBuffer;
+
+/**
+ * CPU access to the depth image of a frame, see {@link GdxFrame#getDepthImage()}. Depth is stored as 16 bit
+ * unsigned millimeters, 0 means no depth. The buffer is a view over the native image, it's valid only while
+ * the frame is being rendered and must not be modified.
+ * <p>
+ * A min/max pyramid of the image is built the first time {@link #getMinDepth(int, int, int)} or
+ * {@link #getMaxDepth(int, int, int)} are called, to check large regions without reading every pixel.
+ *
+ * @author fgnm
+ */
+public class GdxDepthImage {
+
+    /**
+     * Fill the depth image of the current frame, implemented by backends.
+     */
+    public interface Source {
+        /**
+         * @param image image to fill with {@link #set(ShortBuffer, int, int, int, long)}
+         * @return false if depth is not available for the current frame
+         */
+        boolean acquire(GdxDepthImage image);
+    }
+
+    private ShortBuffer buffer;
+    private int width, height, rowStride;
+    private long timestamp;
+    private boolean valid = false;
+
+    /** Affine transform from normalized view to normalized image coordinates */
+    private final float[] viewToImage = new float[]{1, 0, 0, 0, 1, 0};
+
+    /** Focal length and principal point in image pixels */
+    private float focalX = 1, focalY = 1, principalX = 0, principalY = 0;
+
+    /** Transform of the camera sensor to world, x right, y up and looking along -z */
+    private final Matrix4 cameraTransform = new Matrix4();
+
+    /** Downsampled levels, level 0 is the image itself */
+    private short[][] minLevels = new short[0][];
+    private short[][] maxLevels = new short[0][];
+    private int[] levelWidths = new int[0];
+    private int[] levelHeights = new int[0];
+    private int levelCount = 0;
+    private boolean pyramidValid = false;
+
+    /**
+     * Set the native depth data, called by backends.
+     *
+     * @param buffer depth values in millimeters
+     * @param width image width in pixels
+     * @param height image height in pixels
+     * @param rowStride distance between rows, in values
+     * @param timestamp capture time in nanoseconds
+     */
+    public void set(ShortBuffer buffer, int width, int height, int rowStride, long timestamp) {
+        this.buffer = buffer;
+        this.width = width;
+        this.height = height;
+        this.rowStride = rowStride;
+        this.timestamp = timestamp;
+        valid = true;
+        pyramidValid = false;
+    }
+
+    /**
+     * Set how screen maps on the image, called by backends. Normalized image coordinates are
+     * u = m00 * x + m01 * y + m02 and v = m10 * x + m11 * y + m12, with x and y normalized view coordinates.
+     */
+    public void setViewTransform(float m00, float m01, float m02, float m10, float m11, float m12) {
+        viewToImage[0] = m00;
+        viewToImage[1] = m01;
+        viewToImage[2] = m02;
+        viewToImage[3] = m10;
+        viewToImage[4] = m11;
+        viewToImage[5] = m12;
+    }
+
+    /**
+     * Set the camera intrinsics scaled to the depth image, called by backends.
+     *
+     * @param focalX focal length in pixels
+     * @param focalY focal length in pixels
+     * @param principalX principal point in pixels
+     * @param principalY principal point in pixels
+     */
+    public void setIntrinsics(float focalX, float focalY, float principalX, float principalY) {
+        this.focalX = focalX;
+        this.focalY = focalY;
+        this.principalX = principalX;
+        this.principalY = principalY;
+    }
+
+    /**
+     * Set the transform of the camera sensor to world when the image was captured, called by backends.
+     *
+     * @param values column major 4x4 matrix
+     */
+    public void setCameraTransform(float[] values) {
+        cameraTransform.set(values);
+    }
+
+    /**
+     * Transform of the camera sensor to world when the image was captured, x right, y up and looking along -z.
+     *
+     * @return camera transform, must not be modified
+     */
+    public Matrix4 getCameraTransform() {
+        return cameraTransform;
+    }
+
+    /**
+     * Convert an image position and its depth into world space.
+     *
+     * @param x pixel column, can be fractional
+     * @param y pixel row, can be fractional
+     * @param depth depth in meters along the camera axis
+     * @param out output world position
+     * @return out
+     */
+    public Vector3 unproject(float x, float y, float depth, Vector3 out) {
+        return out.set((x - principalX) / focalX * depth, -(y - principalY) / focalY * depth, -depth).mul(cameraTransform);
+    }
+
+    /**
+     * Convert a position in camera sensor space into image pixels.
+     *
+     * @param cameraPosition position in camera sensor space
+     * @param out output pixel position, can be outside the image
+     * @return false if the position is behind the camera
+     */
+    public boolean project(Vector3 cameraPosition, Vector2 out) {
+        if (cameraPosition.z >= 0) return false;
+        float depth = -cameraPosition.z;
+        out.set(focalX * cameraPosition.x / depth + principalX, principalY - focalY * cameraPosition.y / depth);
+        return true;
+    }
+
+    /**
+     * Release the native data, called by backends when the frame is done.
+     */
+    public void invalidate() {
+        buffer = null;
+        valid = false;
+        pyramidValid = false;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * @return depth values in millimeters, read only view over the native image
+     */
+    public ShortBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return distance between rows in the buffer, in values
+     */
+    public int getRowStride() {
+        return rowStride;
+    }
+
+    /**
+     * @return capture time of the depth image in nanoseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @param x pixel column
+     * @param y pixel row
+     * @return depth in millimeters, 0 if not available
+     */
+    public int getRawDepth(int x, int y) {
+        return buffer.get(y * rowStride + x) & 0xffff;
+    }
+
+    /**
+     * @param x pixel column
+     * @param y pixel row
+     * @return depth in meters, 0 if not available
+     */
+    public float getDepth(int x, int y) {
+        return getRawDepth(x, y) * 0.001f;
+    }
+
+    /**
+     * Sample depth under a screen point, using the size of the libGDX window.
+     *
+     * @param screenX position in screen coordinate
+     * @param screenY position in screen coordinate
+     * @return depth in meters, 0 if not available
+     */
+    public float depthAt(float screenX, float screenY) {
+        return depthAt(screenX, screenY, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
+    }
+
+    /**
+     * Sample depth under a screen point.
+     *
+     * @param screenX position in screen coordinate
+     * @param screenY position in screen coordinate
+     * @param screenWidth width of the view
+     * @param screenHeight height of the view
+     * @return depth in meters, 0 if not available
+     */
+    public float depthAt(float screenX, float screenY, float screenWidth, float screenHeight) {
+        float x = screenX / screenWidth, y = screenY / screenHeight;
+        int px = (int) ((viewToImage[0] * x + viewToImage[1] * y + viewToImage[2]) * width);
+        int py = (int) ((viewToImage[3] * x + viewToImage[4] * y + viewToImage[5]) * height);
+        if (px < 0 || py < 0 || px >= width || py >= height) return 0;
+        return getDepth(px, py);
+    }
+
+    /**
+     * Map a screen point on the image.
+     *
+     * @param screenX position in screen coordinate
+     * @param screenY position in screen coordinate
+     * @param screenWidth width of the view
+     * @param screenHeight height of the view
+     * @param out output position in image pixels, can be outside the image
+     * @return out
+     */
+    public Vector2 screenToImage(float screenX, float screenY, float screenWidth, float screenHeight, Vector2 out) {
+        float x = screenX / screenWidth, y = screenY / screenHeight;
+        return out.set((viewToImage[0] * x + viewToImage[1] * y + viewToImage[2]) * width,
+                (viewToImage[3] * x + viewToImage[4] * y + viewToImage[5]) * height);
+    }
+
+    /**
+     * @return number of pyramid levels, level 0 is the full image
+     */
+    public int getLevelCount() {
+        buildPyramid();
+        return levelCount;
+    }
+
+    public int getLevelWidth(int level) {
+        buildPyramid();
+        return levelWidths[level];
+    }
+
+    public int getLevelHeight(int level) {
+        buildPyramid();
+        return levelHeights[level];
+    }
+
+    /**
+     * Nearest valid depth in a pyramid cell, each cell of level n covers 2^n x 2^n pixels.
+     *
+     * @param level pyramid level
+     * @param x cell column
+     * @param y cell row
+     * @return depth in meters, 0 if no pixel of the cell has depth
+     */
+    public float getMinDepth(int level, int x, int y) {
+        if (level == 0) return getDepth(x, y);
+        buildPyramid();
+        return (minLevels[level][y * levelWidths[level] + x] & 0xffff) * 0.001f;
+    }
+
+    /**
+     * Farthest depth in a pyramid cell, each cell of level n covers 2^n x 2^n pixels.
+     *
+     * @param level pyramid level
+     * @param x cell column
+     * @param y cell row
+     * @return depth in meters, 0 if no pixel of the cell has depth
+     */
+    public float getMaxDepth(int level, int x, int y) {
+        if (level == 0) return getDepth(x, y);
+        buildPyramid();
+        return (maxLevels[level][y * levelWidths[level] + x] & 0xffff) * 0.001f;
+    }
+
+    /**
+     * Copy the nearest depth of a pyramid level into a tightly packed buffer, rows of
+     * {@link #getLevelWidth(int)} values.
+     *
+     * @param level pyramid level, level 0 is the full image
+     * @param out output buffer, at least level width * level height values from its position
+     */
+    public void copyLevel(int level, ShortBuffer out) {
+        buildPyramid();
+        int w = levelWidths[level], h = levelHeights[level];
+        if (level == 0) {
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++)
+                    out.put(buffer.get(y * rowStride + x));
+            }
+        } else {
+            out.put(minLevels[level], 0, w * h);
+        }
+    }
+
+    private void buildPyramid() {
+        if (pyramidValid || !valid) return;
+
+        int count = 1;
+        for (int w = width, h = height; w > 1 || h > 1; count++) {
+            w = Math.max(1, (w + 1) / 2);
+            h = Math.max(1, (h + 1) / 2);
+        }
+        if (minLevels.length < count) {
+            minLevels = new short[count][];
+            maxLevels = new short[count][];
+            levelWidths = new int[count];
+            levelHeights = new int[count];
+        }
+        levelCount = count;
+        levelWidths[0] = width;
+        levelHeights[0] = height;
+
+        for (int level = 1; level < count; level++) {
+            int parentWidth = levelWidths[level - 1], parentHeight = levelHeights[level - 1];
+            int w = Math.max(1, (parentWidth + 1) / 2), h = Math.max(1, (parentHeight + 1) / 2);
+            levelWidths[level] = w;
+            levelHeights[level] = h;
+            if (minLevels[level] == null || minLevels[level].length < w * h) {
+                minLevels[level] = new short[w * h];
+                maxLevels[level] = new short[w * h];
+            }
+            short[] min = minLevels[level], max = maxLevels[level];
+
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    int minValue = Integer.MAX_VALUE, maxValue = 0;
+                    for (int dy = 0; dy < 2; dy++) {
+                        int py = Math.min(y * 2 + dy, parentHeight - 1);
+                        for (int dx = 0; dx < 2; dx++) {
+                            int px = Math.min(x * 2 + dx, parentWidth - 1);
+                            int minParent, maxParent;
+                            if (level == 1) {
+                                minParent = maxParent = getRawDepth(px, py);
+                            } else {
+                                minParent = minLevels[level - 1][py * parentWidth + px] & 0xffff;
+                                maxParent = maxLevels[level - 1][py * parentWidth + px] & 0xffff;
+                            }
+                            // 0 is missing depth, ignored by min
+                            if (minParent != 0 && minParent < minValue) minValue = minParent;
+                            if (maxParent > maxValue) maxValue = maxParent;
+                        }
+                    }
+                    min[y * w + x] = (short) (minValue == Integer.MAX_VALUE ? 0 : minValue);
+                    max[y * w + x] = (short) maxValue;
+                }
+            }
+        }
+        pyramidValid = true;
+    }
+}
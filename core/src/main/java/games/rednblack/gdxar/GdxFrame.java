@@ -1,9 +1,12 @@
 package games.rednblack.gdxar;
 
+import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g3d.environment.SphericalHarmonics;
+import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Null;
 import com.badlogic.gdx.utils.Pool;
 import com.badlogic.gdx.utils.Pools;
 
@@ -40,18 +43,316 @@ public class GdxFrame implements Pool.Poolable {
     /** Ambient light intensity as a single float format, when SphericalHarmonics are not supported */
     public float ambientIntensity = 0;
 
+    /** Projection matrix of the AR camera when this frame was captured */
+    public final Matrix4 cameraProjection = new Matrix4();
+
+    /** View matrix of the AR camera when this frame was captured */
+    public final Matrix4 cameraView = new Matrix4();
+
+    /** Capture time of the camera image in nanoseconds */
+    public long timestamp = 0;
+
+    /** Sequence number of the {@link GdxFrameExchange} publish that produced this frame */
+    long sequence = -1;
+
+    /** Keep trackables alive across frames and track changes, see {@link #setDeltaMode(boolean)} */
+    private boolean deltaMode = false;
+
+    /** Stable ids of native trackables and persistent trackables in delta mode */
+    private final TrackableRegistry trackableRegistry;
+
+    /** Packed storage for poses of the trackables in this frame */
+    private final PoseBuffer poseBuffer = new PoseBuffer();
+
+    private final GdxTrackableDelta<GdxAnchor> anchorsDelta;
+    private final GdxTrackableDelta<GdxPlane> planesDelta;
+    private final GdxTrackableDelta<GdxAugmentedImage> augmentedImagesDelta;
+
+    /** Depth image filled on demand by {@link #depthSource} */
+    private final GdxDepthImage depthImage = new GdxDepthImage();
+    private GdxDepthImage.Source depthSource;
+
+    /** Camera image acquired on demand by {@link #cameraSource}, the frame holds one reference */
+    private GdxCameraImage cameraImage;
+    private GdxCameraImage.Source cameraSource;
+
+    public GdxFrame() {
+        this(new TrackableRegistry());
+    }
+
+    public GdxFrame(TrackableRegistry trackableRegistry) {
+        this.trackableRegistry = trackableRegistry;
+        anchorsDelta = new GdxTrackableDelta<>(GdxAnchor.class, anchors, trackableRegistry, poseBuffer);
+        planesDelta = new GdxTrackableDelta<>(GdxPlane.class, planes, trackableRegistry, poseBuffer);
+        augmentedImagesDelta = new GdxTrackableDelta<>(GdxAugmentedImage.class, augmentedImages, trackableRegistry, poseBuffer);
+    }
+
+    /**
+     * Apply matrices of the AR camera to a libGDX camera.
+     *
+     * @param camera camera used to render AR models
+     */
+    public void applyCamera(Camera camera) {
+        camera.projection.set(cameraProjection);
+        camera.view.set(cameraView);
+        camera.combined.set(camera.projection);
+        Matrix4.mul(camera.combined.val, camera.view.val);
+        camera.invProjectionView.set(camera.combined);
+        Matrix4.inv(camera.invProjectionView.val);
+    }
+
+    /**
+     * Depth of the camera image, acquired from the AR framework only the first time it's requested in a
+     * render call. Must be used from the render thread and not kept after
+     * {@link GdxArApplicationListener#renderARModels(GdxFrame)}.
+     *
+     * @return depth image or null if depth is disabled or not available yet
+     */
+    @Null
+    public GdxDepthImage getDepthImage() {
+        if (depthSource == null) return null;
+        if (!depthImage.isValid() && !depthSource.acquire(depthImage)) return null;
+        return depthImage;
+    }
+
+    /**
+     * Set the backend depth provider for the next render call, the previous depth image is released.
+     *
+     * @param depthSource provider of the current depth image, null if depth is disabled
+     */
+    public void setDepthSource(@Null GdxDepthImage.Source depthSource) {
+        this.depthSource = depthSource;
+        depthImage.invalidate();
+    }
+
+    /**
+     * YUV camera image, acquired from the AR framework only the first time it's requested in a render call.
+     * Every call adds a reference that must be released with {@link GdxCameraImage#release()}, the image can
+     * be kept after the render call. Must be called from the render thread.
+     *
+     * @return camera image or null if not available
+     */
+    @Null
+    public GdxCameraImage acquireCameraImage() {
+        if (cameraSource == null) return null;
+        if (cameraImage == null) {
+            cameraImage = cameraSource.acquire();
+            if (cameraImage == null) return null;
+        }
+        return cameraImage.retain();
+    }
+
+    /**
+     * Set the backend camera image provider for the next render call, the frame drops its reference to the
+     * previous image.
+     *
+     * @param cameraSource provider of the current camera image, null if not supported
+     */
+    public void setCameraSource(@Null GdxCameraImage.Source cameraSource) {
+        this.cameraSource = cameraSource;
+        if (cameraImage != null) {
+            cameraImage.release();
+            cameraImage = null;
+        }
+    }
+
+    /**
+     * Sequence number assigned by {@link GdxFrameExchange} when the frame was published.
+     * @return sequence number or -1 if the frame has not been exchanged
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Copy camera and light estimation data of another frame, trackables are not copied.
+     */
+    void copyState(GdxFrame frame) {
+        lightEstimationMode = frame.lightEstimationMode;
+        lightIntensity.set(frame.lightIntensity);
+        lightDirection.set(frame.lightDirection);
+        lightColor.set(frame.lightColor);
+        System.arraycopy(frame.sphericalHarmonics.data, 0, sphericalHarmonics.data, 0, sphericalHarmonics.data.length);
+        ambientIntensity = frame.ambientIntensity;
+        cameraProjection.set(frame.cameraProjection);
+        cameraView.set(frame.cameraView);
+        timestamp = frame.timestamp;
+        deltaMode = frame.deltaMode;
+    }
+
+    /**
+     * Registry used to assign stable ids to native trackables, shared by the backend frame and the frames
+     * acquired from {@link GdxFrameExchange}.
+     * @return the trackable registry of this frame
+     */
+    public TrackableRegistry getTrackableRegistry() {
+        return trackableRegistry;
+    }
+
+    /**
+     * In delta mode trackables are not released at every frame, instead the same objects are kept alive
+     * and updated only when the AR framework reports a change. Changes of the last update are available
+     * with {@link #getAnchorsDelta()}, {@link #getPlanesDelta()} and {@link #getAugmentedImagesDelta()},
+     * while {@link #getAnchors()}, {@link #getPlanes()} and {@link #getAugmentedImages()} contain every
+     * trackable currently known.
+     *
+     * @param deltaMode enable or disable delta mode, changing mode releases every trackable
+     */
+    public void setDeltaMode(boolean deltaMode) {
+        if (this.deltaMode == deltaMode) return;
+        reset();
+        this.deltaMode = deltaMode;
+    }
+
+    /**
+     * Check if the frame is keeping trackables across updates.
+     * @return true if delta mode is enabled
+     */
+    public boolean isDeltaMode() {
+        return deltaMode;
+    }
+
+    /**
+     * Prepare the frame for a new update from the backend. In standard mode every trackable is released,
+     * in delta mode only trackables removed by the previous update are released.
+     */
+    public void beginUpdate() {
+        if (!deltaMode) {
+            reset();
+            return;
+        }
+
+        anchorsDelta.begin();
+        planesDelta.begin();
+        augmentedImagesDelta.begin();
+    }
+
+    /**
+     * Complete a delta update, trackables that stopped tracking are moved into the removed set.
+     */
+    public void endUpdate() {
+        if (!deltaMode) return;
+
+        anchorsDelta.removeStopped();
+        planesDelta.removeStopped();
+        augmentedImagesDelta.removeStopped();
+    }
+
+    /**
+     * Get the persistent anchor with the given id, a new one is created if it's not already tracked.
+     * Only available in delta mode.
+     *
+     * @param id stable id assigned by {@link TrackableRegistry}
+     * @return anchor object to be updated
+     */
+    public GdxAnchor obtainAnchor(long id) {
+        return anchorsDelta.obtain(id);
+    }
+
+    /**
+     * Get the persistent plane with the given id, a new one is created if it's not already tracked.
+     * Only available in delta mode.
+     *
+     * @param id stable id assigned by {@link TrackableRegistry}
+     * @return plane object to be updated
+     */
+    public GdxPlane obtainPlane(long id) {
+        return planesDelta.obtain(id);
+    }
+
+    /**
+     * Get the persistent augmented image with the given id, a new one is created if it's not already tracked.
+     * Only available in delta mode.
+     *
+     * @param id stable id assigned by {@link TrackableRegistry}
+     * @return augmented image object to be updated
+     */
+    public GdxAugmentedImage obtainAugmentedImage(long id) {
+        return augmentedImagesDelta.obtain(id);
+    }
+
+    /**
+     * Stop tracking a trackable, it will be moved into the removed set. Only available in delta mode.
+     *
+     * @param id stable id assigned by {@link TrackableRegistry}
+     */
+    public void removeAnchor(long id) {
+        anchorsDelta.remove(id);
+    }
+
+    /**
+     * Stop tracking a trackable, it will be moved into the removed set. Only available in delta mode.
+     *
+     * @param id stable id assigned by {@link TrackableRegistry}
+     */
+    public void removePlane(long id) {
+        planesDelta.remove(id);
+    }
+
+    /**
+     * Stop tracking a trackable, it will be moved into the removed set. Only available in delta mode.
+     *
+     * @param id stable id assigned by {@link TrackableRegistry}
+     */
+    public void removeAugmentedImage(long id) {
+        augmentedImagesDelta.remove(id);
+    }
+
+    /**
+     * Anchors added, updated and removed by the last update, only available in delta mode.
+     * @return anchors changes
+     */
+    public GdxTrackableDelta<GdxAnchor> getAnchorsDelta() {
+        return anchorsDelta;
+    }
+
+    /**
+     * Planes added, updated and removed by the last update, only available in delta mode.
+     * @return planes changes
+     */
+    public GdxTrackableDelta<GdxPlane> getPlanesDelta() {
+        return planesDelta;
+    }
+
+    /**
+     * Augmented images added, updated and removed by the last update, only available in delta mode.
+     * @return augmented images changes
+     */
+    public GdxTrackableDelta<GdxAugmentedImage> getAugmentedImagesDelta() {
+        return augmentedImagesDelta;
+    }
+
     public void addAnchor(GdxAnchor anchor) {
+        anchor.gdxPose.attach(poseBuffer);
         anchors.add(anchor);
     }
 
     public void addPlane(GdxPlane plane) {
+        plane.gdxPose.attach(poseBuffer);
         planes.add(plane);
     }
 
     public void addAugmentedImage(GdxAugmentedImage augmentedImage) {
+        augmentedImage.gdxPose.attach(poseBuffer);
         augmentedImages.add(augmentedImage);
     }
 
+    /**
+     * Buffer that stores poses of every trackable in this frame.
+     * @return pose buffer of this frame
+     */
+    public PoseBuffer getPoseBuffer() {
+        return poseBuffer;
+    }
+
+    /**
+     * Compute transformation matrices of every trackable changed since the last call in a single pass.
+     * Afterwards {@link GdxPose#getTransform(com.badlogic.gdx.math.Matrix4)} is just a copy.
+     */
+    public void updateTransforms() {
+        poseBuffer.updateMatrices();
+    }
+
     /**
      * Get current anchors list tracked by the framework.
      * @return Array with anchors in updated state
@@ -76,6 +377,33 @@ public class GdxFrame implements Pool.Poolable {
         return augmentedImages;
     }
 
+    /**
+     * Get an anchor by id, available in delta mode and on frames acquired from {@link GdxFrameExchange}.
+     * @param id stable id assigned by {@link TrackableRegistry}
+     * @return the anchor or null if not tracked
+     */
+    public GdxAnchor getAnchor(long id) {
+        return anchorsDelta.get(id);
+    }
+
+    /**
+     * Get a plane by id, available in delta mode and on frames acquired from {@link GdxFrameExchange}.
+     * @param id stable id assigned by {@link TrackableRegistry}
+     * @return the plane or null if not tracked
+     */
+    public GdxPlane getPlane(long id) {
+        return planesDelta.get(id);
+    }
+
+    /**
+     * Get an augmented image by id, available in delta mode and on frames acquired from {@link GdxFrameExchange}.
+     * @param id stable id assigned by {@link TrackableRegistry}
+     * @return the augmented image or null if not tracked
+     */
+    public GdxAugmentedImage getAugmentedImage(long id) {
+        return augmentedImagesDelta.get(id);
+    }
+
     @Override
     public void reset() {
         Pools.freeAll(anchors);
@@ -86,5 +414,9 @@ public class GdxFrame implements Pool.Poolable {
 
         Pools.freeAll(augmentedImages);
         augmentedImages.clear();
+
+        anchorsDelta.clear();
+        planesDelta.clear();
+        augmentedImagesDelta.clear();
     }
 }
@@ -0,0 +1,149 @@
+package games.rednblack.gdxar;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Pools;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free triple buffer used to hand {@link GdxFrame} from the tracking thread to the render thread.
+ * <p>
+ * The tracking thread fills its own working frame and calls {@link #publish(GdxFrame)}, that copies it into
+ * the back slot and swaps it with the middle one. The render thread calls {@link #acquire()} to swap the
+ * middle slot with the front one and always gets the latest complete frame, intermediate frames are dropped
+ * but neither side ever waits for the other.
+ * <p>
+ * Frames returned by {@link #acquire()} are copies, trackables must be identified by id and not by reference.
+ * Every slot shares the {@link TrackableRegistry} of the backend frame, so native trackables and the
+ * {@link PlaneGraph} can be reached from the acquired frame, while each slot keeps its own trackable copies.
+ * In delta mode the changes lists of the acquired frame contain everything added, updated or removed since
+ * the previous acquire, even when some frames have been dropped.
+ *
+ * @author fgnm
+ */
+public class GdxFrameExchange {
+    private static final int INDEX_MASK = 3;
+    private static final int MIDDLE_SHIFT = 2;
+    private static final int FRONT_SHIFT = 4;
+    private static final int FRESH_BIT = 1 << 6;
+    private static final int INITIAL_STATE = 1 << MIDDLE_SHIFT | 2 << FRONT_SHIFT;
+
+    private final GdxFrame[] frames = new GdxFrame[3];
+
+    /** Slot indices packed as back | middle << 2 | front << 4, plus a bit set when middle is not consumed yet */
+    private final AtomicInteger state = new AtomicInteger(INITIAL_STATE);
+
+    /** Sequence of the last frame acquired by the render thread */
+    private final AtomicLong acquiredSequence = new AtomicLong(-1);
+
+    /** Producer side state */
+    private long publishedSequence = -1;
+    private final Array<GdxAnchor> removedAnchors = new Array<>(GdxAnchor.class);
+    private final Array<GdxPlane> removedPlanes = new Array<>(GdxPlane.class);
+    private final Array<GdxAugmentedImage> removedAugmentedImages = new Array<>(GdxAugmentedImage.class);
+
+    /** Consumer side state */
+    private long lastSequence = -1;
+
+    public GdxFrameExchange() {
+        this(new TrackableRegistry());
+    }
+
+    /**
+     * @param registry registry of the backend frame, shared by every slot
+     */
+    public GdxFrameExchange(TrackableRegistry registry) {
+        for (int i = 0; i < frames.length; i++)
+            frames[i] = new GdxFrame(registry);
+    }
+
+    /**
+     * Copy the working frame into the back slot and make it available to the render thread.
+     * Must be called from the tracking thread once per update, after {@link GdxFrame#endUpdate()}.
+     *
+     * @param frame working frame filled by the backend
+     */
+    public void publish(GdxFrame frame) {
+        long sequence = ++publishedSequence;
+        frame.sequence = sequence;
+
+        trimRemoved(acquiredSequence.get());
+        boolean deltaMode = frame.isDeltaMode();
+        if (deltaMode) {
+            frame.getAnchorsDelta().stamp(sequence, removedAnchors);
+            frame.getPlanesDelta().stamp(sequence, removedPlanes);
+            frame.getAugmentedImagesDelta().stamp(sequence, removedAugmentedImages);
+        }
+
+        GdxFrame back = frames[state.get() & INDEX_MASK];
+        back.copyState(frame);
+        back.sequence = sequence;
+        back.getAnchorsDelta().sync(frame.getAnchorsDelta(), !deltaMode, removedAnchors);
+        back.getPlanesDelta().sync(frame.getPlanesDelta(), !deltaMode, removedPlanes);
+        back.getAugmentedImagesDelta().sync(frame.getAugmentedImagesDelta(), !deltaMode, removedAugmentedImages);
+
+        int current, next;
+        do {
+            current = state.get();
+            int backIndex = current & INDEX_MASK;
+            int middleIndex = (current >> MIDDLE_SHIFT) & INDEX_MASK;
+            int frontIndex = (current >> FRONT_SHIFT) & INDEX_MASK;
+            next = middleIndex | backIndex << MIDDLE_SHIFT | frontIndex << FRONT_SHIFT | FRESH_BIT;
+        } while (!state.compareAndSet(current, next));
+    }
+
+    /**
+     * Get the latest frame published by the tracking thread. The frame is owned by the render thread
+     * until the next call. Must be called from the render thread.
+     *
+     * @return latest frame or null if nothing has been published yet
+     */
+    public GdxFrame acquire() {
+        int current, next;
+        do {
+            current = state.get();
+            if ((current & FRESH_BIT) == 0) {
+                next = current;
+                break;
+            }
+            int backIndex = current & INDEX_MASK;
+            int middleIndex = (current >> MIDDLE_SHIFT) & INDEX_MASK;
+            int frontIndex = (current >> FRONT_SHIFT) & INDEX_MASK;
+            next = backIndex | frontIndex << MIDDLE_SHIFT | middleIndex << FRONT_SHIFT;
+        } while (!state.compareAndSet(current, next));
+
+        GdxFrame front = frames[(next >> FRONT_SHIFT) & INDEX_MASK];
+        if (front.sequence == -1) return null;
+
+        if (front.isDeltaMode()) {
+            front.getAnchorsDelta().collect(lastSequence);
+            front.getPlanesDelta().collect(lastSequence);
+            front.getAugmentedImagesDelta().collect(lastSequence);
+        }
+        lastSequence = front.sequence;
+        acquiredSequence.set(lastSequence);
+        return front;
+    }
+
+    /**
+     * Release removed trackables already copied into a frame seen by the render thread.
+     */
+    private void trimRemoved(long sequence) {
+        trimRemoved(removedAnchors, sequence);
+        trimRemoved(removedPlanes, sequence);
+        trimRemoved(removedAugmentedImages, sequence);
+    }
+
+    private <T extends GdxAnchor> void trimRemoved(Array<T> removed, long sequence) {
+        int size = 0;
+        for (int i = 0; i < removed.size; i++) {
+            T trackable = removed.get(i);
+            if (trackable.removedSequence > sequence)
+                removed.set(size++, trackable);
+            else
+                Pools.free(trackable);
+        }
+        removed.truncate(size);
+    }
+}
@@ -0,0 +1,15 @@
+package games.rednblack.gdxar;
+
+/**
+ * How real world objects hide virtual content.
+ *
+ *  @author fgnm
+ */
+public enum GdxOcclusionMode {
+    /** Virtual content is always drawn over the camera image. */
+    DISABLED,
+    /** Occlusion from the depth image, tracked planes are used when depth is not available. */
+    DEPTH,
+    /** Occlusion from tracked planes only, cheap and supported by every device. */
+    PLANES;
+}
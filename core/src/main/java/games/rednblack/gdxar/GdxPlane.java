@@ -21,6 +21,64 @@ public class GdxPlane extends GdxAnchor {
      * These X-Z values are in the plane's local x-z plane (y=0) and must be transformed by the pose */
     public FloatArray vertices = new FloatArray();
 
+    /** Stamp of the polygon in {@link #vertices}, the same geometry always has the same version, so meshes built
+     * from the polygon can be reused until it changes */
+    public long geometryVersion = 0;
+
+    /**
+     * Replace the polygon, vertices are copied only if they changed.
+     *
+     * @param polygon vertices in the form [x1, z1, x2, z2, ... ]
+     * @param offset first float to copy
+     * @param count number of floats to copy
+     * @return true if the geometry changed
+     */
+    public boolean setVertices(float[] polygon, int offset, int count) {
+        if (count == vertices.size) {
+            float[] items = vertices.items;
+            boolean changed = false;
+            for (int i = 0; i < count; i++) {
+                if (items[i] != polygon[offset + i]) {
+                    changed = true;
+                    break;
+                }
+            }
+            if (!changed) return false;
+        }
+
+        vertices.clear();
+        vertices.addAll(polygon, offset, count);
+        geometryVersion = computeVersion(polygon, offset, count);
+        return true;
+    }
+
+    private static long computeVersion(float[] polygon, int offset, int count) {
+        if (count == 0) return 0;
+        // 64 bit FNV-1a of the float bits
+        long hash = 0xcbf29ce484222325L;
+        for (int i = offset, n = offset + count; i < n; i++) {
+            hash ^= Float.floatToRawIntBits(polygon[i]);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public void set(GdxAnchor anchor) {
+        super.set(anchor);
+        if (anchor instanceof GdxPlane) {
+            GdxPlane plane = (GdxPlane) anchor;
+            type = plane.type;
+            extentX = plane.extentX;
+            extentZ = plane.extentZ;
+            if (geometryVersion != plane.geometryVersion || vertices.size != plane.vertices.size) {
+                vertices.clear();
+                vertices.addAll(plane.vertices);
+                geometryVersion = plane.geometryVersion;
+            }
+        }
+    }
+
     @Override
     public void reset() {
         super.reset();
@@ -28,5 +86,6 @@ public class GdxPlane extends GdxAnchor {
         extentZ = 0;
         type = null;
         vertices.clear();
+        geometryVersion = 0;
     }
 }
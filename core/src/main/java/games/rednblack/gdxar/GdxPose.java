@@ -1,11 +1,16 @@
 package games.rednblack.gdxar;
 
+import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Pool;
 
 /**
  * Wrapper class to Pose object in native AR framework.
+ * <p>
+ * When attached to a {@link PoseBuffer} the pose is only a view over a slot of the buffer, vectors returned
+ * by {@link #getPosition()} and {@link #getRotation()} are copies of buffer data, so changes must be applied
+ * using setters.
  *
  * @author fgnm
  */
@@ -17,36 +22,121 @@ public class GdxPose implements Pool.Poolable {
     /** Rotation in world coordinates */
     private final Quaternion rotation = new Quaternion();
 
+    private PoseBuffer buffer = null;
+    private int slot = -1;
+
     public GdxPose() {
 
     }
 
     public void setPosition(float[] pos) {
-        position.set(pos[0], pos[1], pos[2]);
+        setPosition(pos[0], pos[1], pos[2]);
     }
 
     public void setRotation(float[] rot) {
-        rotation.set(rot[0], rot[1], rot[2], rot[3]);
+        setRotation(rot[0], rot[1], rot[2], rot[3]);
     }
 
     public void setPosition(float x, float y, float z) {
-        position.set(x, y, z);
+        if (buffer != null)
+            buffer.setPosition(slot, x, y, z);
+        else
+            position.set(x, y, z);
     }
 
     public void setRotation(float x, float y, float z, float w) {
-        rotation.set(x, y, z, w);
+        if (buffer != null)
+            buffer.setRotation(slot, x, y, z, w);
+        else
+            rotation.set(x, y, z, w);
     }
 
+    /**
+     * When the pose is attached to a {@link PoseBuffer} the returned vector is a scratch copy refreshed at every
+     * call, writing into it doesn't change the pose and is overwritten by the next call. Use
+     * {@link #setPosition(float, float, float)} to change it.
+     *
+     * @return position in world coordinates
+     */
     public Vector3 getPosition() {
+        if (buffer != null)
+            buffer.getPosition(slot, position);
         return position;
     }
 
+    /**
+     * When the pose is attached to a {@link PoseBuffer} the returned quaternion is a scratch copy refreshed at
+     * every call, writing into it doesn't change the pose and is overwritten by the next call. Use
+     * {@link #setRotation(float, float, float, float)} to change it.
+     *
+     * @return rotation in world coordinates
+     */
     public Quaternion getRotation() {
+        if (buffer != null)
+            buffer.getRotation(slot, rotation);
         return rotation;
     }
 
+    /**
+     * Get the transformation matrix of this pose, attached poses reuse the matrix computed by the buffer.
+     *
+     * @param out destination matrix
+     * @return out matrix for chaining
+     */
+    public Matrix4 getTransform(Matrix4 out) {
+        if (buffer != null)
+            return buffer.getMatrix(slot, out);
+        return out.set(position, rotation);
+    }
+
+    /**
+     * Move pose data into a slot of the buffer.
+     *
+     * @param buffer where pose data will be stored
+     */
+    public void attach(PoseBuffer buffer) {
+        if (this.buffer == buffer) return;
+        getPosition();
+        getRotation();
+        detach();
+
+        this.buffer = buffer;
+        slot = buffer.allocate();
+        buffer.setPosition(slot, position.x, position.y, position.z);
+        buffer.setRotation(slot, rotation.x, rotation.y, rotation.z, rotation.w);
+    }
+
+    /**
+     * Copy pose data back from the buffer and release the slot.
+     */
+    public void detach() {
+        if (buffer == null) return;
+        getPosition();
+        getRotation();
+        buffer.free(slot);
+        buffer = null;
+        slot = -1;
+    }
+
+    public PoseBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Index of the slot in the attached {@link PoseBuffer}
+     * @return slot index or -1 if not attached
+     */
+    public int getSlot() {
+        return slot;
+    }
+
     @Override
     public void reset() {
+        if (buffer != null) {
+            buffer.free(slot);
+            buffer = null;
+            slot = -1;
+        }
         position.set(0, 0, 0);
         rotation.set(0, 0, 0, 0);
     }
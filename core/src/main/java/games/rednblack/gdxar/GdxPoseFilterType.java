@@ -0,0 +1,15 @@
+package games.rednblack.gdxar;
+
+/**
+ * Smoothing filter applied to trackables poses, see {@link PoseFilter}.
+ *
+ * @author fgnm
+ */
+public enum GdxPoseFilterType {
+    /** Poses are used as reported by the framework */
+    NONE,
+    /** Adaptive low pass filter, strong smoothing when still and low lag when moving fast */
+    ONE_EURO,
+    /** Critically damped spring, poses converge without overshooting */
+    CRITICALLY_DAMPED
+}
@@ -0,0 +1,217 @@
+package games.rednblack.gdxar;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.Pools;
+
+/**
+ * Persistent set of trackables used by {@link GdxFrame} in delta mode. Trackables are kept alive across
+ * frames and looked up by id, only the ones reported by the backend are touched during an update.
+ *
+ * @author fgnm
+ */
+public class GdxTrackableDelta<T extends GdxAnchor> {
+    private final Class<T> type;
+    private final Array<T> trackables;
+    private final TrackableRegistry registry;
+    /** Trackables of this frame by id, every frame keeps its own copies */
+    private final LongMap<T> trackablesById = new LongMap<>();
+    private final PoseBuffer poseBuffer;
+
+    private final Array<T> added;
+    private final Array<T> updated;
+    private final Array<T> removed;
+
+    /** Removed trackables copied from the producer frame when used as {@link GdxFrameExchange} slot */
+    private final Array<T> removedCopies;
+
+    private long updateId = 0;
+
+    GdxTrackableDelta(Class<T> type, Array<T> trackables, TrackableRegistry registry, PoseBuffer poseBuffer) {
+        this.type = type;
+        this.trackables = trackables;
+        this.registry = registry;
+        this.poseBuffer = poseBuffer;
+        added = new Array<>(type);
+        updated = new Array<>(type);
+        removed = new Array<>(type);
+        removedCopies = new Array<>(type);
+    }
+
+    /**
+     * Trackables reported for the first time in the current update.
+     * @return Array with new trackables
+     */
+    public Array<T> getAdded() {
+        return added;
+    }
+
+    /**
+     * Already known trackables changed by the backend in the current update.
+     * @return Array with updated trackables
+     */
+    public Array<T> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Trackables that stopped tracking in the current update. They are released at the beginning of the
+     * next update, so references must not be kept.
+     * @return Array with removed trackables
+     */
+    public Array<T> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Get a trackable by id.
+     * @param id stable id assigned by {@link TrackableRegistry}
+     * @return the persistent trackable or null if not tracked
+     */
+    public T get(long id) {
+        return trackablesById.get(id);
+    }
+
+    boolean isUpdated(T trackable) {
+        return trackable.updateId == updateId;
+    }
+
+    void begin() {
+        updateId++;
+        Pools.freeAll(removed);
+        removed.clear();
+        added.clear();
+        updated.clear();
+    }
+
+    T obtain(long id) {
+        T trackable = trackablesById.get(id);
+        if (trackable == null) {
+            trackable = Pools.obtain(type);
+            trackable.id = id;
+            trackable.gdxPose.attach(poseBuffer);
+            trackablesById.put(id, trackable);
+            trackables.add(trackable);
+            added.add(trackable);
+        } else if (trackable.updateId != updateId) {
+            updated.add(trackable);
+        }
+        trackable.updateId = updateId;
+        return trackable;
+    }
+
+    void remove(long id) {
+        T trackable = trackablesById.get(id);
+        registry.evict(id);
+        if (trackable == null) return;
+
+        trackables.removeValue(trackable, true);
+        added.removeValue(trackable, true);
+        updated.removeValue(trackable, true);
+        removed.add(trackable);
+    }
+
+    void removeStopped() {
+        for (int i = added.size - 1; i >= 0; i--) {
+            T trackable = added.get(i);
+            if (trackable.trackingState == GdxTrackingState.STOPPED)
+                remove(trackable.id);
+        }
+        for (int i = updated.size - 1; i >= 0; i--) {
+            T trackable = updated.get(i);
+            if (trackable.trackingState == GdxTrackingState.STOPPED)
+                remove(trackable.id);
+        }
+    }
+
+    /**
+     * Mark changes of the current update with the sequence number of a {@link GdxFrameExchange} publish.
+     * Removed trackables are copied into the log, because they are released at the next update.
+     */
+    void stamp(long sequence, Array<T> removedLog) {
+        for (T trackable : added) {
+            trackable.addedSequence = sequence;
+            trackable.updatedSequence = sequence;
+        }
+        for (T trackable : updated) {
+            trackable.updatedSequence = sequence;
+        }
+        for (T trackable : removed) {
+            T entry = Pools.obtain(type);
+            entry.set(trackable);
+            entry.removedSequence = sequence;
+            removedLog.add(entry);
+        }
+    }
+
+    /**
+     * Make this set a copy of the source one, only trackables changed since the previous sync are copied
+     * unless copyAll is set.
+     */
+    void sync(GdxTrackableDelta<T> source, boolean copyAll, Array<T> removedLog) {
+        updateId++;
+        for (T trackable : source.trackables) {
+            T copy = trackablesById.get(trackable.id);
+            if (copy == null) {
+                copy = Pools.obtain(type);
+                copy.gdxPose.attach(poseBuffer);
+                copy.set(trackable);
+                trackablesById.put(copy.id, copy);
+                trackables.add(copy);
+            } else if (copyAll || copy.updatedSequence != trackable.updatedSequence) {
+                copy.set(trackable);
+            }
+            copy.updateId = updateId;
+        }
+
+        for (int i = trackables.size - 1; i >= 0; i--) {
+            T copy = trackables.get(i);
+            if (copy.updateId != updateId) {
+                trackables.removeIndex(i);
+                trackablesById.remove(copy.id);
+                Pools.free(copy);
+            }
+        }
+
+        removed.clear();
+        Pools.freeAll(removedCopies);
+        removedCopies.clear();
+        for (T entry : removedLog) {
+            T copy = Pools.obtain(type);
+            copy.set(entry);
+            removedCopies.add(copy);
+        }
+    }
+
+    /**
+     * Fill changes lists with trackables changed after the given sequence number.
+     */
+    void collect(long lastSequence) {
+        added.clear();
+        updated.clear();
+        removed.clear();
+        for (T trackable : trackables) {
+            if (trackable.addedSequence > lastSequence)
+                added.add(trackable);
+            else if (trackable.updatedSequence > lastSequence)
+                updated.add(trackable);
+        }
+        for (T trackable : removedCopies) {
+            if (trackable.removedSequence > lastSequence)
+                removed.add(trackable);
+        }
+    }
+
+    void clear() {
+        if (removedCopies.size > 0) {
+            Pools.freeAll(removedCopies);
+            removedCopies.clear();
+        } else {
+            Pools.freeAll(removed);
+        }
+        removed.clear();
+        added.clear();
+        updated.clear();
+        trackablesById.clear();
+    }
+}
@@ -0,0 +1,108 @@
+package games.rednblack.gdxar;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Null;
+
+/**
+ * Queue of hit tests requested from any thread and resolved by the backend in a single batch, at a fixed point
+ * of the render pipeline, with the same AR frame used for rendering. Input handlers only pay for the enqueue.
+ *
+ * @author fgnm
+ */
+public class HitTestQueue {
+
+    /**
+     * Run a single hit test against the current AR frame, implemented by backends.
+     */
+    public interface Resolver {
+        /**
+         * Fill the results of a request: pose, hit plane type and anchor if requested.
+         *
+         * @param request request to resolve
+         * @return true if a plane was hit
+         */
+        boolean resolve(HitTestRequest request);
+    }
+
+    private final Array<HitTestRequest> pending = new Array<>(false, 16, HitTestRequest.class);
+    private final Array<HitTestRequest> resolving = new Array<>(false, 16, HitTestRequest.class);
+
+    /**
+     * Add a request resolved with the next rendered frame, can be called from any thread.
+     *
+     * @param x position in screen coordinate
+     * @param y position in screen coordinate
+     * @param planeType filter hit test with a specific plane type
+     * @param createAnchor attach a new anchor to the hit plane
+     * @param callback notified when the request is resolved, can be null
+     * @return completion handle of the request
+     */
+    public HitTestRequest enqueue(float x, float y, GdxPlaneType planeType, boolean createAnchor, @Null HitTestRequest.Callback callback) {
+        HitTestRequest request = new HitTestRequest(x, y, planeType, createAnchor, callback);
+        synchronized (pending) {
+            pending.add(request);
+        }
+        return request;
+    }
+
+    /**
+     * Resolve every pending request and notify callbacks, must be called from the render thread.
+     *
+     * @param resolver backend hit test
+     */
+    public void resolve(Resolver resolver) {
+        if (!swap()) return;
+
+        HitTestRequest[] requests = resolving.items;
+        for (int i = 0, n = resolving.size; i < n; i++) {
+            HitTestRequest request = requests[i];
+            if (request.isDone()) continue;
+
+            if (resolver.resolve(request))
+                request.setHit();
+            else
+                request.setMiss();
+        }
+        notifyResolved();
+    }
+
+    /**
+     * Cancel every pending request, callbacks are notified. Must be called from the render thread.
+     */
+    public void cancelAll() {
+        if (!swap()) return;
+
+        HitTestRequest[] requests = resolving.items;
+        for (int i = 0, n = resolving.size; i < n; i++)
+            requests[i].cancel();
+        notifyResolved();
+    }
+
+    /**
+     * @return number of requests waiting to be resolved
+     */
+    public int size() {
+        synchronized (pending) {
+            return pending.size;
+        }
+    }
+
+    private boolean swap() {
+        synchronized (pending) {
+            if (pending.size == 0) return false;
+            resolving.addAll(pending);
+            pending.clear();
+        }
+        return true;
+    }
+
+    private void notifyResolved() {
+        HitTestRequest[] requests = resolving.items;
+        for (int i = 0, n = resolving.size; i < n; i++) {
+            HitTestRequest request = requests[i];
+            if (request.callback != null)
+                request.callback.onHitTest(request);
+        }
+        resolving.clear();
+    }
+}
@@ -0,0 +1,109 @@
+package games.rednblack.gdxar;
+
+import com.badlogic.gdx.utils.Null;
+
+/**
+ * Completion handle of a queued hit test, see {@link GdxAR#queueHitPlanePose(float, float, GdxPlaneType, Callback)}.
+ * <p>
+ * Requests are resolved by the backend once per frame, before {@link GdxArApplicationListener#renderARModels(GdxFrame)},
+ * so results can be either received with a {@link Callback} or polled with {@link #isDone()} while rendering.
+ * Result fields must be read only once the request is done.
+ *
+ * @author fgnm
+ */
+public class HitTestRequest {
+
+    /**
+     * Notified on the render thread when a request is resolved or cancelled.
+     */
+    public interface Callback {
+        /**
+         * @param request resolved request, check {@link #isHit()} for the result
+         */
+        void onHitTest(HitTestRequest request);
+    }
+
+    private static final int PENDING = 0;
+    private static final int HIT = 1;
+    private static final int MISS = 2;
+    private static final int CANCELLED = 3;
+
+    /** Position in screen coordinate */
+    public final float x, y;
+
+    /** Filter hit test with a specific plane type */
+    public final GdxPlaneType planeType;
+
+    /** Attach a new anchor to the hit plane */
+    public final boolean createAnchor;
+
+    /** Pose of the hit */
+    public final GdxPose pose = new GdxPose();
+
+    /** Type of the hit plane */
+    public GdxPlaneType hitPlaneType;
+
+    /** New anchor attached to the hit plane, only when requested */
+    @Null
+    public GdxAnchor anchor;
+
+    @Null
+    final Callback callback;
+    private volatile int state = PENDING;
+
+    HitTestRequest(float x, float y, GdxPlaneType planeType, boolean createAnchor, @Null Callback callback) {
+        this.x = x;
+        this.y = y;
+        this.planeType = planeType;
+        this.createAnchor = createAnchor;
+        this.callback = callback;
+    }
+
+    /**
+     * @return true once the request has been resolved or cancelled
+     */
+    public boolean isDone() {
+        return state != PENDING;
+    }
+
+    /**
+     * @return true if the request has been resolved and a plane was hit
+     */
+    public boolean isHit() {
+        return state == HIT;
+    }
+
+    /**
+     * @return true if the request has been cancelled before being resolved
+     */
+    public boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    /**
+     * Cancel a pending request, it's discarded without being resolved. The callback is still notified
+     * with the next frame.
+     */
+    public void cancel() {
+        complete(CANCELLED);
+    }
+
+    /**
+     * Mark the request as hit, called by {@link HitTestQueue} when the resolver filled the results.
+     */
+    void setHit() {
+        complete(HIT);
+    }
+
+    /**
+     * Mark the request as missed, called by {@link HitTestQueue}.
+     */
+    void setMiss() {
+        complete(MISS);
+    }
+
+    private synchronized void complete(int state) {
+        if (this.state == PENDING)
+            this.state = state;
+    }
+}
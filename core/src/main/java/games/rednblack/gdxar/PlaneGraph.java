@@ -0,0 +1,163 @@
+package games.rednblack.gdxar;
+
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+
+/**
+ * Record planes merged into others by the AR framework. ARCore reports the plane that subsumed another one,
+ * ARKit only removes the merged anchor, so the parent is found looking for a plane that contains it.
+ * <p>
+ * Subsumed planes are dropped from {@link GdxFrame} by backends, content attached to them can follow the
+ * surface with {@link #resolve(long)} or be moved when notified by a {@link Listener}.
+ *
+ * @author fgnm
+ */
+public class PlaneGraph {
+
+    /**
+     * Notified from the thread that updates trackables when a plane is merged into another one.
+     */
+    public interface Listener {
+        /**
+         * @param planeId id of the subsumed plane, it won't be reported anymore
+         * @param parentId id of the plane that now contains it
+         */
+        void planeSubsumed(long planeId, long parentId);
+    }
+
+    /** Max distance in meters between a removed plane and the plane that merged it, ARKit only */
+    public float mergeDistance = 0.05f;
+
+    private final LongMap<Long> parents = new LongMap<>();
+    private final LongArray tmpIds = new LongArray();
+    private Listener listener;
+
+    private final Vector3 tmpPosition = new Vector3();
+    private final Quaternion tmpRotation = new Quaternion();
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Record that a plane has been merged into another one.
+     *
+     * @param planeId id of the subsumed plane
+     * @param parentId id of the plane that contains it
+     * @return true if the relation is new
+     */
+    public synchronized boolean subsume(long planeId, long parentId) {
+        if (planeId == parentId || resolve(parentId) == planeId) return false;
+        Long current = parents.get(planeId);
+        if (current != null && current == parentId) return false;
+
+        parents.put(planeId, parentId);
+        if (listener != null)
+            listener.planeSubsumed(planeId, resolve(parentId));
+        return true;
+    }
+
+    /**
+     * Find the plane that merged a removed one and record the relation.
+     *
+     * @param planeId id of the removed plane
+     * @param planes planes currently tracked, including the removed one
+     * @return id of the parent plane or -1 if none contains the removed plane
+     */
+    public synchronized long merge(long planeId, Array<GdxPlane> planes) {
+        GdxPlane removed = null;
+        for (int i = 0; i < planes.size; i++) {
+            if (planes.get(i).id == planeId) {
+                removed = planes.get(i);
+                break;
+            }
+        }
+        if (removed == null) return -1;
+
+        Vector3 center = removed.gdxPose.getPosition();
+        float cx = center.x, cy = center.y, cz = center.z;
+        for (int i = 0; i < planes.size; i++) {
+            GdxPlane plane = planes.get(i);
+            if (plane == removed || plane.type != removed.type || plane.trackingState == GdxTrackingState.STOPPED
+                    || isSubsumed(plane.id)) continue;
+
+            // Center of the removed plane in the local space of the candidate
+            tmpPosition.set(cx, cy, cz).sub(plane.gdxPose.getPosition());
+            tmpRotation.set(plane.gdxPose.getRotation()).conjugate().transform(tmpPosition);
+            if (Math.abs(tmpPosition.y) > mergeDistance) continue;
+
+            if (contains(plane, tmpPosition.x, tmpPosition.z)) {
+                subsume(planeId, plane.id);
+                return plane.id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Follow merges up to the plane that currently represents a surface.
+     *
+     * @param planeId id of a plane
+     * @return id of the plane that contains it, or the same id if never subsumed
+     */
+    public synchronized long resolve(long planeId) {
+        // Merges can't create cycles, the limit only guards against corrupted ids
+        for (int i = 0; i < 64; i++) {
+            Long parent = parents.get(planeId);
+            if (parent == null) break;
+            planeId = parent;
+        }
+        return planeId;
+    }
+
+    public synchronized boolean isSubsumed(long planeId) {
+        return parents.containsKey(planeId);
+    }
+
+    /**
+     * Forget a plane stopped by the framework. If it was subsumed the relation is kept so content can still
+     * be redirected, otherwise every plane merged into it is forgotten too.
+     *
+     * @param planeId id of the stopped plane
+     */
+    public synchronized void remove(long planeId) {
+        if (parents.size == 0 || parents.containsKey(planeId)) return;
+
+        tmpIds.clear();
+        for (LongMap.Entry<Long> entry : parents.entries()) {
+            if (resolve(entry.key) == planeId)
+                tmpIds.add(entry.key);
+        }
+        for (int i = 0; i < tmpIds.size; i++)
+            parents.remove(tmpIds.get(i));
+    }
+
+    public synchronized int size() {
+        return parents.size;
+    }
+
+    public synchronized void clear() {
+        parents.clear();
+    }
+
+    private static boolean contains(GdxPlane plane, float x, float z) {
+        int count = plane.vertices.size / 2;
+        if (count < 3) {
+            float radius = Math.max(plane.extentX, plane.extentZ) / 2f;
+            return x * x + z * z <= radius * radius;
+        }
+
+        float[] polygon = plane.vertices.items;
+        boolean inside = false;
+        for (int i = 0, j = count - 1; i < count; j = i++) {
+            float xi = polygon[i * 2], zi = polygon[i * 2 + 1];
+            float xj = polygon[j * 2], zj = polygon[j * 2 + 1];
+            if ((zi > z) != (zj > z) && x < (xj - xi) * (z - zi) / (zj - zi) + xi)
+                inside = !inside;
+        }
+        return inside;
+    }
+}
@@ -0,0 +1,512 @@
+package games.rednblack.gdxar;
+
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sparse height and occupancy grid of detected planes on the world x-z plane. Upward facing planes are
+ * rasterized as floor cells with their height, vertical planes as wall cells. The grid is split into chunks
+ * allocated only where planes exist.
+ * <p>
+ * Updates are incremental: only cells covered by planes that moved, changed geometry or were removed are
+ * rasterized again. Chunks are copied on write and published at the end of each update, so queries are a
+ * single lookup and can be called from any thread. Chunk maps and replaced chunks are recycled once no query
+ * can read them anymore, updates don't allocate after the grid has grown.
+ *
+ * @author fgnm
+ */
+public class PlaneGrid {
+    /** Cells per chunk side */
+    public static final int CHUNK_SIZE = 16;
+    private static final int CHUNK_SHIFT = 4;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** Cell covered by an upward facing plane */
+    public static final int FLOOR = 1;
+    /** Cell crossed by a vertical plane */
+    public static final int WALL = 2;
+
+    /** Size of a cell side in meters */
+    public final float cellSize;
+
+    private final LongMap<PlaneData> entries = new LongMap<>();
+    private final Array<PlaneData> planes = new Array<>(false, 16, PlaneData.class);
+    private long updateId = 0;
+
+    /** Cell rectangles to rasterize again, min x, min z, max x, max z */
+    private final IntArray dirty = new IntArray();
+    /** Chunks copied during the current update */
+    private final LongMap<Chunk> modified = new LongMap<>();
+    private long lastKey;
+    private Chunk lastChunk;
+    private float[] crossings = new float[16];
+
+    /** Chunks replaced by updates, recycled once no query can read them */
+    private final Array<Chunk> retired = new Array<>(false, 16, Chunk.class);
+    private final Array<Chunk> freeChunks = new Array<>(false, 16, Chunk.class);
+
+    private final Array<Snapshot> snapshots = new Array<>(false, 4, Snapshot.class);
+    private volatile Snapshot current;
+
+    public PlaneGrid() {
+        this(0.1f);
+    }
+
+    /**
+     * @param cellSize size of a cell side in meters
+     */
+    public PlaneGrid(float cellSize) {
+        this.cellSize = cellSize;
+        current = new Snapshot();
+        snapshots.add(current);
+    }
+
+    /**
+     * Rasterize planes changed since the last update, must be called from a single thread.
+     *
+     * @param frame frame acquired by the render thread
+     */
+    public void update(GdxFrame frame) {
+        updateId++;
+        recycle();
+
+        Array<GdxPlane> framePlanes = frame.getPlanes();
+        for (int i = 0, n = framePlanes.size; i < n; i++) {
+            GdxPlane plane = framePlanes.get(i);
+            if (plane.trackingState == GdxTrackingState.STOPPED || plane.type == null
+                    || plane.type == GdxPlaneType.HORIZONTAL_DOWNWARD_FACING) continue;
+
+            PlaneData data = entries.get(plane.id);
+            if (data == null) {
+                data = new PlaneData();
+                data.id = plane.id;
+                entries.put(plane.id, data);
+                planes.add(data);
+            }
+            data.updateId = updateId;
+
+            if (data.changed(plane)) {
+                if (data.hasBounds)
+                    addDirty(data);
+                data.set(plane, cellSize);
+                addDirty(data);
+            }
+        }
+
+        for (int i = planes.size - 1; i >= 0; i--) {
+            PlaneData data = planes.get(i);
+            if (data.updateId != updateId) {
+                if (data.hasBounds)
+                    addDirty(data);
+                entries.remove(data.id);
+                planes.removeIndex(i);
+            }
+        }
+
+        if (dirty.size == 0) return;
+
+        int[] rects = dirty.items;
+        for (int i = 0, n = dirty.size; i < n; i += 4)
+            rasterize(rects[i], rects[i + 1], rects[i + 2], rects[i + 3]);
+        dirty.clear();
+
+        publish();
+    }
+
+    /**
+     * Release every plane and cell.
+     */
+    public void clear() {
+        entries.clear();
+        planes.clear();
+
+        Snapshot next = obtainSnapshot();
+        next.chunks.clear();
+        for (Chunk chunk : current.chunks.values())
+            retired.add(chunk);
+        current = next;
+        recycle();
+    }
+
+    /**
+     * Height of the highest upward facing plane covering a point.
+     *
+     * @param x world x coordinate
+     * @param z world z coordinate
+     * @return height in world space or NaN if no floor is known
+     */
+    public float getHeight(float x, float z) {
+        int cx = cell(x), cz = cell(z);
+        Snapshot snapshot = acquire();
+        try {
+            Chunk chunk = snapshot.chunks.get(key(cx >> CHUNK_SHIFT, cz >> CHUNK_SHIFT));
+            return chunk != null ? chunk.heights[index(cx, cz)] : Float.NaN;
+        } finally {
+            snapshot.refs.decrementAndGet();
+        }
+    }
+
+    /**
+     * @param x world x coordinate
+     * @param z world z coordinate
+     * @return combination of {@link #FLOOR} and {@link #WALL} flags, 0 if unknown
+     */
+    public int getFlags(float x, float z) {
+        int cx = cell(x), cz = cell(z);
+        Snapshot snapshot = acquire();
+        try {
+            Chunk chunk = snapshot.chunks.get(key(cx >> CHUNK_SHIFT, cz >> CHUNK_SHIFT));
+            return chunk != null ? chunk.flags[index(cx, cz)] : 0;
+        } finally {
+            snapshot.refs.decrementAndGet();
+        }
+    }
+
+    /**
+     * @param x world x coordinate
+     * @param z world z coordinate
+     * @return true if the point is on a floor and not crossed by a wall
+     */
+    public boolean isWalkable(float x, float z) {
+        return getFlags(x, z) == FLOOR;
+    }
+
+    /**
+     * @return number of allocated chunks
+     */
+    public int getChunkCount() {
+        Snapshot snapshot = acquire();
+        int size = snapshot.chunks.size;
+        snapshot.refs.decrementAndGet();
+        return size;
+    }
+
+    private Snapshot acquire() {
+        while (true) {
+            Snapshot snapshot = current;
+            snapshot.refs.incrementAndGet();
+            // The writer could have replaced it in the meantime, retry so it's never reused while read
+            if (snapshot == current) return snapshot;
+            snapshot.refs.decrementAndGet();
+        }
+    }
+
+    private int cell(float coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static int index(int cx, int cz) {
+        return (cz & CHUNK_MASK) * CHUNK_SIZE + (cx & CHUNK_MASK);
+    }
+
+    private static long key(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xffffffffL);
+    }
+
+    private void addDirty(PlaneData data) {
+        dirty.add(data.minX, data.minZ, data.maxX, data.maxZ);
+    }
+
+    /**
+     * Clear a rectangle of cells and rasterize again every plane that overlaps it.
+     */
+    private void rasterize(int minX, int minZ, int maxX, int maxZ) {
+        for (int cz = minZ; cz <= maxZ; cz++) {
+            for (int cx = minX; cx <= maxX; cx++) {
+                Chunk chunk = getWritable(cx, cz, false);
+                if (chunk == null) {
+                    // Skip to the next chunk
+                    cx |= CHUNK_MASK;
+                    continue;
+                }
+                int index = index(cx, cz);
+                chunk.heights[index] = Float.NaN;
+                chunk.flags[index] = 0;
+            }
+        }
+
+        for (int i = 0, n = planes.size; i < n; i++) {
+            PlaneData data = planes.get(i);
+            if (!data.hasBounds || data.maxX < minX || data.minX > maxX || data.maxZ < minZ || data.minZ > maxZ) continue;
+
+            if (data.type == GdxPlaneType.VERTICAL)
+                rasterizeWall(data, minX, minZ, maxX, maxZ);
+            else
+                rasterizeFloor(data, minX, minZ, maxX, maxZ);
+        }
+    }
+
+    /**
+     * Scanline fill of the polygon, cells with the center inside are covered.
+     */
+    private void rasterizeFloor(PlaneData data, int minX, int minZ, int maxX, int maxZ) {
+        float[] polygon = data.world;
+        int count = data.count;
+        if (crossings.length < count)
+            crossings = new float[count];
+
+        int startZ = Math.max(minZ, data.minZ), endZ = Math.min(maxZ, data.maxZ);
+        for (int cz = startZ; cz <= endZ; cz++) {
+            float z = (cz + 0.5f) * cellSize;
+            int crossingCount = 0;
+            for (int i = 0, j = count - 1; i < count; j = i++) {
+                float xi = polygon[i * 2], zi = polygon[i * 2 + 1];
+                float xj = polygon[j * 2], zj = polygon[j * 2 + 1];
+                if ((zi > z) != (zj > z))
+                    crossings[crossingCount++] = (xj - xi) * (z - zi) / (zj - zi) + xi;
+            }
+            Arrays.sort(crossings, 0, crossingCount);
+
+            for (int i = 0; i + 1 < crossingCount; i += 2) {
+                int startX = Math.max(minX, (int) Math.ceil(crossings[i] / cellSize - 0.5f));
+                int endX = Math.min(maxX, (int) Math.floor(crossings[i + 1] / cellSize - 0.5f));
+                for (int cx = startX; cx <= endX; cx++) {
+                    Chunk chunk = getWritable(cx, cz, true);
+                    int index = index(cx, cz);
+                    float height = chunk.heights[index];
+                    if (Float.isNaN(height) || data.height > height)
+                        chunk.heights[index] = data.height;
+                    chunk.flags[index] |= FLOOR;
+                }
+            }
+        }
+    }
+
+    /**
+     * Mark cells crossed by the footprint segment of a vertical plane.
+     */
+    private void rasterizeWall(PlaneData data, int minX, int minZ, int maxX, int maxZ) {
+        float x0 = data.world[0], z0 = data.world[1], x1 = data.world[2], z1 = data.world[3];
+        float length = (float) Math.sqrt((x1 - x0) * (x1 - x0) + (z1 - z0) * (z1 - z0));
+        int steps = Math.max(1, (int) Math.ceil(length / (cellSize * 0.5f)));
+        for (int i = 0; i <= steps; i++) {
+            float t = i / (float) steps;
+            int cx = cell(x0 + (x1 - x0) * t), cz = cell(z0 + (z1 - z0) * t);
+            if (cx < minX || cx > maxX || cz < minZ || cz > maxZ) continue;
+            getWritable(cx, cz, true).flags[index(cx, cz)] |= WALL;
+        }
+    }
+
+    private Chunk getWritable(int cx, int cz, boolean create) {
+        long key = key(cx >> CHUNK_SHIFT, cz >> CHUNK_SHIFT);
+        if (lastChunk != null && lastKey == key) return lastChunk;
+
+        Chunk chunk = modified.get(key);
+        if (chunk == null) {
+            Chunk published = current.chunks.get(key);
+            if (published == null && !create) return null;
+            chunk = freeChunks.size > 0 ? freeChunks.pop() : new Chunk();
+            if (published != null)
+                chunk.set(published);
+            else
+                chunk.reset();
+            modified.put(key, chunk);
+        }
+        lastKey = key;
+        lastChunk = chunk;
+        return chunk;
+    }
+
+    /**
+     * Swap in a chunk map with the copies written by this update, published chunks are never modified.
+     */
+    private void publish() {
+        Snapshot current = this.current;
+        Snapshot next = obtainSnapshot();
+        next.chunks.clear();
+        next.chunks.putAll(current.chunks);
+        for (LongMap.Entry<Chunk> entry : modified.entries()) {
+            Chunk published = current.chunks.get(entry.key);
+            if (published != null)
+                retired.add(published);
+            if (entry.value.isEmpty()) {
+                next.chunks.remove(entry.key);
+                // Never published, no query can read it
+                freeChunks.add(entry.value);
+            } else {
+                next.chunks.put(entry.key, entry.value);
+            }
+        }
+        modified.clear();
+        lastChunk = null;
+        this.current = next;
+        recycle();
+    }
+
+    private Snapshot obtainSnapshot() {
+        Snapshot current = this.current;
+        for (int i = 0; i < snapshots.size; i++) {
+            Snapshot snapshot = snapshots.get(i);
+            if (snapshot != current && snapshot.refs.get() == 0) return snapshot;
+        }
+        Snapshot snapshot = new Snapshot();
+        snapshots.add(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Recycle retired chunks when no query is running on an old snapshot, only old snapshots can hold them.
+     */
+    private void recycle() {
+        if (retired.size == 0) return;
+        Snapshot current = this.current;
+        for (int i = 0; i < snapshots.size; i++) {
+            Snapshot snapshot = snapshots.get(i);
+            if (snapshot != current && snapshot.refs.get() != 0) return;
+        }
+        freeChunks.addAll(retired);
+        retired.clear();
+    }
+
+    /**
+     * Chunk map read by queries.
+     */
+    private static class Snapshot {
+        final AtomicInteger refs = new AtomicInteger();
+        final LongMap<Chunk> chunks = new LongMap<>();
+    }
+
+    private static class Chunk {
+        final float[] heights = new float[CHUNK_SIZE * CHUNK_SIZE];
+        final byte[] flags = new byte[CHUNK_SIZE * CHUNK_SIZE];
+
+        Chunk() {
+            reset();
+        }
+
+        void set(Chunk chunk) {
+            System.arraycopy(chunk.heights, 0, heights, 0, heights.length);
+            System.arraycopy(chunk.flags, 0, flags, 0, flags.length);
+        }
+
+        void reset() {
+            Arrays.fill(heights, Float.NaN);
+            Arrays.fill(flags, (byte) 0);
+        }
+
+        boolean isEmpty() {
+            for (byte flag : flags) {
+                if (flag != 0) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * World space footprint of a plane: x-z polygon for floors, x-z segment for walls.
+     */
+    private static class PlaneData {
+        long id;
+        GdxPlaneType type;
+        long updateId;
+
+        /** Position and rotation of the plane center */
+        final float[] pose = new float[7];
+        long geometryVersion = -1;
+        float extentX, extentZ;
+
+        float[] world = new float[16];
+        final float[] rectangle = new float[8];
+        int count;
+        float height;
+
+        boolean hasBounds = false;
+        int minX, minZ, maxX, maxZ;
+
+        boolean changed(GdxPlane plane) {
+            Vector3 position = plane.gdxPose.getPosition();
+            Quaternion rotation = plane.gdxPose.getRotation();
+            return type != plane.type || geometryVersion != plane.geometryVersion
+                    || extentX != plane.extentX || extentZ != plane.extentZ
+                    || pose[0] != position.x || pose[1] != position.y || pose[2] != position.z
+                    || pose[3] != rotation.x || pose[4] != rotation.y || pose[5] != rotation.z || pose[6] != rotation.w;
+        }
+
+        void set(GdxPlane plane, float cellSize) {
+            Vector3 position = plane.gdxPose.getPosition();
+            Quaternion rotation = plane.gdxPose.getRotation();
+            type = plane.type;
+            geometryVersion = plane.geometryVersion;
+            extentX = plane.extentX;
+            extentZ = plane.extentZ;
+            pose[0] = position.x;
+            pose[1] = position.y;
+            pose[2] = position.z;
+            pose[3] = rotation.x;
+            pose[4] = rotation.y;
+            pose[5] = rotation.z;
+            pose[6] = rotation.w;
+
+            float[] local = plane.vertices.items;
+            count = plane.vertices.size / 2;
+            if (count < 3) {
+                // No polygon, use extents rectangle
+                float x = extentX / 2f, z = extentZ / 2f;
+                local = rectangle;
+                local[0] = -x; local[1] = -z;
+                local[2] = x; local[3] = -z;
+                local[4] = x; local[5] = z;
+                local[6] = -x; local[7] = z;
+                count = 4;
+            }
+            if (world.length < count * 2)
+                world = new float[count * 2];
+
+            float qx = pose[3], qy = pose[4], qz = pose[5], qw = pose[6];
+            // Local X and Z axis of the plane
+            float ax = 1 - 2 * (qy * qy + qz * qz), az = 2 * (qx * qz - qw * qy);
+            float bx = 2 * (qx * qz + qw * qy), bz = 1 - 2 * (qx * qx + qy * qy);
+            for (int i = 0; i < count; i++) {
+                float x = local[i * 2], z = local[i * 2 + 1];
+                world[i * 2] = pose[0] + ax * x + bx * z;
+                world[i * 2 + 1] = pose[2] + az * x + bz * z;
+            }
+            height = pose[1];
+
+            if (type == GdxPlaneType.VERTICAL) {
+                // Footprint along the most horizontal local axis
+                float lengthA = ax * ax + az * az, lengthB = bx * bx + bz * bz;
+                float dx = lengthA >= lengthB ? ax : bx, dz = lengthA >= lengthB ? az : bz;
+                float length = (float) Math.sqrt(dx * dx + dz * dz);
+                if (length < 0.000001f) {
+                    hasBounds = false;
+                    count = 0;
+                    return;
+                }
+                dx /= length;
+                dz /= length;
+                float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+                for (int i = 0; i < count; i++) {
+                    float t = (world[i * 2] - pose[0]) * dx + (world[i * 2 + 1] - pose[2]) * dz;
+                    min = Math.min(min, t);
+                    max = Math.max(max, t);
+                }
+                world[0] = pose[0] + dx * min;
+                world[1] = pose[2] + dz * min;
+                world[2] = pose[0] + dx * max;
+                world[3] = pose[2] + dz * max;
+                count = 2;
+            }
+
+            float minWorldX = Float.MAX_VALUE, minWorldZ = Float.MAX_VALUE;
+            float maxWorldX = -Float.MAX_VALUE, maxWorldZ = -Float.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                minWorldX = Math.min(minWorldX, world[i * 2]);
+                maxWorldX = Math.max(maxWorldX, world[i * 2]);
+                minWorldZ = Math.min(minWorldZ, world[i * 2 + 1]);
+                maxWorldZ = Math.max(maxWorldZ, world[i * 2 + 1]);
+            }
+            minX = (int) Math.floor(minWorldX / cellSize);
+            minZ = (int) Math.floor(minWorldZ / cellSize);
+            maxX = (int) Math.floor(maxWorldX / cellSize);
+            maxZ = (int) Math.floor(maxWorldZ / cellSize);
+            hasBounds = true;
+        }
+    }
+}
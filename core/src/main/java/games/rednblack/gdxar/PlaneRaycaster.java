@@ -0,0 +1,698 @@
+package games.rednblack.gdxar;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Intersect rays with the polygons of detected planes on CPU, without going through the native hit test.
+ * Planes are kept in a bounding volume hierarchy, rebuilt when planes are added or removed and refitted only
+ * along the path of planes that moved or changed polygon.
+ * <p>
+ * {@link #update(GdxFrame)} must be called by a single thread, usually the render thread. Queries can be done
+ * from any thread, they always run against a consistent snapshot of the last update and don't allocate.
+ *
+ * @author fgnm
+ */
+public class PlaneRaycaster {
+    /** Ignore hits on the back side of planes, like native hit tests do */
+    public volatile boolean cullBackFaces = true;
+
+    private static final float EPSILON = 0.000001f;
+
+    private final LongMap<PlaneData> entries = new LongMap<>();
+    private final Array<PlaneData> planes = new Array<>(false, 16, PlaneData.class);
+    private final Bvh bvh = new Bvh();
+    private boolean rebuild = false;
+    private long updateId = 0;
+
+    private final Array<Snapshot> snapshots = new Array<>(false, 4, Snapshot.class);
+    private volatile Snapshot current;
+
+    /** Inverse projection view of the last frame, double buffered so it's published without copying planes */
+    private final float[][] cameras = new float[2][16];
+    /** Incremented after each camera write, the low bit selects the buffer readers use */
+    private volatile long cameraVersion = -1;
+    private long cameraSequence = -1;
+    private final Matrix4 invProjectionView = new Matrix4();
+
+    /** Scratch result of batched queries of each querying thread */
+    private static final ThreadLocal<Hit> hits = new ThreadLocal<Hit>() {
+        @Override
+        protected Hit initialValue() {
+            return new Hit();
+        }
+    };
+
+    /** Camera matrix copied by each querying thread */
+    private static final ThreadLocal<float[]> cameraCopies = new ThreadLocal<float[]>() {
+        @Override
+        protected float[] initialValue() {
+            return new float[16];
+        }
+    };
+
+    /** Traversal stack of each querying thread */
+    private static final ThreadLocal<int[]> stacks = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[64];
+        }
+    };
+
+    /**
+     * Update planes from a frame, only changed planes are refitted in the hierarchy. Planes are copied into a
+     * new snapshot only when some plane changed, the camera is published at every new frame.
+     *
+     * @param frame frame acquired by the render thread
+     */
+    public void update(GdxFrame frame) {
+        updateId++;
+        boolean changed = false;
+
+        Array<GdxPlane> framePlanes = frame.getPlanes();
+        for (int i = 0, n = framePlanes.size; i < n; i++) {
+            GdxPlane plane = framePlanes.get(i);
+            if (plane.trackingState != GdxTrackingState.TRACKING) continue;
+
+            PlaneData data = entries.get(plane.id);
+            if (data == null) {
+                data = new PlaneData();
+                data.id = plane.id;
+                data.leaf = -1;
+                entries.put(plane.id, data);
+                planes.add(data);
+                rebuild = true;
+            }
+            data.updateId = updateId;
+            if (data.set(plane)) {
+                changed = true;
+                if (!rebuild)
+                    bvh.refit(data.leaf, data.bounds);
+            }
+        }
+
+        for (int i = planes.size - 1; i >= 0; i--) {
+            PlaneData data = planes.get(i);
+            if (data.updateId != updateId) {
+                entries.remove(data.id);
+                planes.removeIndex(i);
+                rebuild = true;
+            }
+        }
+
+        if (rebuild) {
+            bvh.build(planes);
+            rebuild = false;
+            changed = true;
+        }
+
+        if (cameraSequence != frame.getSequence()) {
+            cameraSequence = frame.getSequence();
+            publishCamera(frame);
+        }
+        if (changed || current == null)
+            publish();
+    }
+
+    private void publishCamera(GdxFrame frame) {
+        invProjectionView.set(frame.cameraProjection).mul(frame.cameraView).inv();
+        long version = cameraVersion + 1;
+        // Readers of this buffer have seen an older version and retry
+        System.arraycopy(invProjectionView.val, 0, cameras[(int) (version & 1)], 0, 16);
+        cameraVersion = version;
+    }
+
+    /**
+     * Copy the camera matrix of the last frame, retrying if the writer reused the buffer while it was read.
+     *
+     * @return false if no frame was updated yet
+     */
+    private boolean getInvProjectionView(float[] out) {
+        while (true) {
+            long version = cameraVersion;
+            if (version < 0) return false;
+            System.arraycopy(cameras[(int) (version & 1)], 0, out, 0, 16);
+            if (version == cameraVersion) return true;
+        }
+    }
+
+    private void publish() {
+        Snapshot snapshot = null;
+        Snapshot current = this.current;
+        for (int i = 0; i < snapshots.size; i++) {
+            Snapshot s = snapshots.get(i);
+            if (s != current && s.refs.get() == 0) {
+                snapshot = s;
+                break;
+            }
+        }
+        if (snapshot == null) {
+            snapshot = new Snapshot();
+            snapshots.add(snapshot);
+        }
+
+        snapshot.set(planes, bvh);
+        this.current = snapshot;
+    }
+
+    /**
+     * Release every plane.
+     */
+    public void clear() {
+        entries.clear();
+        planes.clear();
+        bvh.build(planes);
+        current = null;
+    }
+
+    /**
+     * Number of planes in the last snapshot.
+     */
+    public int size() {
+        Snapshot snapshot = current;
+        return snapshot != null ? snapshot.size : 0;
+    }
+
+    /**
+     * Find the closest plane hit by a ray.
+     *
+     * @param ray ray in world coordinates
+     * @param planeType filter planes by type, {@link GdxPlaneType#ANY} to hit every plane
+     * @param hit output, changed only if a plane is hit
+     * @return true if a plane was hit
+     */
+    public boolean raycast(Ray ray, GdxPlaneType planeType, Hit hit) {
+        return raycast(ray.origin.x, ray.origin.y, ray.origin.z, ray.direction.x, ray.direction.y, ray.direction.z,
+                Float.MAX_VALUE, planeType, hit);
+    }
+
+    /**
+     * Find the closest plane under a screen point, using the camera of the last updated frame.
+     *
+     * @param x position in screen coordinate
+     * @param y position in screen coordinate
+     * @param planeType filter planes by type, {@link GdxPlaneType#ANY} to hit every plane
+     * @param hit output, changed only if a plane is hit
+     * @return true if a plane was hit
+     */
+    public boolean raycast(float x, float y, GdxPlaneType planeType, Hit hit) {
+        return raycast(x, y, Gdx.graphics.getWidth(), Gdx.graphics.getHeight(), planeType, hit);
+    }
+
+    /**
+     * Find the closest plane under a screen point, using the camera of the last updated frame.
+     *
+     * @param x position in screen coordinate
+     * @param y position in screen coordinate
+     * @param screenWidth width of the screen
+     * @param screenHeight height of the screen
+     * @param planeType filter planes by type, {@link GdxPlaneType#ANY} to hit every plane
+     * @param hit output, changed only if a plane is hit
+     * @return true if a plane was hit
+     */
+    public boolean raycast(float x, float y, float screenWidth, float screenHeight, GdxPlaneType planeType, Hit hit) {
+        float[] m = cameraCopies.get();
+        if (!getInvProjectionView(m)) return false;
+        Snapshot snapshot = acquire();
+        if (snapshot == null) return false;
+        try {
+            float ndcX = 2f * x / screenWidth - 1f;
+            float ndcY = 1f - 2f * y / screenHeight;
+
+            float nearW = 1f / (m[Matrix4.M30] * ndcX + m[Matrix4.M31] * ndcY - m[Matrix4.M32] + m[Matrix4.M33]);
+            float nearX = (m[Matrix4.M00] * ndcX + m[Matrix4.M01] * ndcY - m[Matrix4.M02] + m[Matrix4.M03]) * nearW;
+            float nearY = (m[Matrix4.M10] * ndcX + m[Matrix4.M11] * ndcY - m[Matrix4.M12] + m[Matrix4.M13]) * nearW;
+            float nearZ = (m[Matrix4.M20] * ndcX + m[Matrix4.M21] * ndcY - m[Matrix4.M22] + m[Matrix4.M23]) * nearW;
+
+            float farW = 1f / (m[Matrix4.M30] * ndcX + m[Matrix4.M31] * ndcY + m[Matrix4.M32] + m[Matrix4.M33]);
+            float dirX = (m[Matrix4.M00] * ndcX + m[Matrix4.M01] * ndcY + m[Matrix4.M02] + m[Matrix4.M03]) * farW - nearX;
+            float dirY = (m[Matrix4.M10] * ndcX + m[Matrix4.M11] * ndcY + m[Matrix4.M12] + m[Matrix4.M13]) * farW - nearY;
+            float dirZ = (m[Matrix4.M20] * ndcX + m[Matrix4.M21] * ndcY + m[Matrix4.M22] + m[Matrix4.M23]) * farW - nearZ;
+            float len = (float) Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+            if (len < EPSILON) return false;
+
+            return snapshot.raycast(nearX, nearY, nearZ, dirX / len, dirY / len, dirZ / len, Float.MAX_VALUE,
+                    planeType, cullBackFaces, hit);
+        } finally {
+            snapshot.refs.decrementAndGet();
+        }
+    }
+
+    /**
+     * Find the closest plane hit by a ray.
+     *
+     * @param originX ray origin
+     * @param originY ray origin
+     * @param originZ ray origin
+     * @param directionX normalized ray direction
+     * @param directionY normalized ray direction
+     * @param directionZ normalized ray direction
+     * @param maxDistance max distance along the ray
+     * @param planeType filter planes by type, {@link GdxPlaneType#ANY} to hit every plane
+     * @param hit output, changed only if a plane is hit
+     * @return true if a plane was hit
+     */
+    public boolean raycast(float originX, float originY, float originZ, float directionX, float directionY, float directionZ,
+                           float maxDistance, GdxPlaneType planeType, Hit hit) {
+        Snapshot snapshot = acquire();
+        if (snapshot == null) return false;
+        try {
+            return snapshot.raycast(originX, originY, originZ, directionX, directionY, directionZ, maxDistance,
+                    planeType, cullBackFaces, hit);
+        } finally {
+            snapshot.refs.decrementAndGet();
+        }
+    }
+
+    /**
+     * Batched variant of {@link #raycast(float, float, GdxPlaneType, Hit)}, results are written into caller
+     * owned arrays and nothing is allocated.
+     *
+     * @param screenPoints screen coordinates in the form [x1, y1, x2, y2, ... ]
+     * @param count number of points
+     * @param planeType filter planes by type, {@link GdxPlaneType#ANY} to hit every plane
+     * @param positions output hit positions in the form [x1, y1, z1, ... ], at least count * 3 floats
+     * @param rotations output hit rotations in the form [x1, y1, z1, w1, ... ], at least count * 4 floats
+     * @param planeTypes output type of the hit planes, can be null
+     * @param hitFlags output true for points that hit a plane, at least count elements
+     * @return number of points that hit a plane
+     */
+    public int raycast(float[] screenPoints, int count, GdxPlaneType planeType, float[] positions, float[] rotations,
+                       GdxPlaneType[] planeTypes, boolean[] hitFlags) {
+        Hit hit = hits.get();
+        int width = Gdx.graphics.getWidth(), height = Gdx.graphics.getHeight();
+        int hitCount = 0;
+        for (int i = 0; i < count; i++) {
+            hitFlags[i] = raycast(screenPoints[i * 2], screenPoints[i * 2 + 1], width, height, planeType, hit);
+            if (!hitFlags[i]) continue;
+
+            hitCount++;
+            positions[i * 3] = hit.position.x;
+            positions[i * 3 + 1] = hit.position.y;
+            positions[i * 3 + 2] = hit.position.z;
+            rotations[i * 4] = hit.rotation.x;
+            rotations[i * 4 + 1] = hit.rotation.y;
+            rotations[i * 4 + 2] = hit.rotation.z;
+            rotations[i * 4 + 3] = hit.rotation.w;
+            if (planeTypes != null)
+                planeTypes[i] = hit.planeType;
+        }
+        return hitCount;
+    }
+
+    private Snapshot acquire() {
+        while (true) {
+            Snapshot snapshot = current;
+            if (snapshot == null) return null;
+            snapshot.refs.incrementAndGet();
+            // The writer could have replaced it in the meantime, retry so it's never reused while read
+            if (snapshot == current) return snapshot;
+            snapshot.refs.decrementAndGet();
+        }
+    }
+
+    static boolean matches(GdxPlaneType filter, GdxPlaneType type) {
+        return filter == null || filter == GdxPlaneType.ANY || filter == type;
+    }
+
+    /**
+     * Result of a raycast.
+     */
+    public static class Hit {
+        /** Hit point in world coordinates */
+        public final Vector3 position = new Vector3();
+        /** Normal of the hit plane */
+        public final Vector3 normal = new Vector3();
+        /** Rotation of the hit plane */
+        public final Quaternion rotation = new Quaternion();
+        /** Distance from the ray origin */
+        public float distance;
+        /** Stable id of the hit plane */
+        public long planeId;
+        /** Type of the hit plane */
+        public GdxPlaneType planeType;
+
+        /**
+         * Copy hit position and rotation into a pose.
+         *
+         * @param pose output pose
+         */
+        public void getPose(GdxPose pose) {
+            pose.setPosition(position.x, position.y, position.z);
+            pose.setRotation(rotation.x, rotation.y, rotation.z, rotation.w);
+        }
+    }
+
+    /**
+     * Plane polygon and world space bounds.
+     */
+    private static class PlaneData {
+        long id;
+        GdxPlaneType type;
+        /** Position and rotation of the plane center */
+        final float[] pose = new float[7];
+        /** Local polygon [x1, z1, x2, z2, ... ] */
+        float[] polygon = new float[16];
+        int count;
+        final float[] bounds = new float[6];
+
+        long geometryVersion = -1;
+        float extentX, extentZ;
+        long updateId;
+        int leaf;
+
+        /**
+         * Copy plane data, returns true if pose or geometry changed.
+         */
+        boolean set(GdxPlane plane) {
+            type = plane.type;
+            Vector3 position = plane.gdxPose.getPosition();
+            Quaternion rotation = plane.gdxPose.getRotation();
+            boolean changed = pose[0] != position.x || pose[1] != position.y || pose[2] != position.z
+                    || pose[3] != rotation.x || pose[4] != rotation.y || pose[5] != rotation.z || pose[6] != rotation.w;
+            boolean geometryChanged = geometryVersion != plane.geometryVersion || extentX != plane.extentX || extentZ != plane.extentZ;
+            if (!changed && !geometryChanged) return false;
+
+            pose[0] = position.x;
+            pose[1] = position.y;
+            pose[2] = position.z;
+            pose[3] = rotation.x;
+            pose[4] = rotation.y;
+            pose[5] = rotation.z;
+            pose[6] = rotation.w;
+
+            if (geometryChanged) {
+                geometryVersion = plane.geometryVersion;
+                extentX = plane.extentX;
+                extentZ = plane.extentZ;
+                if (plane.vertices.size >= 6) {
+                    count = plane.vertices.size / 2;
+                    ensureCapacity(count * 2);
+                    System.arraycopy(plane.vertices.items, 0, polygon, 0, count * 2);
+                } else {
+                    // No polygon, use extents rectangle
+                    float x = extentX / 2f, z = extentZ / 2f;
+                    count = 4;
+                    polygon[0] = -x; polygon[1] = -z;
+                    polygon[2] = x; polygon[3] = -z;
+                    polygon[4] = x; polygon[5] = z;
+                    polygon[6] = -x; polygon[7] = z;
+                }
+            }
+            computeBounds();
+            return true;
+        }
+
+        void set(PlaneData data) {
+            id = data.id;
+            type = data.type;
+            System.arraycopy(data.pose, 0, pose, 0, 7);
+            count = data.count;
+            ensureCapacity(count * 2);
+            System.arraycopy(data.polygon, 0, polygon, 0, count * 2);
+            System.arraycopy(data.bounds, 0, bounds, 0, 6);
+        }
+
+        private void ensureCapacity(int size) {
+            if (polygon.length < size)
+                polygon = new float[Math.max(size, polygon.length * 2)];
+        }
+
+        private void computeBounds() {
+            bounds[0] = bounds[1] = bounds[2] = Float.MAX_VALUE;
+            bounds[3] = bounds[4] = bounds[5] = -Float.MAX_VALUE;
+            float qx = pose[3], qy = pose[4], qz = pose[5], qw = pose[6];
+            // Local X and Z axis of the plane
+            float ax = 1 - 2 * (qy * qy + qz * qz), ay = 2 * (qx * qy + qw * qz), az = 2 * (qx * qz - qw * qy);
+            float bx = 2 * (qx * qz + qw * qy), by = 2 * (qy * qz - qw * qx), bz = 1 - 2 * (qx * qx + qy * qy);
+            for (int i = 0; i < count; i++) {
+                float x = polygon[i * 2], z = polygon[i * 2 + 1];
+                float wx = pose[0] + ax * x + bx * z;
+                float wy = pose[1] + ay * x + by * z;
+                float wz = pose[2] + az * x + bz * z;
+                bounds[0] = Math.min(bounds[0], wx);
+                bounds[1] = Math.min(bounds[1], wy);
+                bounds[2] = Math.min(bounds[2], wz);
+                bounds[3] = Math.max(bounds[3], wx);
+                bounds[4] = Math.max(bounds[4], wy);
+                bounds[5] = Math.max(bounds[5], wz);
+            }
+            // Flat boxes are fine for slab tests, but keep a small thickness for numerical stability
+            for (int i = 0; i < 3; i++) {
+                bounds[i] -= 0.001f;
+                bounds[i + 3] += 0.001f;
+            }
+        }
+
+        /**
+         * Intersect the ray with this plane, returns the distance or -1.
+         */
+        float intersect(float ox, float oy, float oz, float dx, float dy, float dz, boolean cullBackFaces) {
+            float qx = pose[3], qy = pose[4], qz = pose[5], qw = pose[6];
+            // Local Y axis is the plane normal
+            float nx = 2 * (qx * qy - qw * qz), ny = 1 - 2 * (qx * qx + qz * qz), nz = 2 * (qy * qz + qw * qx);
+            float denominator = nx * dx + ny * dy + nz * dz;
+            if (Math.abs(denominator) < EPSILON || (cullBackFaces && denominator > 0)) return -1;
+
+            float t = (nx * (pose[0] - ox) + ny * (pose[1] - oy) + nz * (pose[2] - oz)) / denominator;
+            if (t < 0) return -1;
+
+            // Hit point in plane local coordinates, projected on local X and Z axis
+            float px = ox + dx * t - pose[0], py = oy + dy * t - pose[1], pz = oz + dz * t - pose[2];
+            float ax = 1 - 2 * (qy * qy + qz * qz), ay = 2 * (qx * qy + qw * qz), az = 2 * (qx * qz - qw * qy);
+            float bx = 2 * (qx * qz + qw * qy), by = 2 * (qy * qz - qw * qx), bz = 1 - 2 * (qx * qx + qy * qy);
+            float x = ax * px + ay * py + az * pz;
+            float z = bx * px + by * py + bz * pz;
+            if (!contains(x, z)) return -1;
+            return t;
+        }
+
+        private boolean contains(float x, float z) {
+            boolean inside = false;
+            for (int i = 0, j = count - 1; i < count; j = i++) {
+                float xi = polygon[i * 2], zi = polygon[i * 2 + 1];
+                float xj = polygon[j * 2], zj = polygon[j * 2 + 1];
+                if ((zi > z) != (zj > z) && x < (xj - xi) * (z - zi) / (zj - zi) + xi)
+                    inside = !inside;
+            }
+            return inside;
+        }
+    }
+
+    /**
+     * Binary hierarchy of axis aligned boxes, nodes are stored in flat arrays. Leaves hold one plane.
+     */
+    private static class Bvh {
+        float[] bounds = new float[6 * 32];
+        int[] left = new int[32];
+        int[] right = new int[32];
+        int[] parent = new int[32];
+        /** Plane index for leaves, -1 for internal nodes */
+        int[] plane = new int[32];
+        int nodeCount = 0;
+
+        private int[] order = new int[16];
+        private float[] centers = new float[16];
+
+        void build(Array<PlaneData> planes) {
+            nodeCount = 0;
+            int n = planes.size;
+            if (n == 0) return;
+            ensureNodes(n * 2);
+            if (order.length < n) {
+                order = new int[n];
+                centers = new float[n];
+            }
+            for (int i = 0; i < n; i++)
+                order[i] = i;
+            build(planes, 0, n, -1);
+        }
+
+        private int build(Array<PlaneData> planes, int start, int end, int parentNode) {
+            int node = nodeCount++;
+            parent[node] = parentNode;
+            if (end - start == 1) {
+                PlaneData data = planes.get(order[start]);
+                data.leaf = node;
+                plane[node] = order[start];
+                left[node] = right[node] = -1;
+                System.arraycopy(data.bounds, 0, bounds, node * 6, 6);
+                return node;
+            }
+
+            plane[node] = -1;
+            // Split on the longest axis of the boxes centers
+            float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+            float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+            for (int i = start; i < end; i++) {
+                float[] b = planes.get(order[i]).bounds;
+                float cx = b[0] + b[3], cy = b[1] + b[4], cz = b[2] + b[5];
+                minX = Math.min(minX, cx); maxX = Math.max(maxX, cx);
+                minY = Math.min(minY, cy); maxY = Math.max(maxY, cy);
+                minZ = Math.min(minZ, cz); maxZ = Math.max(maxZ, cz);
+            }
+            int axis = maxX - minX >= maxY - minY && maxX - minX >= maxZ - minZ ? 0 : maxY - minY >= maxZ - minZ ? 1 : 2;
+            for (int i = start; i < end; i++) {
+                float[] b = planes.get(order[i]).bounds;
+                centers[order[i]] = b[axis] + b[axis + 3];
+            }
+            // Insertion sort, the number of planes is small
+            for (int i = start + 1; i < end; i++) {
+                int value = order[i];
+                int j = i - 1;
+                while (j >= start && centers[order[j]] > centers[value]) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = value;
+            }
+
+            int mid = (start + end) >>> 1;
+            left[node] = build(planes, start, mid, node);
+            right[node] = build(planes, mid, end, node);
+            union(node);
+            return node;
+        }
+
+        /**
+         * Update the bounds of a leaf and of its ancestors.
+         */
+        void refit(int leaf, float[] leafBounds) {
+            if (leaf < 0 || leaf >= nodeCount) return;
+            System.arraycopy(leafBounds, 0, bounds, leaf * 6, 6);
+            int node = parent[leaf];
+            while (node != -1) {
+                union(node);
+                node = parent[node];
+            }
+        }
+
+        private void union(int node) {
+            int l = left[node] * 6, r = right[node] * 6, o = node * 6;
+            for (int i = 0; i < 3; i++) {
+                bounds[o + i] = Math.min(bounds[l + i], bounds[r + i]);
+                bounds[o + i + 3] = Math.max(bounds[l + i + 3], bounds[r + i + 3]);
+            }
+        }
+
+        void set(Bvh bvh) {
+            nodeCount = bvh.nodeCount;
+            ensureNodes(nodeCount);
+            System.arraycopy(bvh.bounds, 0, bounds, 0, nodeCount * 6);
+            System.arraycopy(bvh.left, 0, left, 0, nodeCount);
+            System.arraycopy(bvh.right, 0, right, 0, nodeCount);
+            System.arraycopy(bvh.parent, 0, parent, 0, nodeCount);
+            System.arraycopy(bvh.plane, 0, plane, 0, nodeCount);
+        }
+
+        private void ensureNodes(int size) {
+            if (left.length >= size) return;
+            int capacity = Math.max(size, left.length * 2);
+            float[] newBounds = new float[capacity * 6];
+            System.arraycopy(bounds, 0, newBounds, 0, nodeCount * 6);
+            bounds = newBounds;
+            left = copyOf(left, capacity);
+            right = copyOf(right, capacity);
+            parent = copyOf(parent, capacity);
+            plane = copyOf(plane, capacity);
+        }
+
+        private int[] copyOf(int[] array, int capacity) {
+            int[] newArray = new int[capacity];
+            System.arraycopy(array, 0, newArray, 0, nodeCount);
+            return newArray;
+        }
+
+        /**
+         * Slab test of a ray against the box of a node, returns the entry distance or -1.
+         */
+        float intersect(int node, float ox, float oy, float oz, float invX, float invY, float invZ, float maxDistance) {
+            int o = node * 6;
+            float t1 = (bounds[o] - ox) * invX, t2 = (bounds[o + 3] - ox) * invX;
+            float tMin = Math.min(t1, t2), tMax = Math.max(t1, t2);
+            t1 = (bounds[o + 1] - oy) * invY;
+            t2 = (bounds[o + 4] - oy) * invY;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+            t1 = (bounds[o + 2] - oz) * invZ;
+            t2 = (bounds[o + 5] - oz) * invZ;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+            if (tMax < 0 || tMin > tMax || tMin > maxDistance) return -1;
+            return Math.max(tMin, 0);
+        }
+    }
+
+    /**
+     * Immutable copy of planes and hierarchy read by queries.
+     */
+    private static class Snapshot {
+        final AtomicInteger refs = new AtomicInteger();
+        final Bvh bvh = new Bvh();
+        PlaneData[] planes = new PlaneData[0];
+        int size;
+
+        void set(Array<PlaneData> source, Bvh sourceBvh) {
+            if (planes.length < source.size) {
+                PlaneData[] newPlanes = new PlaneData[Math.max(source.size, planes.length * 2)];
+                System.arraycopy(planes, 0, newPlanes, 0, planes.length);
+                for (int i = planes.length; i < newPlanes.length; i++)
+                    newPlanes[i] = new PlaneData();
+                planes = newPlanes;
+            }
+            for (int i = 0; i < source.size; i++)
+                planes[i].set(source.get(i));
+            size = source.size;
+            bvh.set(sourceBvh);
+        }
+
+        boolean raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance,
+                        GdxPlaneType planeType, boolean cullBackFaces, Hit hit) {
+            if (bvh.nodeCount == 0) return false;
+
+            float invX = 1f / dx, invY = 1f / dy, invZ = 1f / dz;
+            float closest = maxDistance;
+            int closestPlane = -1;
+
+            int[] stack = stacks.get();
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int node = stack[--top];
+                if (bvh.intersect(node, ox, oy, oz, invX, invY, invZ, closest) < 0) continue;
+
+                int index = bvh.plane[node];
+                if (index >= 0) {
+                    PlaneData data = planes[index];
+                    if (!matches(planeType, data.type)) continue;
+                    float t = data.intersect(ox, oy, oz, dx, dy, dz, cullBackFaces);
+                    if (t >= 0 && t < closest) {
+                        closest = t;
+                        closestPlane = index;
+                    }
+                } else if (top + 2 <= stack.length) {
+                    stack[top++] = bvh.left[node];
+                    stack[top++] = bvh.right[node];
+                }
+            }
+
+            if (closestPlane == -1) return false;
+
+            PlaneData data = planes[closestPlane];
+            hit.position.set(ox + dx * closest, oy + dy * closest, oz + dz * closest);
+            hit.rotation.set(data.pose[3], data.pose[4], data.pose[5], data.pose[6]);
+            hit.rotation.transform(hit.normal.set(0, 1, 0));
+            hit.distance = closest;
+            hit.planeId = data.id;
+            hit.planeType = data.type;
+            return true;
+        }
+    }
+}
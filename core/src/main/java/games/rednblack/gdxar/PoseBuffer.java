@@ -0,0 +1,200 @@
+package games.rednblack.gdxar;
+
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Bits;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Struct of arrays storage for {@link GdxPose} data. Positions, rotations and transformation matrices of
+ * every tracked pose are packed in contiguous float arrays, {@link GdxPose} attached to the buffer are
+ * just views over a slot.
+ * <p>
+ * Matrices are computed lazily, {@link #updateMatrices()} converts every changed pose in a single loop,
+ * so many anchored models can be updated at once.
+ *
+ * @author fgnm
+ */
+public class PoseBuffer {
+    public static final int POSITION_SIZE = 3;
+    public static final int ROTATION_SIZE = 4;
+    public static final int MATRIX_SIZE = 16;
+
+    private float[] positions;
+    private float[] rotations;
+    private float[] matrices;
+
+    private final Bits dirty = new Bits();
+    private final IntArray freeSlots = new IntArray();
+    private int capacity;
+    private int size = 0;
+
+    public PoseBuffer() {
+        this(64);
+    }
+
+    public PoseBuffer(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        positions = new float[this.capacity * POSITION_SIZE];
+        rotations = new float[this.capacity * ROTATION_SIZE];
+        matrices = new float[this.capacity * MATRIX_SIZE];
+    }
+
+    /**
+     * Reserve a new slot in the buffer.
+     * @return index of the slot
+     */
+    public int allocate() {
+        int slot;
+        if (freeSlots.size > 0) {
+            slot = freeSlots.pop();
+        } else {
+            if (size == capacity) resize(capacity * 2);
+            slot = size++;
+        }
+        setPosition(slot, 0, 0, 0);
+        setRotation(slot, 0, 0, 0, 0);
+        return slot;
+    }
+
+    /**
+     * Release a slot, it may be reused by following {@link #allocate()} calls.
+     * @param slot index of the slot
+     */
+    public void free(int slot) {
+        dirty.clear(slot);
+        freeSlots.add(slot);
+    }
+
+    public void setPosition(int slot, float x, float y, float z) {
+        int offset = slot * POSITION_SIZE;
+        positions[offset] = x;
+        positions[offset + 1] = y;
+        positions[offset + 2] = z;
+        dirty.set(slot);
+    }
+
+    public void setRotation(int slot, float x, float y, float z, float w) {
+        int offset = slot * ROTATION_SIZE;
+        rotations[offset] = x;
+        rotations[offset + 1] = y;
+        rotations[offset + 2] = z;
+        rotations[offset + 3] = w;
+        dirty.set(slot);
+    }
+
+    public Vector3 getPosition(int slot, Vector3 out) {
+        int offset = slot * POSITION_SIZE;
+        return out.set(positions[offset], positions[offset + 1], positions[offset + 2]);
+    }
+
+    public Quaternion getRotation(int slot, Quaternion out) {
+        int offset = slot * ROTATION_SIZE;
+        return out.set(rotations[offset], rotations[offset + 1], rotations[offset + 2], rotations[offset + 3]);
+    }
+
+    /**
+     * Copy the transformation matrix of a slot, it's computed if the pose changed since the last update.
+     *
+     * @param slot index of the slot
+     * @param out destination matrix
+     * @return out matrix for chaining
+     */
+    public Matrix4 getMatrix(int slot, Matrix4 out) {
+        if (dirty.getAndClear(slot))
+            computeMatrix(slot);
+        System.arraycopy(matrices, slot * MATRIX_SIZE, out.val, 0, MATRIX_SIZE);
+        return out;
+    }
+
+    /**
+     * Compute transformation matrices of every pose changed since the last update.
+     */
+    public void updateMatrices() {
+        for (int slot = dirty.nextSetBit(0); slot >= 0; slot = dirty.nextSetBit(slot + 1)) {
+            computeMatrix(slot);
+        }
+        dirty.clear();
+    }
+
+    private void computeMatrix(int slot) {
+        int p = slot * POSITION_SIZE;
+        int r = slot * ROTATION_SIZE;
+        int m = slot * MATRIX_SIZE;
+
+        float qx = rotations[r], qy = rotations[r + 1], qz = rotations[r + 2], qw = rotations[r + 3];
+        float xs = qx * 2f, ys = qy * 2f, zs = qz * 2f;
+        float wx = qw * xs, wy = qw * ys, wz = qw * zs;
+        float xx = qx * xs, xy = qx * ys, xz = qx * zs;
+        float yy = qy * ys, yz = qy * zs, zz = qz * zs;
+
+        float[] val = matrices;
+        val[m + Matrix4.M00] = 1.0f - (yy + zz);
+        val[m + Matrix4.M01] = xy - wz;
+        val[m + Matrix4.M02] = xz + wy;
+        val[m + Matrix4.M03] = positions[p];
+
+        val[m + Matrix4.M10] = xy + wz;
+        val[m + Matrix4.M11] = 1.0f - (xx + zz);
+        val[m + Matrix4.M12] = yz - wx;
+        val[m + Matrix4.M13] = positions[p + 1];
+
+        val[m + Matrix4.M20] = xz - wy;
+        val[m + Matrix4.M21] = yz + wx;
+        val[m + Matrix4.M22] = 1.0f - (xx + yy);
+        val[m + Matrix4.M23] = positions[p + 2];
+
+        val[m + Matrix4.M30] = 0f;
+        val[m + Matrix4.M31] = 0f;
+        val[m + Matrix4.M32] = 0f;
+        val[m + Matrix4.M33] = 1.0f;
+    }
+
+    private void resize(int newCapacity) {
+        float[] newPositions = new float[newCapacity * POSITION_SIZE];
+        System.arraycopy(positions, 0, newPositions, 0, size * POSITION_SIZE);
+        positions = newPositions;
+
+        float[] newRotations = new float[newCapacity * ROTATION_SIZE];
+        System.arraycopy(rotations, 0, newRotations, 0, size * ROTATION_SIZE);
+        rotations = newRotations;
+
+        float[] newMatrices = new float[newCapacity * MATRIX_SIZE];
+        System.arraycopy(matrices, 0, newMatrices, 0, size * MATRIX_SIZE);
+        matrices = newMatrices;
+
+        capacity = newCapacity;
+    }
+
+    /**
+     * Raw positions array in the form [x1, y1, z1, x2, y2, z2, ...], indexed by slot.
+     * The array is replaced when the buffer grows, so references must not be kept.
+     */
+    public float[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * Raw rotations array in the form [x1, y1, z1, w1, x2, ...], indexed by slot.
+     * The array is replaced when the buffer grows, so references must not be kept.
+     */
+    public float[] getRotations() {
+        return rotations;
+    }
+
+    /**
+     * Raw column major matrices array, 16 floats per slot. Call {@link #updateMatrices()} before reading.
+     * The array is replaced when the buffer grows, so references must not be kept.
+     */
+    public float[] getMatrices() {
+        return matrices;
+    }
+
+    /**
+     * Number of slots currently in use.
+     */
+    public int size() {
+        return size - freeSlots.size;
+    }
+}
@@ -0,0 +1,285 @@
+package games.rednblack.gdxar;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.util.Arrays;
+
+/**
+ * Smooth trackables poses to remove jitter, using One Euro or critically damped filters configured per type
+ * of trackable. Filter state is kept by trackable id and reused across frames, no temporary objects are
+ * allocated while filtering.
+ * <p>
+ * In delta mode trackables not reported by the framework keep converging to their last pose, they are
+ * reported as updated until the filtered pose reaches it.
+ *
+ * @author fgnm
+ */
+public class PoseFilter {
+    /** Filtered poses closer than this to the tracked one are snapped to it */
+    public float epsilon = 0.0001f;
+
+    /** Filter state of trackables not seen for this time in nanoseconds is released */
+    public long stateTimeout = 1_000_000_000L;
+
+    private final PoseFilterSettings anchorsSettings;
+    private final PoseFilterSettings planesSettings;
+    private final PoseFilterSettings augmentedImagesSettings;
+
+    private final LongMap<State> states = new LongMap<>();
+    private final Array<State> freeStates = new Array<>(false, 16, State.class);
+    private long timestamp = -1;
+
+    private final Quaternion tmpRotation = new Quaternion();
+
+    /**
+     * Use filters settings of the configuration, changes to the settings are applied at the next frame.
+     *
+     * @param configuration backend configuration
+     */
+    public PoseFilter(GdxARConfiguration configuration) {
+        this(configuration.anchorsFilter, configuration.planesFilter, configuration.augmentedImagesFilter);
+    }
+
+    public PoseFilter(PoseFilterSettings anchorsSettings, PoseFilterSettings planesSettings, PoseFilterSettings augmentedImagesSettings) {
+        this.anchorsSettings = anchorsSettings;
+        this.planesSettings = planesSettings;
+        this.augmentedImagesSettings = augmentedImagesSettings;
+    }
+
+    /**
+     * Check if at least one type of trackable is filtered.
+     * @return false if every filter type is {@link GdxPoseFilterType#NONE}
+     */
+    public boolean isEnabled() {
+        return anchorsSettings.type != GdxPoseFilterType.NONE
+                || planesSettings.type != GdxPoseFilterType.NONE
+                || augmentedImagesSettings.type != GdxPoseFilterType.NONE;
+    }
+
+    /**
+     * Filter poses of every trackable in the frame, must be called by the backend after the update and before
+     * the frame is published. If the frame timestamp didn't change filters don't advance, but filtered poses
+     * are still written back, so frames rebuilt from raw poses never reach the render thread unfiltered.
+     *
+     * @param frame working frame filled by the backend
+     */
+    public void apply(GdxFrame frame) {
+        if (!isEnabled()) return;
+
+        float delta = 0;
+        if (frame.timestamp > timestamp) {
+            delta = timestamp == -1 ? 0 : (frame.timestamp - timestamp) / 1_000_000_000f;
+            timestamp = frame.timestamp;
+        }
+
+        boolean deltaMode = frame.isDeltaMode();
+        apply(frame.getAnchorsDelta(), frame.getAnchors(), anchorsSettings, deltaMode, delta);
+        apply(frame.getPlanesDelta(), frame.getPlanes(), planesSettings, deltaMode, delta);
+        apply(frame.getAugmentedImagesDelta(), frame.getAugmentedImages(), augmentedImagesSettings, deltaMode, delta);
+
+        if (deltaMode) {
+            removeAll(frame.getAnchorsDelta().getRemoved());
+            removeAll(frame.getPlanesDelta().getRemoved());
+            removeAll(frame.getAugmentedImagesDelta().getRemoved());
+        }
+
+        LongMap.Entries<State> entries = states.entries();
+        while (entries.hasNext()) {
+            LongMap.Entry<State> entry = entries.next();
+            if (timestamp - entry.value.timestamp > stateTimeout) {
+                freeStates.add(entry.value);
+                entries.remove();
+            }
+        }
+    }
+
+    private <T extends GdxAnchor> void apply(GdxTrackableDelta<T> trackablesDelta, Array<T> trackables, PoseFilterSettings settings,
+                                             boolean deltaMode, float delta) {
+        if (settings.type == GdxPoseFilterType.NONE) return;
+
+        for (int i = 0, n = trackables.size; i < n; i++) {
+            T trackable = trackables.get(i);
+            if (trackable.trackingState != GdxTrackingState.TRACKING) {
+                remove(trackable.id);
+                continue;
+            }
+
+            boolean updated = !deltaMode || trackablesDelta.isUpdated(trackable);
+            State state = states.get(trackable.id);
+            if (state == null) {
+                state = obtainState();
+                states.put(trackable.id, state);
+            } else if (!updated && state.converged) {
+                state.timestamp = timestamp;
+                continue;
+            }
+
+            GdxPose pose = trackable.gdxPose;
+            if (updated || !state.initialized) {
+                state.setTarget(pose.getPosition(), pose.getRotation());
+            }
+            state.timestamp = timestamp;
+            state.update(settings, delta, epsilon);
+            pose.setPosition(state.position.x, state.position.y, state.position.z);
+            pose.setRotation(state.rotation.x, state.rotation.y, state.rotation.z, state.rotation.w);
+
+            if (!updated) {
+                // Still converging, make sure the new pose reaches the render thread
+                trackablesDelta.obtain(trackable.id);
+            }
+        }
+    }
+
+    /**
+     * Filter a pose in place, can be used for custom poses not managed by the backend.
+     *
+     * @param id unique id of the filtered pose
+     * @param settings filter settings
+     * @param delta time since the previous call in seconds
+     * @param position tracked position, replaced by the filtered one
+     * @param rotation tracked rotation, replaced by the filtered one
+     */
+    public void filter(long id, PoseFilterSettings settings, float delta, Vector3 position, Quaternion rotation) {
+        State state = states.get(id);
+        if (state == null) {
+            state = obtainState();
+            states.put(id, state);
+        }
+        state.setTarget(position, rotation);
+        state.timestamp = timestamp;
+        state.update(settings, delta, epsilon);
+        position.set(state.position);
+        rotation.set(state.rotation);
+    }
+
+    private State obtainState() {
+        State state = freeStates.size > 0 ? freeStates.pop() : new State();
+        state.initialized = false;
+        state.converged = false;
+        return state;
+    }
+
+    private void removeAll(Array<? extends GdxAnchor> trackables) {
+        for (GdxAnchor trackable : trackables)
+            remove(trackable.id);
+    }
+
+    /**
+     * Release filter state of a trackable, next pose will be used as is.
+     *
+     * @param id stable id of the trackable
+     */
+    public void remove(long id) {
+        State state = states.remove(id);
+        if (state != null)
+            freeStates.add(state);
+    }
+
+    public void clear() {
+        for (State state : states.values())
+            freeStates.add(state);
+        states.clear();
+        timestamp = -1;
+    }
+
+    /**
+     * Per trackable filter state.
+     */
+    private class State {
+        final Vector3 target = new Vector3();
+        final Quaternion targetRotation = new Quaternion();
+        final Vector3 position = new Vector3();
+        final Quaternion rotation = new Quaternion();
+
+        /** Critically damped velocities of position and rotation components */
+        final float[] velocities = new float[7];
+
+        /** One Euro filtered speeds */
+        float speed;
+        float angularSpeed;
+
+        long timestamp;
+        boolean initialized;
+        boolean converged;
+
+        void setTarget(Vector3 position, Quaternion rotation) {
+            target.set(position);
+            targetRotation.set(rotation);
+            converged = false;
+            if (!initialized) {
+                this.position.set(position);
+                this.rotation.set(rotation);
+                Arrays.fill(velocities, 0);
+                speed = 0;
+                angularSpeed = 0;
+                initialized = true;
+            }
+        }
+
+        void update(PoseFilterSettings settings, float delta, float epsilon) {
+            if (delta > 0) {
+                if (settings.type == GdxPoseFilterType.ONE_EURO)
+                    updateOneEuro(settings, delta);
+                else if (settings.type == GdxPoseFilterType.CRITICALLY_DAMPED)
+                    updateCriticallyDamped(settings, delta);
+            }
+
+            if (position.dst2(target) < epsilon * epsilon && Math.abs(rotation.dot(targetRotation)) > 1f - epsilon) {
+                position.set(target);
+                rotation.set(targetRotation);
+                Arrays.fill(velocities, 0);
+                converged = true;
+            }
+        }
+
+        private void updateOneEuro(PoseFilterSettings settings, float delta) {
+            float derivativeAlpha = alpha(delta, settings.derivativeCutoff);
+
+            float rawSpeed = position.dst(target) / delta;
+            speed += derivativeAlpha * (rawSpeed - speed);
+            position.lerp(target, alpha(delta, settings.minCutoff + settings.beta * speed));
+
+            float dot = Math.min(1f, Math.abs(rotation.dot(targetRotation)));
+            float rawAngularSpeed = 2f * (float) Math.acos(dot) / delta;
+            angularSpeed += derivativeAlpha * (rawAngularSpeed - angularSpeed);
+            rotation.slerp(targetRotation, alpha(delta, settings.minCutoff + settings.beta * angularSpeed));
+        }
+
+        private float alpha(float delta, float cutoff) {
+            float tau = 1f / (MathUtils.PI2 * cutoff);
+            return 1f / (1f + tau / delta);
+        }
+
+        private void updateCriticallyDamped(PoseFilterSettings settings, float delta) {
+            float omega = 2f / Math.max(0.0001f, settings.smoothTime);
+            float x = omega * delta;
+            float exp = 1f / (1f + x + 0.48f * x * x + 0.235f * x * x * x);
+
+            position.x = damp(position.x, target.x, 0, omega, delta, exp);
+            position.y = damp(position.y, target.y, 1, omega, delta, exp);
+            position.z = damp(position.z, target.z, 2, omega, delta, exp);
+
+            // Damp towards the closest representation of the target rotation
+            tmpRotation.set(targetRotation);
+            if (rotation.dot(tmpRotation) < 0)
+                tmpRotation.set(-tmpRotation.x, -tmpRotation.y, -tmpRotation.z, -tmpRotation.w);
+
+            rotation.x = damp(rotation.x, tmpRotation.x, 3, omega, delta, exp);
+            rotation.y = damp(rotation.y, tmpRotation.y, 4, omega, delta, exp);
+            rotation.z = damp(rotation.z, tmpRotation.z, 5, omega, delta, exp);
+            rotation.w = damp(rotation.w, tmpRotation.w, 6, omega, delta, exp);
+            rotation.nor();
+        }
+
+        private float damp(float current, float target, int component, float omega, float delta, float exp) {
+            float change = current - target;
+            float temp = (velocities[component] + omega * change) * delta;
+            velocities[component] = (velocities[component] - omega * temp) * exp;
+            return target + (change + temp) * exp;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package games.rednblack.gdxar;
+
+/**
+ * Settings of the {@link PoseFilter} for a type of trackable.
+ *
+ * @author fgnm
+ */
+public class PoseFilterSettings {
+    /** Filter used for this type of trackable, disabled by default */
+    public GdxPoseFilterType type = GdxPoseFilterType.NONE;
+
+    /** One Euro: cutoff frequency in Hz when the trackable is still, lower values remove more jitter */
+    public float minCutoff = 1f;
+    /** One Euro: cutoff increase with speed (meters or radians per second), higher values reduce lag */
+    public float beta = 1f;
+    /** One Euro: cutoff frequency in Hz used to smooth the speed */
+    public float derivativeCutoff = 1f;
+
+    /** Critically damped: approximate time in seconds to reach the target pose */
+    public float smoothTime = 0.1f;
+
+    public PoseFilterSettings() {
+
+    }
+
+    public PoseFilterSettings(PoseFilterSettings settings) {
+        set(settings);
+    }
+
+    public PoseFilterSettings set(PoseFilterSettings settings) {
+        type = settings.type;
+        minCutoff = settings.minCutoff;
+        beta = settings.beta;
+        derivativeCutoff = settings.derivativeCutoff;
+        smoothTime = settings.smoothTime;
+        return this;
+    }
+}
@@ -0,0 +1,317 @@
+package games.rednblack.gdxar;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.Pool;
+
+/**
+ * Keep a short timestamped history of trackables and camera poses to interpolate or extrapolate them
+ * at display time. Tracking can run at a lower rate than rendering (e.g. power save mode) while models
+ * still move smoothly.
+ * <p>
+ * Sample timestamps come from the AR framework clock, the display time is estimated from the arrival time
+ * of the last frame so the two clocks don't need to match.
+ *
+ * @author fgnm
+ */
+public class PosePredictor {
+    /** Max time in nanoseconds a pose can be extrapolated after the last sample */
+    public long maxExtrapolation = 100_000_000L;
+
+    /** Additional time in nanoseconds between the render call and the frame on screen */
+    public long displayLatency = 0;
+
+    /** Trackables without new samples for this time in nanoseconds are released */
+    public long historyTimeout = 1_000_000_000L;
+
+    private final int historySize;
+    private final Pool<History> historyPool;
+    private final LongMap<History> histories = new LongMap<>();
+    private final History cameraHistory;
+
+    private long lastTimestamp = -1;
+    private long lastArrival = 0;
+
+    private final Matrix4 tmpMatrix = new Matrix4();
+    private final Vector3 tmpPosition = new Vector3();
+    private final Quaternion tmpRotation = new Quaternion();
+    private final Vector3 targetPosition = new Vector3();
+    private final Quaternion targetRotation = new Quaternion();
+
+    public PosePredictor() {
+        this(4);
+    }
+
+    /**
+     * @param historySize number of samples kept for each trackable, at least 2
+     */
+    public PosePredictor(final int historySize) {
+        this.historySize = Math.max(2, historySize);
+        historyPool = new Pool<History>() {
+            @Override
+            protected History newObject() {
+                return new History(PosePredictor.this.historySize);
+            }
+        };
+        cameraHistory = new History(this.historySize);
+    }
+
+    /**
+     * Start a new tracking sample, following samples use this timestamp.
+     *
+     * @param timestamp capture time in nanoseconds, from the AR framework clock
+     * @return false if the timestamp is not newer than the previous one
+     */
+    public boolean begin(long timestamp) {
+        if (timestamp <= lastTimestamp) return false;
+        lastTimestamp = timestamp;
+        lastArrival = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Record the pose of a trackable at the current timestamp.
+     *
+     * @param id stable id of the trackable
+     * @param pose current pose
+     */
+    public void addSample(long id, GdxPose pose) {
+        History history = histories.get(id);
+        if (history == null) {
+            history = historyPool.obtain();
+            histories.put(id, history);
+        }
+        history.add(lastTimestamp, pose.getPosition(), pose.getRotation());
+    }
+
+    /**
+     * Record the camera pose at the current timestamp.
+     *
+     * @param view view matrix of the AR camera
+     */
+    public void addCameraSample(Matrix4 view) {
+        tmpMatrix.set(view).inv();
+        tmpMatrix.getTranslation(tmpPosition);
+        tmpMatrix.getRotation(tmpRotation, true);
+        cameraHistory.add(lastTimestamp, tmpPosition, tmpRotation);
+    }
+
+    /**
+     * Record camera and trackables of a frame, nothing is done if the frame was already sampled.
+     * Trackables removed by the frame or without samples for {@link #historyTimeout} are released.
+     *
+     * @param frame frame acquired by the render thread
+     */
+    public void update(GdxFrame frame) {
+        if (!begin(frame.timestamp)) return;
+
+        addCameraSample(frame.cameraView);
+        if (frame.isDeltaMode()) {
+            addSamples(frame.getAnchorsDelta().getAdded());
+            addSamples(frame.getAnchorsDelta().getUpdated());
+            addSamples(frame.getPlanesDelta().getAdded());
+            addSamples(frame.getPlanesDelta().getUpdated());
+            addSamples(frame.getAugmentedImagesDelta().getAdded());
+            addSamples(frame.getAugmentedImagesDelta().getUpdated());
+            removeAll(frame.getAnchorsDelta().getRemoved());
+            removeAll(frame.getPlanesDelta().getRemoved());
+            removeAll(frame.getAugmentedImagesDelta().getRemoved());
+        } else {
+            addSamples(frame.getAnchors());
+            addSamples(frame.getPlanes());
+            addSamples(frame.getAugmentedImages());
+        }
+
+        LongMap.Entries<History> entries = histories.entries();
+        while (entries.hasNext()) {
+            LongMap.Entry<History> entry = entries.next();
+            if (lastTimestamp - entry.value.getLastTimestamp() > historyTimeout) {
+                historyPool.free(entry.value);
+                entries.remove();
+            }
+        }
+    }
+
+    private void addSamples(Array<? extends GdxAnchor> trackables) {
+        for (GdxAnchor trackable : trackables) {
+            if (trackable.trackingState == GdxTrackingState.TRACKING)
+                addSample(trackable.id, trackable.gdxPose);
+        }
+    }
+
+    private void removeAll(Array<? extends GdxAnchor> trackables) {
+        for (GdxAnchor trackable : trackables)
+            remove(trackable.id);
+    }
+
+    /**
+     * Estimate the time, in the AR framework clock, when the current render will be on screen.
+     *
+     * @return display time in nanoseconds
+     */
+    public long getDisplayTime() {
+        return lastTimestamp + (System.nanoTime() - lastArrival) + displayLatency;
+    }
+
+    /**
+     * Interpolate or extrapolate the pose of a trackable.
+     *
+     * @param id stable id of the trackable
+     * @param time target time in nanoseconds, usually {@link #getDisplayTime()}
+     * @param position output position
+     * @param rotation output rotation
+     * @return false if the trackable has no samples, outputs are not changed
+     */
+    public boolean predict(long id, long time, Vector3 position, Quaternion rotation) {
+        History history = histories.get(id);
+        if (history == null) return false;
+        return history.sample(time, maxExtrapolation, position, rotation);
+    }
+
+    /**
+     * Interpolate or extrapolate the pose of a trackable.
+     *
+     * @param id stable id of the trackable
+     * @param time target time in nanoseconds, usually {@link #getDisplayTime()}
+     * @param out output pose
+     * @return false if the trackable has no samples, pose is not changed
+     */
+    public boolean predict(long id, long time, GdxPose out) {
+        if (!predict(id, time, tmpPosition, tmpRotation)) return false;
+        out.setPosition(tmpPosition.x, tmpPosition.y, tmpPosition.z);
+        out.setRotation(tmpRotation.x, tmpRotation.y, tmpRotation.z, tmpRotation.w);
+        return true;
+    }
+
+    /**
+     * Move the camera to its interpolated or extrapolated pose, projection matrix is preserved.
+     *
+     * @param time target time in nanoseconds, usually {@link #getDisplayTime()}
+     * @param camera camera returned by {@link GdxAR#getARCamera()}
+     * @return false if the camera has no samples yet
+     */
+    public boolean predictCamera(long time, Camera camera) {
+        if (!cameraHistory.sample(time, maxExtrapolation, tmpPosition, tmpRotation)) return false;
+
+        camera.position.set(tmpPosition);
+        tmpRotation.transform(camera.direction.set(0, 0, -1));
+        tmpRotation.transform(camera.up.set(0, 1, 0));
+
+        camera.view.set(tmpPosition, tmpRotation).inv();
+        camera.combined.set(camera.projection);
+        Matrix4.mul(camera.combined.val, camera.view.val);
+        camera.invProjectionView.set(camera.combined);
+        Matrix4.inv(camera.invProjectionView.val);
+        return true;
+    }
+
+    /**
+     * Release history of a trackable.
+     *
+     * @param id stable id of the trackable
+     */
+    public void remove(long id) {
+        History history = histories.remove(id);
+        if (history != null)
+            historyPool.free(history);
+    }
+
+    public void clear() {
+        historyPool.freeAll(histories.values().toArray());
+        histories.clear();
+        cameraHistory.reset();
+        lastTimestamp = -1;
+    }
+
+    /**
+     * Ring buffer of timestamped poses.
+     */
+    private class History implements Pool.Poolable {
+        private final long[] timestamps;
+        private final float[] positions;
+        private final float[] rotations;
+        private int head = 0;
+        private int count = 0;
+
+        History(int size) {
+            timestamps = new long[size];
+            positions = new float[size * 3];
+            rotations = new float[size * 4];
+        }
+
+        void add(long timestamp, Vector3 position, Quaternion rotation) {
+            if (count > 0 && timestamps[index(count - 1)] == timestamp)
+                count--;
+            int i = index(count);
+            if (count == timestamps.length)
+                head = (head + 1) % timestamps.length;
+            else
+                count++;
+
+            timestamps[i] = timestamp;
+            positions[i * 3] = position.x;
+            positions[i * 3 + 1] = position.y;
+            positions[i * 3 + 2] = position.z;
+            rotations[i * 4] = rotation.x;
+            rotations[i * 4 + 1] = rotation.y;
+            rotations[i * 4 + 2] = rotation.z;
+            rotations[i * 4 + 3] = rotation.w;
+        }
+
+        long getLastTimestamp() {
+            return count == 0 ? -1 : timestamps[index(count - 1)];
+        }
+
+        /** Physical index of the n-th sample, from the oldest one */
+        private int index(int n) {
+            return (head + n) % timestamps.length;
+        }
+
+        boolean sample(long time, long maxExtrapolation, Vector3 position, Quaternion rotation) {
+            if (count == 0) return false;
+
+            int last = index(count - 1);
+            if (count == 1 || time <= timestamps[index(0)]) {
+                get(time >= timestamps[last] ? last : index(0), position, rotation);
+                return true;
+            }
+
+            // Find the pair of samples around time, the last two are used for extrapolation
+            int from = index(count - 2), to = last;
+            if (time < timestamps[last]) {
+                for (int n = count - 2; n >= 0; n--) {
+                    from = index(n);
+                    to = index(n + 1);
+                    if (timestamps[from] <= time) break;
+                }
+            } else {
+                time = Math.min(time, timestamps[last] + maxExtrapolation);
+            }
+
+            long span = timestamps[to] - timestamps[from];
+            float alpha = span > 0 ? (float) (time - timestamps[from]) / span : 1;
+            get(from, position, rotation);
+            targetPosition.set(positions[to * 3], positions[to * 3 + 1], positions[to * 3 + 2]);
+            targetRotation.set(rotations[to * 4], rotations[to * 4 + 1], rotations[to * 4 + 2], rotations[to * 4 + 3]);
+            position.lerp(targetPosition, alpha);
+            // Small angles fall back to a linear blend, extrapolating with it leaves a non unit quaternion
+            rotation.slerp(targetRotation, alpha).nor();
+            return true;
+        }
+
+        private void get(int i, Vector3 position, Quaternion rotation) {
+            position.set(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+            rotation.set(rotations[i * 4], rotations[i * 4 + 1], rotations[i * 4 + 2], rotations[i * 4 + 3]);
+        }
+
+        @Override
+        public void reset() {
+            head = 0;
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package games.rednblack.gdxar;
+
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.ObjectLongMap;
+
+/**
+ * Registry that assigns a stable id to every native trackable object reported by the AR framework.
+ * Native objects are used as keys, so they must implement equals/hashCode consistently with the
+ * underlying native handle (e.g. ARCore trackables or ARKit anchor identifiers).
+ * <p>
+ * The registry of the backend frame is shared with the frames of {@link GdxFrameExchange}, so ids and the
+ * {@link PlaneGraph} can be used from the render thread while the backend updates them. Trackables themselves
+ * are looked up by id on the frame, see {@link GdxFrame#getPlane(long)}.
+ *
+ * @author fgnm
+ */
+public class TrackableRegistry {
+    private final ObjectLongMap<Object> ids = new ObjectLongMap<>();
+    private final LongMap<Object> nativeObjects = new LongMap<>();
+    private long nextId = 0;
+
+    private final PlaneGraph planeGraph = new PlaneGraph();
+
+    /**
+     * Get the id of a native trackable, a new one is assigned if the object has never been seen.
+     *
+     * @param nativeTrackable backend trackable object or its unique identifier
+     * @return stable id of the trackable
+     */
+    public synchronized long getId(Object nativeTrackable) {
+        long id = ids.get(nativeTrackable, -1);
+        if (id == -1) {
+            id = nextId++;
+            ids.put(nativeTrackable, id);
+            nativeObjects.put(id, nativeTrackable);
+        }
+        return id;
+    }
+
+    /**
+     * Find the id of a native trackable without registering it.
+     *
+     * @param nativeTrackable backend trackable object or its unique identifier
+     * @return stable id of the trackable or -1 if not registered
+     */
+    public synchronized long findId(Object nativeTrackable) {
+        return ids.get(nativeTrackable, -1);
+    }
+
+    /**
+     * Get the native trackable registered with the given id.
+     *
+     * @param id stable id of the trackable
+     * @return backend trackable object or null if not registered
+     */
+    public synchronized Object getNativeTrackable(long id) {
+        return nativeObjects.get(id);
+    }
+
+    /**
+     * Planes merged into others by the AR framework.
+     * @return plane graph of this registry
+     */
+    public PlaneGraph getPlaneGraph() {
+        return planeGraph;
+    }
+
+    /**
+     * Remove a trackable when the backend reports it as stopped. The id will never be reused.
+     *
+     * @param id stable id of the trackable
+     */
+    public synchronized void evict(long id) {
+        Object nativeTrackable = nativeObjects.remove(id);
+        if (nativeTrackable != null)
+            ids.remove(nativeTrackable, -1);
+        planeGraph.remove(id);
+    }
+
+    /**
+     * Remove a trackable when the backend reports it as stopped.
+     *
+     * @param nativeTrackable backend trackable object or its unique identifier
+     */
+    public synchronized void evict(Object nativeTrackable) {
+        long id = ids.remove(nativeTrackable, -1);
+        if (id != -1)
+            evict(id);
+    }
+
+    public synchronized int size() {
+        return ids.size;
+    }
+
+    public synchronized void clear() {
+        ids.clear();
+        nativeObjects.clear();
+        planeGraph.clear();
+    }
+}
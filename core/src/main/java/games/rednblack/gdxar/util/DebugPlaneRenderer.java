@@ -0,0 +1,193 @@
+package games.rednblack.gdxar.util;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Disposable;
+
+import games.rednblack.gdxar.GdxFrame;
+import games.rednblack.gdxar.GdxPlane;
+import games.rednblack.gdxar.GdxPlaneType;
+import games.rednblack.gdxar.GdxTrackingState;
+
+/**
+ * Draw the outline of detected planes for debugging. Edges of every plane are transformed to world space
+ * and written into a single line mesh, uploaded and drawn once per frame.
+ * <p>
+ * Planes without polygon (surface geometry disabled) are drawn as the rectangle of their extents.
+ *
+ * @author fgnm
+ */
+public class DebugPlaneRenderer implements Disposable {
+    /** x, y, z, color */
+    private static final int VERTEX_SIZE = 4;
+
+    private static final String VERTEX_SHADER_CODE =
+            "uniform mat4 u_projViewTrans;\n"
+                    + "attribute vec3 a_position;\n"
+                    + "attribute vec4 a_color;\n"
+                    + "varying vec4 v_color;\n"
+                    + "\n"
+                    + "void main() {\n"
+                    + "  v_color = a_color;\n"
+                    + "  gl_Position = u_projViewTrans * vec4(a_position, 1.0);\n"
+                    + "}";
+
+    private static final String FRAGMENT_SHADER_CODE =
+            "#ifdef GL_ES\n"
+                    + "precision mediump float;\n"
+                    + "#endif\n"
+                    + "varying vec4 v_color;\n"
+                    + "\n"
+                    + "void main() {\n"
+                    + "  gl_FragColor = v_color;\n"
+                    + "}\n";
+
+    /** Color of the outlines */
+    public final Color color = new Color(Color.YELLOW);
+
+    /** Width of the outlines, might be clamped by the driver */
+    public float lineWidth = 10;
+
+    private final Mesh mesh;
+    private final ShaderProgram shader;
+    private final float[] vertices;
+    private int vertexCount = 0;
+    private Camera camera;
+
+    private final Matrix4 transform = new Matrix4();
+    private final float[] rectangle = new float[8];
+
+    public DebugPlaneRenderer() {
+        this(8192);
+    }
+
+    /**
+     * @param maxVertices max number of line vertices drawn with a single call, two for each edge
+     */
+    public DebugPlaneRenderer(int maxVertices) {
+        mesh = new Mesh(false, maxVertices, 0,
+                new VertexAttribute(VertexAttributes.Usage.Position, 3, ShaderProgram.POSITION_ATTRIBUTE),
+                new VertexAttribute(VertexAttributes.Usage.ColorPacked, 4, GL20.GL_UNSIGNED_BYTE, true, ShaderProgram.COLOR_ATTRIBUTE));
+        vertices = new float[maxVertices * VERTEX_SIZE];
+
+        shader = ShaderCache.obtain(VERTEX_SHADER_CODE, FRAGMENT_SHADER_CODE, 0);
+    }
+
+    /**
+     * Add outlines of every tracked plane of the frame, downward facing planes are skipped.
+     *
+     * @param frame current frame
+     */
+    public void add(GdxFrame frame) {
+        for (GdxPlane plane : frame.getPlanes()) {
+            if (plane.trackingState == GdxTrackingState.TRACKING && plane.type != GdxPlaneType.HORIZONTAL_DOWNWARD_FACING)
+                add(plane, color);
+        }
+    }
+
+    /**
+     * Add the outline of a plane.
+     *
+     * @param plane detected plane
+     * @param color outline color
+     */
+    public void add(GdxPlane plane, Color color) {
+        float[] polygon = plane.vertices.items;
+        int count = plane.vertices.size / 2;
+        if (count < 2) {
+            if (plane.extentX <= 0 || plane.extentZ <= 0) return;
+            float x = plane.extentX / 2f, z = plane.extentZ / 2f;
+            rectangle[0] = -x; rectangle[1] = -z;
+            rectangle[2] = x; rectangle[3] = -z;
+            rectangle[4] = x; rectangle[5] = z;
+            rectangle[6] = -x; rectangle[7] = z;
+            polygon = rectangle;
+            count = 4;
+        }
+
+        plane.gdxPose.getTransform(transform);
+        float[] m = transform.val;
+        float packedColor = color.toFloatBits();
+
+        for (int i = 0; i < count; i++) {
+            if (vertexCount + 2 > mesh.getMaxVertices()) {
+                // Mesh is full, draw now if rendering or drop the remaining edges
+                if (camera == null) return;
+                flush();
+            }
+
+            int j = i == 0 ? count - 1 : i - 1;
+            addVertex(m, polygon[j * 2], polygon[j * 2 + 1], packedColor);
+            addVertex(m, polygon[i * 2], polygon[i * 2 + 1], packedColor);
+        }
+    }
+
+    private void addVertex(float[] m, float x, float z, float packedColor) {
+        int idx = vertexCount * VERTEX_SIZE;
+        vertices[idx] = m[Matrix4.M00] * x + m[Matrix4.M02] * z + m[Matrix4.M03];
+        vertices[idx + 1] = m[Matrix4.M10] * x + m[Matrix4.M12] * z + m[Matrix4.M13];
+        vertices[idx + 2] = m[Matrix4.M20] * x + m[Matrix4.M22] * z + m[Matrix4.M23];
+        vertices[idx + 3] = packedColor;
+        vertexCount++;
+    }
+
+    /**
+     * Draw outlines added since the last call.
+     *
+     * @param camera AR camera
+     */
+    public void render(Camera camera) {
+        this.camera = camera;
+        flush();
+        this.camera = null;
+    }
+
+    /**
+     * Add outlines of every tracked plane of the frame and draw them.
+     *
+     * @param frame current frame
+     * @param camera AR camera
+     */
+    public void render(GdxFrame frame, Camera camera) {
+        this.camera = camera;
+        add(frame);
+        flush();
+        this.camera = null;
+    }
+
+    private void flush() {
+        if (vertexCount == 0) return;
+
+        mesh.setVertices(vertices, 0, vertexCount * VERTEX_SIZE);
+
+        Gdx.gl.glEnable(GL20.GL_DEPTH_TEST);
+        Gdx.gl.glDepthFunc(GL20.GL_LEQUAL);
+        Gdx.gl.glLineWidth(lineWidth);
+        shader.bind();
+        shader.setUniformMatrix("u_projViewTrans", camera.combined);
+        mesh.render(shader, GL20.GL_LINES, 0, vertexCount);
+        Gdx.gl.glLineWidth(1);
+
+        vertexCount = 0;
+    }
+
+    /**
+     * Discard outlines not drawn yet.
+     */
+    public void clear() {
+        vertexCount = 0;
+    }
+
+    @Override
+    public void dispose() {
+        mesh.dispose();
+        ShaderCache.free(shader);
+    }
+}
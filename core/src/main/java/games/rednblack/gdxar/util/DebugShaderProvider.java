@@ -7,6 +7,7 @@ import com.badlogic.gdx.graphics.g3d.utils.BaseShaderProvider;
 
 /**
  * Simple shader provider that gives an extension point to register new shaders.
+ * Shader programs are shared through {@link ShaderCache}.
  *
  * @author claywilkinson
  */
@@ -21,8 +22,7 @@ public class DebugShaderProvider extends BaseShaderProvider {
         if (renderable.material.id.startsWith(PlaneMaterial.MATERIAL_ID_PREFIX)) {
             return PlaneMaterial.getShader(renderable);
         } else {
-            return new DefaultShader(renderable);
+            return new ShaderCache.SharedShader(renderable, new DefaultShader.Config());
         }
     }
 }
-
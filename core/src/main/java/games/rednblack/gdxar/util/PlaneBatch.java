@@ -0,0 +1,278 @@
+package games.rednblack.gdxar.util;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Disposable;
+
+import games.rednblack.gdxar.GdxFrame;
+import games.rednblack.gdxar.GdxPlane;
+import games.rednblack.gdxar.GdxTrackingState;
+
+/**
+ * Render the fade ring of every plane with a single draw call. Vertices are transformed to world space on CPU
+ * and streamed into one dynamic mesh together with grid UVs and plane colors, so the grid shader of
+ * {@link PlaneMaterial} doesn't need per plane uniforms.
+ * <p>
+ * Usage:
+ * <pre>
+ * planeBatch.begin(camera);
+ * planeBatch.draw(frame);
+ * planeBatch.end();
+ * </pre>
+ * If planes don't fit in the mesh the batch is flushed and drawing continues with a new call.
+ *
+ * @author fgnm
+ */
+public class PlaneBatch implements Disposable {
+    /** x, y, z, u, v, alpha, dot color, line color */
+    private static final int VERTEX_SIZE = 8;
+
+    private static final String VERTEX_SHADER_CODE =
+            "uniform mat4 u_projViewTrans;\n"
+                    + "\n"
+                    + "attribute vec3 a_position;\n"
+                    + "attribute vec2 a_texCoord0;\n"
+                    + "attribute float a_alpha;\n"
+                    + "attribute vec4 a_dotColor;\n"
+                    + "attribute vec4 a_lineColor;\n"
+                    + "\n"
+                    + "varying vec3 v_TexCoordAlpha;\n"
+                    + "varying vec4 v_dotColor;\n"
+                    + "varying vec4 v_lineColor;\n"
+                    + "\n"
+                    + "void main() {\n"
+                    + "  v_TexCoordAlpha = vec3(a_texCoord0, a_alpha);\n"
+                    + "  v_dotColor = a_dotColor;\n"
+                    + "  v_lineColor = a_lineColor;\n"
+                    + "  gl_Position = u_projViewTrans * vec4(a_position, 1.0);\n"
+                    + "}";
+
+    private static final String FRAGMENT_SHADER_CODE =
+            "precision highp float;\n"
+                    + "uniform sampler2D u_diffuseTexture;\n"
+                    + "// dotThreshold, lineThreshold, lineFadeShrink, occlusionShrink\n"
+                    + "uniform vec4 u_gridControl;\n"
+                    + "varying vec3 v_TexCoordAlpha;\n"
+                    + "varying vec4 v_dotColor;\n"
+                    + "varying vec4 v_lineColor;\n"
+                    + "\n"
+                    + "void main() {\n"
+                    + "  vec4 control = texture2D(u_diffuseTexture, v_TexCoordAlpha.xy);\n"
+                    + "  float dotScale = v_TexCoordAlpha.z;\n"
+                    + "  float lineFade =\n"
+                    + "    max(0.0, u_gridControl.z * v_TexCoordAlpha.z - (u_gridControl.z - 1.0));\n"
+                    + "  vec3 color = (control.r * dotScale > u_gridControl.x) ? v_dotColor.rgb\n"
+                    + "             : (control.g > u_gridControl.y) ? v_lineColor.rgb * lineFade\n"
+                    + "                                             : (v_lineColor.rgb * 0.25 * lineFade) ;\n"
+                    + "  gl_FragColor = vec4(color, v_TexCoordAlpha.z * u_gridControl.w);\n"
+                    + "}\n";
+
+    private final Mesh mesh;
+    private final ShaderProgram shader;
+    private final float[] vertices;
+    private final short[] indices;
+    private int vertexCount = 0;
+    private int indexCount = 0;
+
+    /** Controls how to draw/fade the grid, same values of {@link PlaneMaterial} */
+    public final Color gridControl = new Color(0.2f, 0.4f, 2.0f, 1.5f);
+
+    /** Number of draw calls of the last batch */
+    public int renderCalls = 0;
+
+    private Camera camera;
+    private boolean drawing = false;
+
+    /** Scratch buffers for the fade ring of a single plane */
+    private float[] ringVertices = new float[PlaneModel.getVertexCount(32) * PlaneModel.COORDS_PER_VERTEX];
+    private short[] ringIndices = new short[PlaneModel.getMaxIndexCount(32)];
+    private final Matrix4 transform = new Matrix4();
+    private final float[] uvMatrix = new float[4];
+
+    public PlaneBatch() {
+        this(8192);
+    }
+
+    /**
+     * @param maxVertices max number of vertices drawn with a single call, at most 32767
+     */
+    public PlaneBatch(int maxVertices) {
+        if (maxVertices > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Can't have more than " + Short.MAX_VALUE + " vertices per batch: " + maxVertices);
+
+        // Triangle list, a fade ring of 2n vertices has at most 3n triangles
+        int maxIndices = maxVertices * 9 / 2;
+        mesh = new Mesh(Mesh.VertexDataType.VertexBufferObjectWithVAO, false, maxVertices, maxIndices,
+                new VertexAttribute(VertexAttributes.Usage.Position, 3, ShaderProgram.POSITION_ATTRIBUTE),
+                new VertexAttribute(VertexAttributes.Usage.TextureCoordinates, 2, ShaderProgram.TEXCOORD_ATTRIBUTE + "0"),
+                new VertexAttribute(VertexAttributes.Usage.Generic, 1, "a_alpha"),
+                new VertexAttribute(VertexAttributes.Usage.ColorPacked, 4, GL20.GL_UNSIGNED_BYTE, true, "a_dotColor"),
+                new VertexAttribute(VertexAttributes.Usage.ColorPacked, 4, GL20.GL_UNSIGNED_BYTE, true, "a_lineColor"));
+        vertices = new float[maxVertices * VERTEX_SIZE];
+        indices = new short[maxIndices];
+
+        shader = ShaderCache.obtain(VERTEX_SHADER_CODE, FRAGMENT_SHADER_CODE, 0);
+    }
+
+    /**
+     * Start a new batch, planes are drawn with the combined matrix of the camera.
+     *
+     * @param camera AR camera
+     */
+    public void begin(Camera camera) {
+        if (drawing) throw new IllegalStateException("PlaneBatch.end must be called before begin.");
+        this.camera = camera;
+        renderCalls = 0;
+        drawing = true;
+    }
+
+    /**
+     * Add every tracked plane of the frame.
+     *
+     * @param frame current frame
+     */
+    public void draw(GdxFrame frame) {
+        for (GdxPlane plane : frame.getPlanes()) {
+            if (plane.trackingState == GdxTrackingState.TRACKING)
+                draw(plane);
+        }
+    }
+
+    /**
+     * Add the fade ring of a plane, the grid color depends on the plane id.
+     *
+     * @param plane tracked plane
+     */
+    public void draw(GdxPlane plane) {
+        draw(plane, (int) plane.id);
+    }
+
+    /**
+     * Add the fade ring of a plane.
+     *
+     * @param plane tracked plane
+     * @param index index used for the grid color and orientation
+     */
+    public void draw(GdxPlane plane, int index) {
+        if (!drawing) throw new IllegalStateException("PlaneBatch.begin must be called before draw.");
+
+        int boundaryVertices = plane.vertices.size / 2;
+        if (boundaryVertices < 2) return;
+
+        int ringVertexCount = PlaneModel.getVertexCount(boundaryVertices);
+        int maxIndexCount = PlaneModel.getMaxIndexCount(boundaryVertices);
+        int maxTriangleIndices = (maxIndexCount - 2) * 3;
+        if (ringVertexCount * VERTEX_SIZE > vertices.length || maxTriangleIndices > indices.length) return;
+
+        if (ringVertices.length < ringVertexCount * PlaneModel.COORDS_PER_VERTEX)
+            ringVertices = new float[ringVertexCount * PlaneModel.COORDS_PER_VERTEX];
+        if (ringIndices.length < maxIndexCount)
+            ringIndices = new short[maxIndexCount];
+
+        PlaneModel.fillVertices(plane.vertices.items, 0, boundaryVertices * 2, plane.extentX, plane.extentZ, ringVertices, 0);
+        int stripCount = PlaneModel.fillIndices(boundaryVertices, ringIndices, 0);
+
+        if ((vertexCount + ringVertexCount) * VERTEX_SIZE > vertices.length || indexCount + (stripCount - 2) * 3 > indices.length)
+            flush();
+
+        plane.gdxPose.getTransform(transform);
+        PlaneMaterial.getPlaneUvMatrix(index, uvMatrix);
+        float dotColor = PlaneMaterial.getDotColor(index).toFloatBits();
+        float lineColor = PlaneMaterial.getLineColor(index).toFloatBits();
+        float[] m = transform.val;
+        float[] vertices = this.vertices;
+
+        int idx = vertexCount * VERTEX_SIZE;
+        for (int i = 0, n = ringVertexCount * PlaneModel.COORDS_PER_VERTEX; i < n; i += PlaneModel.COORDS_PER_VERTEX) {
+            float x = ringVertices[i];
+            float z = ringVertices[i + 1];
+            float worldX = m[Matrix4.M00] * x + m[Matrix4.M02] * z + m[Matrix4.M03];
+            float worldY = m[Matrix4.M10] * x + m[Matrix4.M12] * z + m[Matrix4.M13];
+            float worldZ = m[Matrix4.M20] * x + m[Matrix4.M22] * z + m[Matrix4.M23];
+
+            vertices[idx++] = worldX;
+            vertices[idx++] = worldY;
+            vertices[idx++] = worldZ;
+            vertices[idx++] = uvMatrix[0] * worldX + uvMatrix[2] * worldZ;
+            vertices[idx++] = uvMatrix[1] * worldX + uvMatrix[3] * worldZ;
+            vertices[idx++] = ringVertices[i + 2];
+            vertices[idx++] = dotColor;
+            vertices[idx++] = lineColor;
+        }
+
+        // Unroll the strip into a triangle list so planes can share the same draw call
+        short[] indices = this.indices;
+        int base = vertexCount;
+        for (int i = 0; i < stripCount - 2; i++) {
+            short a = ringIndices[i], b = ringIndices[i + 1], c = ringIndices[i + 2];
+            if (a == b || b == c || a == c) continue;
+            if ((i & 1) == 0) {
+                indices[indexCount++] = (short) (base + a);
+                indices[indexCount++] = (short) (base + b);
+            } else {
+                indices[indexCount++] = (short) (base + b);
+                indices[indexCount++] = (short) (base + a);
+            }
+            indices[indexCount++] = (short) (base + c);
+        }
+        vertexCount += ringVertexCount;
+    }
+
+    /**
+     * Upload and draw pending planes with a single call.
+     */
+    public void flush() {
+        if (indexCount == 0) {
+            vertexCount = 0;
+            return;
+        }
+
+        mesh.setVertices(vertices, 0, vertexCount * VERTEX_SIZE);
+        mesh.setIndices(indices, 0, indexCount);
+
+        Gdx.gl.glEnable(GL20.GL_DEPTH_TEST);
+        Gdx.gl.glDepthFunc(GL20.GL_LEQUAL);
+        Gdx.gl.glDisable(GL20.GL_CULL_FACE);
+        Gdx.gl.glEnable(GL20.GL_BLEND);
+        Gdx.gl.glBlendFunc(GL20.GL_DST_COLOR, GL20.GL_ONE_MINUS_SRC_ALPHA);
+
+        PlaneMaterial.getGridTexture().bind(0);
+        shader.bind();
+        shader.setUniformMatrix("u_projViewTrans", camera.combined);
+        shader.setUniformi("u_diffuseTexture", 0);
+        shader.setUniformf("u_gridControl", gridControl);
+        mesh.render(shader, GL20.GL_TRIANGLES, 0, indexCount);
+
+        Gdx.gl.glDisable(GL20.GL_BLEND);
+        renderCalls++;
+        vertexCount = 0;
+        indexCount = 0;
+    }
+
+    /**
+     * Draw pending planes and end the batch.
+     */
+    public void end() {
+        if (!drawing) throw new IllegalStateException("PlaneBatch.begin must be called before end.");
+        flush();
+        drawing = false;
+        camera = null;
+    }
+
+    public boolean isDrawing() {
+        return drawing;
+    }
+
+    @Override
+    public void dispose() {
+        mesh.dispose();
+        ShaderCache.free(shader);
+    }
+}
@@ -3,7 +3,10 @@ package games.rednblack.gdxar.util;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
 import com.badlogic.gdx.graphics.g3d.Attribute;
 import com.badlogic.gdx.graphics.g3d.Attributes;
 import com.badlogic.gdx.graphics.g3d.Material;
@@ -84,17 +87,13 @@ public class PlaneMaterial extends Material {
     private static Texture gridTexture;
 
     public PlaneMaterial(int index) {
-        if (gridTexture == null) {
-            gridTexture = new Texture("trigrid.png");
-            gridTexture.setWrap(Texture.TextureWrap.Repeat, Texture.TextureWrap.Repeat);
-        }
-        set(TextureAttribute.createDiffuse(gridTexture));
+        set(TextureAttribute.createDiffuse(getGridTexture()));
         id = MATERIAL_ID_PREFIX + index;
         set(new BlendingAttribute(true, GL20.GL_DST_COLOR, GL20.GL_ONE_MINUS_SRC_ALPHA, 1f));
         int colornum = index;
         // Custom shader uniform values.
-        set(PlaneShaderAttributes.createDotColor(COLORS[colornum % COLORS.length]));
-        set(PlaneShaderAttributes.createLineColor(COLORS[(colornum + 1) % COLORS.length]));
+        set(PlaneShaderAttributes.createDotColor(getDotColor(colornum)));
+        set(PlaneShaderAttributes.createLineColor(getLineColor(colornum)));
         set(PlaneShaderAttributes.createIndexAttribute(index));
 
         // Not really a color, but controls how to draw/fade the grid.
@@ -102,25 +101,83 @@ public class PlaneMaterial extends Material {
         set(PlaneShaderAttributes.createGridControl(gridControl));
     }
 
+    static Texture getGridTexture() {
+        if (gridTexture == null) {
+            gridTexture = new Texture("trigrid.png");
+            gridTexture.setWrap(Texture.TextureWrap.Repeat, Texture.TextureWrap.Repeat);
+        }
+        return gridTexture;
+    }
+
+    static Color getDotColor(int index) {
+        return COLORS[(index % COLORS.length + COLORS.length) % COLORS.length];
+    }
+
+    static Color getLineColor(int index) {
+        return getDotColor(index + 1);
+    }
+
+    /**
+     * Matrix used to map world X-Z coordinates to the grid texture, rotated by plane index so overlapping
+     * planes don't show the same pattern.
+     *
+     * @param index plane index
+     * @param out column major 2x2 matrix
+     */
+    static void getPlaneUvMatrix(int index, float[] out) {
+        float uScale = DOTS_PER_METER;
+        float vScale = DOTS_PER_METER * EQUILATERAL_TRIANGLE_SCALE;
+        float angleRadians = index * 0.144f;
+
+        out[0] = +(float) Math.cos(angleRadians) * uScale;
+        out[1] = -(float) Math.sin(angleRadians) * uScale;
+        out[2] = +(float) Math.sin(angleRadians) * vScale;
+        out[3] = +(float) Math.cos(angleRadians) * vScale;
+    }
+
+    /**
+     * Create the plane shader for a renderable, every plane material shares the same compiled program.
+     */
     public static Shader getShader(Renderable renderable) {
+        return new PlaneShader(renderable);
+    }
+
+    /**
+     * Compile the plane shader program ahead of time, so the first detected plane doesn't wait for it.
+     * Call at create time, the program stays in {@link ShaderCache} until disposed.
+     *
+     * @return the warmed up shader, dispose it to release the program
+     */
+    public static Shader warmUp() {
+        Mesh mesh = new Mesh(true, 3, 0, new VertexAttribute(VertexAttributes.Usage.Position, PlaneModel.COORDS_PER_VERTEX, "a_position"));
+        Renderable renderable = new Renderable();
+        renderable.meshPart.set("plane", mesh, 0, 0, GL20.GL_TRIANGLE_STRIP);
+        renderable.material = new PlaneMaterial(0);
+        Shader shader = getShader(renderable);
+        shader.init();
+        mesh.dispose();
+        return shader;
+    }
+
+    /**
+     * Plane grid shader, renders only {@link PlaneMaterial}.
+     */
+    static class PlaneShader extends ShaderCache.SharedShader {
+        PlaneShader(Renderable renderable) {
+            super(renderable, new DefaultShader.Config(VERTEX_SHADER_CODE, FRAGMENT_SHADER_CODE));
+
+            // Register the custom uniform attributes.  These are set up by the renderer at the right time.
+            register(PlaneShaderAttributes.DotColorAlias, PlaneShaderAttributes.DotUniformSetter);
+            register(PlaneShaderAttributes.LineColorAlias, PlaneShaderAttributes.LineUniformSetter);
+            register(PlaneShaderAttributes.GridControlAlias, PlaneShaderAttributes.GridControlUniformSetter);
+            register(PlaneShaderAttributes.PlaneUvMatrixAlias, PlaneShaderAttributes.PlaneUvMatrixUniformSetter);
+            register(PlaneShaderAttributes.IndexAlias, PlaneShaderAttributes.PlaneUvMatrixUniformSetter);
+        }
 
-        DefaultShader planeShader;
-        DefaultShader.Config config = new DefaultShader.Config(VERTEX_SHADER_CODE, FRAGMENT_SHADER_CODE);
-
-        // Register the custom uniform attributes.  These are set up by the renderer at the right time.
-        planeShader = new DefaultShader(renderable, config);
-        planeShader.register(
-                PlaneShaderAttributes.DotColorAlias, PlaneShaderAttributes.DotUniformSetter);
-        planeShader.register(
-                PlaneShaderAttributes.LineColorAlias, PlaneShaderAttributes.LineUniformSetter);
-        planeShader.register(
-                PlaneShaderAttributes.GridControlAlias, PlaneShaderAttributes.GridControlUniformSetter);
-        planeShader.register(
-                PlaneShaderAttributes.PlaneUvMatrixAlias, PlaneShaderAttributes.PlaneUvMatrixUniformSetter);
-        planeShader.register(
-                PlaneShaderAttributes.IndexAlias, PlaneShaderAttributes.PlaneUvMatrixUniformSetter);
-
-        return planeShader;
+        @Override
+        public boolean canRender(Renderable renderable) {
+            return renderable.material.id.startsWith(MATERIAL_ID_PREFIX) && super.canRender(renderable);
+        }
     }
 
     /**
@@ -222,15 +279,8 @@ public class PlaneMaterial extends Material {
                             Renderable renderable,
                             Attributes combinedAttributes) {
                         float vec[] = new float[4];
-                        float uScale = DOTS_PER_METER;
-                        float vScale = DOTS_PER_METER * EQUILATERAL_TRIANGLE_SCALE;
                         int index = (int) ((PlaneShaderAttributes) combinedAttributes.get(IndexType)).color.r;
-                        float angleRadians = index * 0.144f;
-
-                        vec[0] = +(float) Math.cos(angleRadians) * uScale;
-                        vec[1] = -(float) Math.sin(angleRadians) * uScale;
-                        vec[2] = +(float) Math.sin(angleRadians) * vScale;
-                        vec[3] = +(float) Math.cos(angleRadians) * vScale;
+                        getPlaneUvMatrix(index, vec);
 
                         Gdx.gl.glUniformMatrix2fv(shader.loc(inputID), 1, false, vec, 0);
                     }
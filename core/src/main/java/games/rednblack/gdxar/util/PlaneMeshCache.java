@@ -0,0 +1,209 @@
+package games.rednblack.gdxar.util;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.RenderableProvider;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.Pool;
+
+import games.rednblack.gdxar.GdxFrame;
+import games.rednblack.gdxar.GdxPlane;
+import games.rednblack.gdxar.GdxTrackingState;
+
+/**
+ * Keep one dynamic {@link Mesh} for each tracked plane, the fade ring geometry of {@link PlaneModel} is
+ * regenerated in place only when the plane polygon or extents change. Meshes grow when a polygon doesn't fit
+ * anymore and are released when planes stop tracking.
+ * <p>
+ * The cache is a {@link RenderableProvider}, planes can be drawn with {@link PlaneMaterial} using a
+ * {@link com.badlogic.gdx.graphics.g3d.ModelBatch} and {@link DebugShaderProvider}.
+ *
+ * @author fgnm
+ */
+public class PlaneMeshCache implements RenderableProvider, Disposable {
+    private static final int INITIAL_BOUNDARY_VERTICES = 32;
+    /** Meshes of stopped planes kept for reuse, the others are disposed */
+    private static final int MAX_FREE_MESHES = 8;
+
+    private final LongMap<Entry> entries = new LongMap<>();
+    private final Array<Entry> freeEntries = new Array<>(false, 8, Entry.class);
+    private long updateId = 0;
+
+    /** Scratch buffers shared by every mesh regeneration */
+    private float[] vertices = new float[PlaneModel.getVertexCount(INITIAL_BOUNDARY_VERTICES) * PlaneModel.COORDS_PER_VERTEX];
+    private short[] indices = new short[PlaneModel.getMaxIndexCount(INITIAL_BOUNDARY_VERTICES)];
+
+    /**
+     * Update meshes of every plane in the frame, meshes of planes not tracked anymore are released.
+     *
+     * @param frame current frame
+     */
+    public void update(GdxFrame frame) {
+        updateId++;
+        for (GdxPlane plane : frame.getPlanes()) {
+            if (plane.trackingState == GdxTrackingState.TRACKING)
+                update(plane);
+        }
+
+        LongMap.Entries<Entry> iterator = entries.entries();
+        while (iterator.hasNext()) {
+            LongMap.Entry<Entry> entry = iterator.next();
+            if (entry.value.updateId != updateId) {
+                free(entry.value);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Update the mesh of a single plane, geometry is regenerated only if the polygon or the extents changed.
+     *
+     * @param plane tracked plane
+     * @return the mesh of the plane or null if the plane has no polygon
+     */
+    public Mesh update(GdxPlane plane) {
+        Entry entry = entries.get(plane.id);
+        if (entry == null) {
+            entry = freeEntries.size > 0 ? freeEntries.pop() : new Entry();
+            entry.material = null;
+            entry.geometryVersion = -1;
+            entries.put(plane.id, entry);
+        }
+        entry.updateId = updateId;
+        plane.gdxPose.getTransform(entry.transform);
+
+        if (entry.geometryVersion == plane.geometryVersion && entry.extentX == plane.extentX && entry.extentZ == plane.extentZ)
+            return entry.indexCount > 0 ? entry.mesh : null;
+
+        entry.geometryVersion = plane.geometryVersion;
+        entry.extentX = plane.extentX;
+        entry.extentZ = plane.extentZ;
+
+        int boundaryVertices = plane.vertices.size / 2;
+        if (boundaryVertices < 2) {
+            entry.indexCount = 0;
+            return null;
+        }
+
+        int vertexCount = PlaneModel.getVertexCount(boundaryVertices);
+        int maxIndexCount = PlaneModel.getMaxIndexCount(boundaryVertices);
+        if (vertices.length < vertexCount * PlaneModel.COORDS_PER_VERTEX)
+            vertices = new float[vertexCount * PlaneModel.COORDS_PER_VERTEX];
+        if (indices.length < maxIndexCount)
+            indices = new short[maxIndexCount];
+
+        int floatCount = PlaneModel.fillVertices(plane.vertices.items, 0, boundaryVertices * 2, plane.extentX, plane.extentZ, vertices, 0);
+        int indexCount = PlaneModel.fillIndices(boundaryVertices, indices, 0);
+
+        if (entry.mesh == null || entry.mesh.getMaxVertices() < vertexCount || entry.mesh.getMaxIndices() < indexCount) {
+            if (entry.mesh != null)
+                entry.mesh.dispose();
+            int capacity = MathUtils.nextPowerOfTwo(Math.max(boundaryVertices, INITIAL_BOUNDARY_VERTICES));
+            entry.mesh = new Mesh(false, PlaneModel.getVertexCount(capacity), PlaneModel.getMaxIndexCount(capacity),
+                    new VertexAttribute(VertexAttributes.Usage.Position, PlaneModel.COORDS_PER_VERTEX, "a_position"));
+        }
+        entry.mesh.setVertices(vertices, 0, floatCount);
+        entry.mesh.setIndices(indices, 0, indexCount);
+        entry.indexCount = indexCount;
+        return entry.mesh;
+    }
+
+    /**
+     * Get the cached mesh of a plane.
+     *
+     * @param id stable id of the plane
+     * @return the mesh or null if the plane is not cached
+     */
+    public Mesh get(long id) {
+        Entry entry = entries.get(id);
+        return entry != null && entry.indexCount > 0 ? entry.mesh : null;
+    }
+
+    /**
+     * Number of indices of the triangle strip of a plane.
+     *
+     * @param id stable id of the plane
+     * @return indices to draw or 0 if the plane has no mesh
+     */
+    public int getIndexCount(long id) {
+        Entry entry = entries.get(id);
+        return entry != null ? entry.indexCount : 0;
+    }
+
+    /**
+     * Release the mesh of a plane, a few meshes are kept for reuse by new planes.
+     *
+     * @param id stable id of the plane
+     */
+    public void release(long id) {
+        Entry entry = entries.remove(id);
+        if (entry != null)
+            free(entry);
+    }
+
+    private void free(Entry entry) {
+        if (freeEntries.size < MAX_FREE_MESHES)
+            freeEntries.add(entry);
+        else
+            entry.dispose();
+    }
+
+    public int size() {
+        return entries.size;
+    }
+
+    @Override
+    public void getRenderables(Array<Renderable> renderables, Pool<Renderable> pool) {
+        for (LongMap.Entry<Entry> mapEntry : entries) {
+            Entry entry = mapEntry.value;
+            if (entry.indexCount == 0) continue;
+
+            if (entry.material == null)
+                entry.material = new PlaneMaterial((int) mapEntry.key);
+
+            Renderable renderable = pool.obtain();
+            renderable.meshPart.set("plane", entry.mesh, 0, entry.indexCount, GL20.GL_TRIANGLE_STRIP);
+            renderable.material = entry.material;
+            renderable.worldTransform.set(entry.transform);
+            renderable.environment = null;
+            renderable.bones = null;
+            renderable.shader = null;
+            renderable.userData = null;
+            renderables.add(renderable);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        for (Entry entry : entries.values())
+            entry.dispose();
+        entries.clear();
+        for (Entry entry : freeEntries)
+            entry.dispose();
+        freeEntries.clear();
+    }
+
+    private static class Entry implements Disposable {
+        Mesh mesh;
+        PlaneMaterial material;
+        final Matrix4 transform = new Matrix4();
+        long geometryVersion = -1;
+        float extentX, extentZ;
+        int indexCount;
+        long updateId;
+
+        @Override
+        public void dispose() {
+            if (mesh != null)
+                mesh.dispose();
+            mesh = null;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package games.rednblack.gdxar.util;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.util.Arrays;
+
+import games.rednblack.gdxar.GdxFrame;
+import games.rednblack.gdxar.GdxPlane;
+import games.rednblack.gdxar.GdxPlaneType;
+import games.rednblack.gdxar.GdxTrackingState;
+
+/**
+ * Write tracked planes into the depth buffer with color writes disabled, so walls and tables hide virtual
+ * content behind them on devices without depth support. Must be drawn after the camera background and before
+ * virtual models.
+ * <p>
+ * Each plane polygon is triangulated as a fan around its center and cached in world space, it's regenerated
+ * only when the plane geometry or pose change. Cached triangles are merged into a single mesh, uploaded only
+ * when some plane changed, and drawn with one call.
+ *
+ * @author fgnm
+ */
+public class PlaneOcclusionRenderer implements Disposable {
+    /** x, y, z */
+    private static final int VERTEX_SIZE = 3;
+
+    private static final String VERTEX_SHADER_CODE =
+            "uniform mat4 u_projViewTrans;\n"
+                    + "attribute vec3 a_position;\n"
+                    + "\n"
+                    + "void main() {\n"
+                    + "  gl_Position = u_projViewTrans * vec4(a_position, 1.0);\n"
+                    + "}";
+
+    private static final String FRAGMENT_SHADER_CODE =
+            "#ifdef GL_ES\n"
+                    + "precision lowp float;\n"
+                    + "#endif\n"
+                    + "\n"
+                    + "void main() {\n"
+                    + "  gl_FragColor = vec4(0.0);\n"
+                    + "}\n";
+
+    /** Write upward facing planes, like tables and floors */
+    public boolean horizontalPlanes = true;
+
+    /** Write vertical planes, like walls */
+    public boolean verticalPlanes = true;
+
+    /** Push planes slightly back, content resting on a plane doesn't flicker */
+    public float polygonOffsetFactor = 1f, polygonOffsetUnits = 4f;
+
+    /** Number of draw calls of the last render */
+    public int renderCalls = 0;
+
+    private final Mesh mesh;
+    private final ShaderProgram shader;
+    private final float[] vertices;
+    private final short[] indices;
+    private int vertexCount = 0;
+    private int indexCount = 0;
+    /** Indices uploaded by the last flush */
+    private int meshIndexCount = 0;
+    private Camera camera;
+
+    private final LongMap<Entry> entries = new LongMap<>();
+    private final Array<Entry> freeEntries = new Array<>(false, 8, Entry.class);
+    private long updateId = 0;
+    /** Planes changed since the mesh was uploaded */
+    private boolean dirty = true;
+    /** Merged mesh holds every plane, it can be drawn again without upload */
+    private boolean meshValid = false;
+
+    private final Matrix4 transform = new Matrix4();
+    private final float[] rectangle = new float[8];
+
+    public PlaneOcclusionRenderer() {
+        this(8192);
+    }
+
+    /**
+     * @param maxVertices max number of vertices drawn with a single call, at most 32767
+     */
+    public PlaneOcclusionRenderer(int maxVertices) {
+        if (maxVertices > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Can't have more than " + Short.MAX_VALUE + " vertices per batch: " + maxVertices);
+
+        // Triangle fan of n + 1 vertices has n triangles
+        int maxIndices = maxVertices * 3;
+        mesh = new Mesh(Mesh.VertexDataType.VertexBufferObjectWithVAO, false, maxVertices, maxIndices,
+                new VertexAttribute(VertexAttributes.Usage.Position, 3, ShaderProgram.POSITION_ATTRIBUTE));
+        vertices = new float[maxVertices * VERTEX_SIZE];
+        indices = new short[maxIndices];
+
+        shader = ShaderCache.obtain(VERTEX_SHADER_CODE, FRAGMENT_SHADER_CODE, 0);
+    }
+
+    /**
+     * Update cached planes of the frame and write them into the depth buffer.
+     *
+     * @param frame current frame
+     * @param camera AR camera
+     */
+    public void render(GdxFrame frame, Camera camera) {
+        update(frame);
+        render(camera);
+    }
+
+    /**
+     * Update the cached triangles of every plane in the frame, planes not tracked anymore are released.
+     *
+     * @param frame current frame
+     */
+    public void update(GdxFrame frame) {
+        updateId++;
+        for (GdxPlane plane : frame.getPlanes()) {
+            if (plane.trackingState == GdxTrackingState.TRACKING && accept(plane.type))
+                update(plane);
+        }
+
+        LongMap.Entries<Entry> iterator = entries.entries();
+        while (iterator.hasNext()) {
+            LongMap.Entry<Entry> entry = iterator.next();
+            if (entry.value.updateId != updateId) {
+                freeEntries.add(entry.value);
+                iterator.remove();
+                dirty = true;
+            }
+        }
+    }
+
+    private boolean accept(GdxPlaneType type) {
+        switch (type) {
+            case HORIZONTAL_UPWARD_FACING:
+                return horizontalPlanes;
+            case VERTICAL:
+                return verticalPlanes;
+            default:
+                return false;
+        }
+    }
+
+    private void update(GdxPlane plane) {
+        Entry entry = entries.get(plane.id);
+        if (entry == null) {
+            entry = freeEntries.size > 0 ? freeEntries.pop() : new Entry();
+            entry.geometryVersion = -1;
+            entries.put(plane.id, entry);
+            dirty = true;
+        }
+        entry.updateId = updateId;
+
+        plane.gdxPose.getTransform(transform);
+        if (entry.geometryVersion == plane.geometryVersion && entry.extentX == plane.extentX
+                && entry.extentZ == plane.extentZ && Arrays.equals(entry.transform, transform.val))
+            return;
+
+        entry.geometryVersion = plane.geometryVersion;
+        entry.extentX = plane.extentX;
+        entry.extentZ = plane.extentZ;
+        System.arraycopy(transform.val, 0, entry.transform, 0, 16);
+        dirty = true;
+
+        float[] polygon = plane.vertices.items;
+        int count = plane.vertices.size / 2;
+        if (count < 3) {
+            if (plane.extentX <= 0 || plane.extentZ <= 0) {
+                entry.vertexCount = 0;
+                return;
+            }
+            float x = plane.extentX / 2f, z = plane.extentZ / 2f;
+            rectangle[0] = -x; rectangle[1] = -z;
+            rectangle[2] = x; rectangle[3] = -z;
+            rectangle[4] = x; rectangle[5] = z;
+            rectangle[6] = -x; rectangle[7] = z;
+            polygon = rectangle;
+            count = 4;
+        }
+
+        // Center first, then the boundary
+        entry.vertexCount = count + 1;
+        if (entry.vertices.length < entry.vertexCount * VERTEX_SIZE)
+            entry.vertices = new float[entry.vertexCount * VERTEX_SIZE];
+
+        float centerX = 0, centerZ = 0;
+        for (int i = 0; i < count; i++) {
+            centerX += polygon[i * 2];
+            centerZ += polygon[i * 2 + 1];
+        }
+        float[] m = transform.val;
+        setVertex(entry.vertices, 0, m, centerX / count, centerZ / count);
+        for (int i = 0; i < count; i++)
+            setVertex(entry.vertices, (i + 1) * VERTEX_SIZE, m, polygon[i * 2], polygon[i * 2 + 1]);
+    }
+
+    private void setVertex(float[] out, int idx, float[] m, float x, float z) {
+        out[idx] = m[Matrix4.M00] * x + m[Matrix4.M02] * z + m[Matrix4.M03];
+        out[idx + 1] = m[Matrix4.M10] * x + m[Matrix4.M12] * z + m[Matrix4.M13];
+        out[idx + 2] = m[Matrix4.M20] * x + m[Matrix4.M22] * z + m[Matrix4.M23];
+    }
+
+    /**
+     * Write cached planes into the depth buffer, the color buffer is not touched.
+     *
+     * @param camera AR camera
+     */
+    public void render(Camera camera) {
+        this.camera = camera;
+        renderCalls = 0;
+
+        Gdx.gl.glEnable(GL20.GL_DEPTH_TEST);
+        Gdx.gl.glDepthFunc(GL20.GL_LEQUAL);
+        Gdx.gl.glDepthMask(true);
+        Gdx.gl.glDisable(GL20.GL_CULL_FACE);
+        Gdx.gl.glColorMask(false, false, false, false);
+        Gdx.gl.glEnable(GL20.GL_POLYGON_OFFSET_FILL);
+        Gdx.gl.glPolygonOffset(polygonOffsetFactor, polygonOffsetUnits);
+
+        if (!dirty && meshValid) {
+            // Nothing changed, draw the mesh uploaded by the last render
+            draw();
+        } else {
+            meshValid = true;
+            for (Entry entry : entries.values()) {
+                if (entry.vertexCount == 0) continue;
+                if (entry.vertexCount > mesh.getMaxVertices()) continue;
+                if (vertexCount + entry.vertexCount > mesh.getMaxVertices()) {
+                    // Mesh is full, the merged mesh can't be reused by next renders
+                    flush();
+                    meshValid = false;
+                }
+                add(entry);
+            }
+            flush();
+            dirty = false;
+        }
+
+        Gdx.gl.glDisable(GL20.GL_POLYGON_OFFSET_FILL);
+        Gdx.gl.glColorMask(true, true, true, true);
+        this.camera = null;
+    }
+
+    private void add(Entry entry) {
+        System.arraycopy(entry.vertices, 0, vertices, vertexCount * VERTEX_SIZE, entry.vertexCount * VERTEX_SIZE);
+
+        short[] indices = this.indices;
+        int center = vertexCount, boundary = entry.vertexCount - 1;
+        for (int i = 0; i < boundary; i++) {
+            indices[indexCount++] = (short) center;
+            indices[indexCount++] = (short) (center + 1 + i);
+            indices[indexCount++] = (short) (center + 1 + (i + 1) % boundary);
+        }
+        vertexCount += entry.vertexCount;
+    }
+
+    private void flush() {
+        meshIndexCount = indexCount;
+        if (indexCount > 0) {
+            mesh.setVertices(vertices, 0, vertexCount * VERTEX_SIZE);
+            mesh.setIndices(indices, 0, indexCount);
+            draw();
+        }
+
+        vertexCount = 0;
+        indexCount = 0;
+    }
+
+    private void draw() {
+        if (meshIndexCount == 0) return;
+
+        shader.bind();
+        shader.setUniformMatrix("u_projViewTrans", camera.combined);
+        mesh.render(shader, GL20.GL_TRIANGLES, 0, meshIndexCount);
+        renderCalls++;
+    }
+
+    /**
+     * Release every cached plane.
+     */
+    public void clear() {
+        freeEntries.addAll(entries.values().toArray());
+        entries.clear();
+        dirty = true;
+    }
+
+    public int size() {
+        return entries.size;
+    }
+
+    @Override
+    public void dispose() {
+        mesh.dispose();
+        ShaderCache.free(shader);
+    }
+
+    private static class Entry {
+        float[] vertices = new float[33 * VERTEX_SIZE];
+        int vertexCount;
+        final float[] transform = new float[16];
+        long geometryVersion = -1;
+        float extentX, extentZ;
+        long updateId;
+    }
+}
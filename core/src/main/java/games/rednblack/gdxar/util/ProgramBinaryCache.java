@@ -0,0 +1,230 @@
+package games.rednblack.gdxar.util;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.BufferUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Store linked shader program binaries on disk and reload them on later launches, so shaders don't need to be
+ * compiled again at startup. Binaries are keyed by the GL driver (vendor, renderer and version strings) and by
+ * a hash of the program sources, a driver update invalidates them automatically.
+ * <p>
+ * Program binaries need GL ES 3.0, backends that support them register a {@link Backend} with
+ * {@link #setBackend(Backend, FileHandle)}. Without a backend, or if a binary is rejected by the driver,
+ * programs are compiled from source.
+ *
+ * @author fgnm
+ */
+public class ProgramBinaryCache {
+    private static final int MAGIC = 0x47415242; // GARB
+    private static final int HEADER_SIZE = 4 + 8 + 4 + 4;
+
+    /**
+     * Access to the GL ES 3.0 program binary API, not exposed by libGDX.
+     */
+    public interface Backend {
+        /**
+         * @return true if the current GL context can save and load program binaries
+         */
+        boolean isSupported();
+
+        /**
+         * Ask the driver to keep the binary of a program, called before link.
+         *
+         * @param program GL program handle
+         */
+        void setRetrievable(int program);
+
+        /**
+         * Read the binary of a linked program.
+         *
+         * @param program GL program handle
+         * @param format output, binary format in the first element
+         * @return the binary or null if not available
+         */
+        ByteBuffer getBinary(int program, int[] format);
+
+        /**
+         * Load a binary into a program, link status tells if the driver accepted it.
+         *
+         * @param program GL program handle
+         * @param format binary format
+         * @param binary program binary
+         */
+        void loadBinary(int program, int format, ByteBuffer binary);
+    }
+
+    private static Backend backend;
+    private static FileHandle directory;
+    private static String driver;
+
+    /** Number of programs loaded from binary */
+    public static int hits = 0;
+    /** Number of programs compiled from source */
+    public static int misses = 0;
+
+    /**
+     * Enable the binary cache, must be called from the GL thread.
+     *
+     * @param backend program binary API, null to disable the cache
+     * @param directory folder where binaries are stored
+     */
+    public static synchronized void setBackend(Backend backend, FileHandle directory) {
+        if (backend != null && !backend.isSupported())
+            backend = null;
+        ProgramBinaryCache.backend = backend;
+        ProgramBinaryCache.directory = directory;
+        driver = backend != null ? Gdx.gl.glGetString(GL20.GL_VENDOR) + "|" + Gdx.gl.glGetString(GL20.GL_RENDERER)
+                + "|" + Gdx.gl.glGetString(GL20.GL_VERSION) : null;
+    }
+
+    public static synchronized boolean isEnabled() {
+        return backend != null;
+    }
+
+    /**
+     * Create a program, loaded from the binary cache if possible or compiled from source.
+     *
+     * @param vertexShader vertex shader source
+     * @param fragmentShader fragment shader source
+     * @return the program, check {@link ShaderProgram#isCompiled()} as usual
+     */
+    public static synchronized ShaderProgram compile(String vertexShader, String fragmentShader) {
+        if (backend == null) {
+            misses++;
+            return new ShaderProgram(vertexShader, fragmentShader);
+        }
+
+        String sources = ShaderProgram.prependVertexCode + vertexShader + "\n" + ShaderProgram.prependFragmentCode + fragmentShader;
+        long key = hash(0xcbf29ce484222325L, driver, sources);
+        long check = hash(0x84222325cbf29ce4L, sources, driver);
+        FileHandle file = directory.child(Long.toHexString(key) + ".bin");
+
+        if (file.exists()) {
+            ShaderProgram program = load(file, check, vertexShader, fragmentShader);
+            if (program != null) {
+                hits++;
+                return program;
+            }
+            file.delete();
+        }
+
+        misses++;
+        ShaderProgram program = create(vertexShader, fragmentShader, null, 0);
+        if (program.isCompiled())
+            save(file, check, program);
+        return program;
+    }
+
+    /**
+     * Delete every stored binary.
+     */
+    public static synchronized void clear() {
+        if (directory != null && directory.exists())
+            directory.deleteDirectory();
+    }
+
+    private static ShaderProgram load(FileHandle file, long check, String vertexShader, String fragmentShader) {
+        ByteBuffer data;
+        try {
+            data = ByteBuffer.wrap(file.readBytes());
+        } catch (Exception e) {
+            return null;
+        }
+        if (data.remaining() < HEADER_SIZE || data.getInt() != MAGIC || data.getLong() != check) return null;
+        int format = data.getInt();
+        int length = data.getInt();
+        if (length <= 0 || length != data.remaining()) return null;
+
+        ByteBuffer binary = BufferUtils.newByteBuffer(length);
+        binary.put(data);
+        binary.flip();
+
+        ShaderProgram program = create(vertexShader, fragmentShader, binary, format);
+        if (program.isCompiled()) return program;
+        program.dispose();
+        return null;
+    }
+
+    private static void save(FileHandle file, long check, ShaderProgram program) {
+        int[] format = new int[1];
+        ByteBuffer binary = backend.getBinary(program.getHandle(), format);
+        if (binary == null || binary.remaining() == 0) return;
+
+        byte[] data = new byte[HEADER_SIZE + binary.remaining()];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.putInt(MAGIC);
+        buffer.putLong(check);
+        buffer.putInt(format[0]);
+        buffer.putInt(binary.remaining());
+        buffer.put(binary);
+        try {
+            file.writeBytes(data, false);
+        } catch (Exception e) {
+            Gdx.app.error("ProgramBinaryCache", "Unable to store program binary", e);
+        }
+    }
+
+    /**
+     * Build a {@link ShaderProgram} while GL calls are intercepted: with a binary, compilation is skipped and
+     * link loads the binary instead, otherwise the program is marked as retrievable before link.
+     */
+    private static ShaderProgram create(String vertexShader, String fragmentShader, final ByteBuffer binary, final int format) {
+        final GL20 gl = Gdx.gl20;
+        GL20 interceptor = (GL20) Proxy.newProxyInstance(GL20.class.getClassLoader(), new Class<?>[]{GL20.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (binary != null) {
+                    if (name.equals("glShaderSource") || name.equals("glCompileShader") || name.equals("glAttachShader"))
+                        return null;
+                    if (name.equals("glGetShaderiv") && (Integer) args[1] == GL20.GL_COMPILE_STATUS) {
+                        ((IntBuffer) args[2]).put(0, GL20.GL_TRUE);
+                        return null;
+                    }
+                    if (name.equals("glLinkProgram")) {
+                        backend.loadBinary((Integer) args[0], format, binary);
+                        return null;
+                    }
+                } else if (name.equals("glLinkProgram")) {
+                    backend.setRetrievable((Integer) args[0]);
+                }
+
+                try {
+                    return method.invoke(gl, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        });
+
+        Gdx.gl20 = interceptor;
+        try {
+            return new ShaderProgram(vertexShader, fragmentShader);
+        } finally {
+            Gdx.gl20 = gl;
+        }
+    }
+
+    private static long hash(long hash, String first, String second) {
+        hash = hash(hash, first);
+        return hash(hash, second);
+    }
+
+    private static long hash(long hash, String value) {
+        for (int i = 0, n = value.length(); i < n; i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,124 @@
+package games.rednblack.gdxar.util;
+
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.shaders.DefaultShader;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/**
+ * Share compiled shader programs, keyed by program source and attribute mask. Programs are reference
+ * counted and disposed when the last user frees them.
+ *
+ * @author fgnm
+ */
+public class ShaderCache {
+    private static final ObjectMap<String, Entry> programs = new ObjectMap<>();
+    private static final ObjectMap<ShaderProgram, Entry> entries = new ObjectMap<>();
+
+    /**
+     * Get a compiled program, the program is compiled only if not already in cache.
+     *
+     * @param vertexShader full vertex shader source
+     * @param fragmentShader full fragment shader source
+     * @param attributesMask mask of the attributes used to generate the sources
+     * @return shared program, must be released with {@link #free(ShaderProgram)}
+     */
+    public static synchronized ShaderProgram obtain(String vertexShader, String fragmentShader, long attributesMask) {
+        String key = attributesMask + "\n" + vertexShader + "\n" + fragmentShader;
+        Entry entry = programs.get(key);
+        if (entry == null) {
+            ShaderProgram program = ProgramBinaryCache.compile(vertexShader, fragmentShader);
+            if (!program.isCompiled()) {
+                String log = program.getLog();
+                program.dispose();
+                throw new GdxRuntimeException("Error compiling shader: " + log);
+            }
+            entry = new Entry(key, program);
+            programs.put(key, entry);
+            entries.put(program, entry);
+        }
+        entry.references++;
+        return entry.program;
+    }
+
+    /**
+     * Get the program of a {@link DefaultShader} for a renderable, sources are prefixed like
+     * {@link DefaultShader} does.
+     *
+     * @param renderable renderable used to generate the prefix
+     * @param config shader config, default sources are used if not set
+     * @return shared program, must be released with {@link #free(ShaderProgram)}
+     */
+    public static ShaderProgram obtain(Renderable renderable, DefaultShader.Config config) {
+        String prefix = DefaultShader.createPrefix(renderable, config);
+        String vertexShader = config.vertexShader != null ? config.vertexShader : DefaultShader.getDefaultVertexShader();
+        String fragmentShader = config.fragmentShader != null ? config.fragmentShader : DefaultShader.getDefaultFragmentShader();
+        return obtain(prefix + vertexShader, prefix + fragmentShader, getAttributesMask(renderable));
+    }
+
+    /**
+     * Release a program, it's disposed when no longer used.
+     *
+     * @param program program returned by obtain
+     */
+    public static synchronized void free(ShaderProgram program) {
+        Entry entry = entries.get(program);
+        if (entry == null) return;
+        if (--entry.references <= 0) {
+            programs.remove(entry.key);
+            entries.remove(program);
+            program.dispose();
+        }
+    }
+
+    /**
+     * Mask of material and environment attributes of a renderable, vertex attributes are already part of
+     * the {@link DefaultShader} prefix.
+     */
+    public static long getAttributesMask(Renderable renderable) {
+        long mask = renderable.material != null ? renderable.material.getMask() : 0;
+        if (renderable.environment != null)
+            mask |= renderable.environment.getMask();
+        return mask;
+    }
+
+    public static synchronized int size() {
+        return programs.size;
+    }
+
+    /**
+     * Dispose every cached program, even if still in use.
+     */
+    public static synchronized void clear() {
+        for (Entry entry : programs.values())
+            entry.program.dispose();
+        programs.clear();
+        entries.clear();
+    }
+
+    /**
+     * {@link DefaultShader} using a program from the cache, the program is released on dispose.
+     */
+    public static class SharedShader extends DefaultShader {
+        public SharedShader(Renderable renderable, Config config) {
+            super(renderable, config, ShaderCache.obtain(renderable, config));
+        }
+
+        @Override
+        public void dispose() {
+            free(program);
+        }
+    }
+
+    private static class Entry {
+        final String key;
+        final ShaderProgram program;
+        int references;
+
+        Entry(String key, ShaderProgram program) {
+            this.key = key;
+            this.program = program;
+        }
+    }
+}
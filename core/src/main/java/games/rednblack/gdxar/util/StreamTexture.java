@@ -3,7 +3,10 @@ package games.rednblack.gdxar.util;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.GL30;
+import com.badlogic.gdx.utils.BufferUtils;
 import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.Null;
+import com.badlogic.gdx.utils.TimeUtils;
 
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
@@ -11,28 +14,94 @@ import java.nio.ByteBuffer;
 /**
  * Implementation of a Streaming texture from CPU buffer to OpenGL Texture, supports async streaming with
  * Pixel Buffer Objects (only for OpenGL ES 3.0+)
+ * <p>
+ * Uploads go through a ring of PBOs, each one guarded by a fence: a PBO is written again only after the GPU
+ * finished the copy that used it, so it can be mapped unsynchronized without orphaning or reallocating its
+ * storage. Fences need a {@link SyncBackend}, registered with {@link #setSyncBackend(SyncBackend)}; without it
+ * PBOs are mapped with invalidation and the driver takes care of synchronization. If mapping fails the texture
+ * falls back to plain glTexSubImage2D.
+ * <p>
+ * Texture and PBO storage are reallocated when the image size changes. Regions can be updated alone with
+ * {@link #update(ByteBuffer, int, int, int, int, int)}, source rows can be padded with a row stride.
  *
  * @author fgnm
  */
 public class StreamTexture implements Disposable {
     private static final String TAG = "StreamTexture";
 
-    private boolean textureCreated = false;
-    private final int[] pboIds = new int[2];
+    /**
+     * Access to the GL ES 3.0 sync objects API, not exposed by libGDX.
+     */
+    public interface SyncBackend {
+        /**
+         * Insert a fence signaled when the GPU completes the previous commands.
+         *
+         * @return sync object handle, 0 on error
+         */
+        long glFenceSync();
+
+        /**
+         * Block until a fence is signaled or the timeout expires, pending commands are flushed.
+         *
+         * @param sync sync object handle
+         * @param timeout timeout in nanoseconds
+         * @return GL_ALREADY_SIGNALED, GL_CONDITION_SATISFIED, GL_TIMEOUT_EXPIRED or GL_WAIT_FAILED
+         */
+        int glClientWaitSync(long sync, long timeout);
+
+        /**
+         * @param sync sync object handle
+         */
+        void glDeleteSync(long sync);
+    }
+
+    /** Sync statuses, not defined by {@link GL30} */
+    public static final int GL_ALREADY_SIGNALED = 0x911A;
+    public static final int GL_CONDITION_SATISFIED = 0x911C;
+
+    private static SyncBackend syncBackend;
+
+    /** Max time in nanoseconds an upload waits for its PBO, then it's mapped synchronized */
+    public long fenceTimeout = 5000000;
+
+    private int width = 0, height = 0;
+    private final int bytesPerPixel;
+    /** Tightly packed copy of padded rows, when GL_UNPACK_ROW_LENGTH is not available */
+    private ByteBuffer packBuffer;
+    private final int[] pboIds;
+    private final int[] pboSizes;
+    private final long[] fences;
     private int pboIndex = 0;
 
-    private final boolean pboSupported;
+    private boolean pboSupported;
     private final int glFormat;
     private final int glTarget;
     private final int glHandle;
 
+    /** Upload statistics, see {@link #resetStats()} */
+    private int uploadCount = 0, waitCount = 0, timeoutCount = 0;
+    private long waitTime = 0, maxWaitTime = 0;
+
     public StreamTexture(int format) {
         this(GL20.GL_TEXTURE_2D, format);
     }
 
     public StreamTexture(int target, int format) {
+        this(target, format, 3);
+    }
+
+    /**
+     * @param target texture target
+     * @param format texture format
+     * @param ringSize number of PBOs used in turn, more PBOs let the GPU fall behind longer before uploads wait
+     */
+    public StreamTexture(int target, int format, int ringSize) {
+        if (ringSize < 1)
+            throw new IllegalArgumentException("Ring size must be at least 1: " + ringSize);
+
         glFormat = format;
         glTarget = target;
+        bytesPerPixel = getBytesPerPixel(format);
         pboSupported = isPBOSupported();
         glHandle = Gdx.gl.glGenTexture();
 
@@ -44,10 +113,20 @@ public class StreamTexture implements Disposable {
 
         Gdx.gl.glBindTexture(glTarget, 0);
 
-        if (pboSupported) {
-            pboIds[0] = Gdx.gl.glGenBuffer();
-            pboIds[1] = Gdx.gl.glGenBuffer();
-        }
+        pboIds = new int[pboSupported ? ringSize : 0];
+        pboSizes = new int[pboIds.length];
+        fences = new long[pboIds.length];
+        for (int i = 0; i < pboIds.length; i++)
+            pboIds[i] = Gdx.gl.glGenBuffer();
+    }
+
+    /**
+     * Enable fences for every stream texture, must be called from the GL thread.
+     *
+     * @param backend sync objects API, null to disable fences
+     */
+    public static void setSyncBackend(@Null SyncBackend backend) {
+        syncBackend = backend;
     }
 
     public void bind() {
@@ -59,85 +138,300 @@ public class StreamTexture implements Disposable {
         Gdx.gl.glBindTexture(glTarget, glHandle);
     }
 
+    /**
+     * Upload a whole image of tightly packed rows, storage is reallocated if the size changed.
+     *
+     * @param dataBuffer pixels from the buffer position
+     * @param width image width in pixels
+     * @param height image height in pixels
+     */
     public void update(ByteBuffer dataBuffer, int width, int height) {
-        int size = dataBuffer.limit();
+        update(dataBuffer, width, height, width * bytesPerPixel);
+    }
+
+    /**
+     * Upload a whole image, storage is reallocated if the size changed.
+     *
+     * @param dataBuffer pixels from the buffer position
+     * @param width image width in pixels
+     * @param height image height in pixels
+     * @param rowStride distance between rows in bytes
+     */
+    public void update(ByteBuffer dataBuffer, int width, int height, int rowStride) {
+        if (width != this.width || height != this.height) {
+            checkBuffer(dataBuffer, width, height, rowStride);
+            allocate(dataBuffer, width, height, rowStride);
+        } else {
+            update(dataBuffer, 0, 0, width, height, rowStride);
+        }
+    }
+
+    /**
+     * Upload a region of the texture, the rest is left untouched. Storage must be allocated with a whole image
+     * update or with {@link #resize(int, int)}.
+     *
+     * @param dataBuffer pixels of the region from the buffer position
+     * @param x region left in pixels
+     * @param y region top in pixels
+     * @param width region width in pixels
+     * @param height region height in pixels
+     * @param rowStride distance between rows in bytes, multiple of the pixel size
+     */
+    public void update(ByteBuffer dataBuffer, int x, int y, int width, int height, int rowStride) {
+        if (this.width == 0)
+            throw new IllegalStateException("StreamTexture storage must be allocated before updating a region.");
+        if (x < 0 || y < 0 || x + width > this.width || y + height > this.height)
+            throw new IllegalArgumentException("Region " + x + ", " + y + ", " + width + "x" + height + " outside of texture " + this.width + "x" + this.height);
+        if (width == 0 || height == 0) return;
+        checkBuffer(dataBuffer, width, height, rowStride);
 
         //Bind the exture
         Gdx.gl.glBindTexture(glTarget, glHandle);
-        if (!textureCreated) {
-            //Create texture and allocate buffer for the first time with correct dimensions
-            textureCreated = true;
-            Gdx.gl.glTexImage2D(glTarget, 0, glFormat, width, height, 0, glFormat, GL20.GL_UNSIGNED_BYTE, dataBuffer);
-            if (pboSupported) {
-                // glBufferData() with NULL pointer reserves only memory space.
-                Gdx.gl.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, pboIds[0]);
-                Gdx.gl.glBufferData(GL30.GL_PIXEL_UNPACK_BUFFER, size, null, GL30.GL_STREAM_DRAW);
-                Gdx.gl.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, pboIds[1]);
-                Gdx.gl.glBufferData(GL30.GL_PIXEL_UNPACK_BUFFER, size, null, GL30.GL_STREAM_DRAW);
-                Gdx.gl.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, 0);
-            }
-        } else {
-            //Stream buffer data to the texture
-            if (pboSupported) {
-                // "pboIndex" is used to copy pixels from a PBO to a texture object
-                // "nextPboIndex" is used to update pixels in a PBO
-                pboIndex = (pboIndex + 1) % 2;
-                int nextPboIndex = (pboIndex + 1) % 2;
-
-                // bind the PBO
-                Gdx.gl.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, pboIds[pboIndex]);
-                // copy pixels from PBO to texture object. Use offset instead of ponter.
-                Gdx.gl.glTexSubImage2D(glTarget, 0, 0, 0, width, height, glFormat, GL20.GL_UNSIGNED_BYTE, null);
-
-                // bind PBO to update pixel values
-                Gdx.gl.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, pboIds[nextPboIndex]);
-                // map the buffer object into client's memory
-                // Note that glMapBuffer() causes sync issue.
-                // If GPU is working with this buffer, glMapBuffer() will wait(stall)
-                // for GPU to finish its job. To avoid waiting (stall), you can call
-                // first glBufferData() with NULL pointer before glMapBuffer().
-                // If you do that, the previous data in PBO will be discarded and
-                // glMapBuffer() returns a new allocated pointer immediately
-                // even if GPU is still working with the previous data.
-                Gdx.gl.glBufferData(GL30.GL_PIXEL_UNPACK_BUFFER, size, null, GL30.GL_STREAM_DRAW);
-
-                // update data directly on the mapped buffer
-                Buffer bb = Gdx.gl30.glMapBufferRange(GL30.GL_PIXEL_UNPACK_BUFFER, 0, size, GL30.GL_MAP_WRITE_BIT);
-                if (bb != null) {
-                    ByteBuffer b = (ByteBuffer) bb;
-                    b.put(dataBuffer);
-                    // release pointer to mapping buffer
-                    Gdx.gl30.glUnmapBuffer(GL30.GL_PIXEL_UNPACK_BUFFER);
-                } else {
-                    Gdx.app.log(TAG, String.valueOf(Gdx.gl.glGetError()));
-                }
-
-                // it is good idea to release PBOs with ID 0 after use.
-                // Once bound with 0, all pixel operations behave normal ways.
-                Gdx.gl.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, 0);
-            } else {
-                //If PBO are not supported fall back to glTexSubImage2D
-                Gdx.gl.glTexSubImage2D(glTarget, 0, 0, 0, width, height, glFormat, GL20.GL_UNSIGNED_BYTE, dataBuffer);
-            }
+        Gdx.gl.glPixelStorei(GL20.GL_UNPACK_ALIGNMENT, 1);
+        if (!pboSupported || !updatePBO(dataBuffer, x, y, width, height, rowStride)) {
+            //If PBO are not supported fall back to glTexSubImage2D
+            ByteBuffer pixels = setRowLength(dataBuffer, width, height, rowStride);
+            Gdx.gl.glTexSubImage2D(glTarget, 0, x, y, width, height, glFormat, GL20.GL_UNSIGNED_BYTE, pixels);
+            setRowLength(null, width, height, width * bytesPerPixel);
         }
+        Gdx.gl.glPixelStorei(GL20.GL_UNPACK_ALIGNMENT, 4);
+        uploadCount++;
+
+        Gdx.gl.glBindTexture(glTarget, 0);
+    }
 
+    /**
+     * Reallocate the texture storage, content is undefined until updated.
+     *
+     * @param width texture width in pixels
+     * @param height texture height in pixels
+     */
+    public void resize(int width, int height) {
+        allocate(null, width, height, width * bytesPerPixel);
+    }
+
+    private void allocate(@Null ByteBuffer dataBuffer, int width, int height, int rowStride) {
+        this.width = width;
+        this.height = height;
+        // PBOs are allocated again with the new size at their next use
+        for (int i = 0; i < pboSizes.length; i++)
+            pboSizes[i] = 0;
+
+        Gdx.gl.glBindTexture(glTarget, glHandle);
+        Gdx.gl.glPixelStorei(GL20.GL_UNPACK_ALIGNMENT, 1);
+        ByteBuffer pixels = setRowLength(dataBuffer, width, height, rowStride);
+        Gdx.gl.glTexImage2D(glTarget, 0, glFormat, width, height, 0, glFormat, GL20.GL_UNSIGNED_BYTE, pixels);
+        setRowLength(null, width, height, width * bytesPerPixel);
+        Gdx.gl.glPixelStorei(GL20.GL_UNPACK_ALIGNMENT, 4);
+        if (dataBuffer != null)
+            uploadCount++;
         Gdx.gl.glBindTexture(glTarget, 0);
     }
 
+    /**
+     * Tell GL how source rows are laid out. Without GL_UNPACK_ROW_LENGTH padded rows are packed into a copy.
+     *
+     * @return the buffer to upload
+     */
+    private ByteBuffer setRowLength(@Null ByteBuffer dataBuffer, int width, int height, int rowStride) {
+        int rowSize = width * bytesPerPixel;
+        if (Gdx.gl30 != null) {
+            Gdx.gl.glPixelStorei(GL30.GL_UNPACK_ROW_LENGTH, rowStride == rowSize ? 0 : rowStride / bytesPerPixel);
+            return dataBuffer;
+        }
+        if (dataBuffer == null || rowStride == rowSize) return dataBuffer;
+
+        if (packBuffer == null || packBuffer.capacity() < rowSize * height)
+            packBuffer = BufferUtils.newByteBuffer(rowSize * height);
+        packBuffer.clear();
+        int position = dataBuffer.position(), limit = dataBuffer.limit();
+        for (int row = 0; row < height; row++) {
+            dataBuffer.limit(position + row * rowStride + rowSize);
+            dataBuffer.position(position + row * rowStride);
+            packBuffer.put(dataBuffer);
+        }
+        dataBuffer.limit(limit);
+        dataBuffer.position(position);
+        packBuffer.flip();
+        return packBuffer;
+    }
+
+    private void checkBuffer(ByteBuffer dataBuffer, int width, int height, int rowStride) {
+        if (rowStride < width * bytesPerPixel || rowStride % bytesPerPixel != 0)
+            throw new IllegalArgumentException("Invalid row stride " + rowStride + " for width " + width);
+        if (height > 0 && dataBuffer.remaining() < getDataSize(width, height, rowStride))
+            throw new IllegalArgumentException("Buffer too small for " + width + "x" + height + " pixels: " + dataBuffer.remaining());
+    }
+
+    /**
+     * @return bytes read from the source, the last row has no padding
+     */
+    private int getDataSize(int width, int height, int rowStride) {
+        return rowStride * (height - 1) + width * bytesPerPixel;
+    }
+
+    private boolean updatePBO(ByteBuffer dataBuffer, int x, int y, int width, int height, int rowStride) {
+        int size = getDataSize(width, height, rowStride);
+        int index = pboIndex;
+        pboIndex = (pboIndex + 1) % pboIds.length;
+
+        // Wait until the GPU is done with the previous copy from this PBO
+        boolean synced = waitFence(index);
+
+        Gdx.gl.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, pboIds[index]);
+        if (pboSizes[index] < size) {
+            // Storage is kept across updates, it's allocated again only if the image size changes or a
+            // larger region comes in
+            int capacity = Math.max(size, getDataSize(this.width, this.height, this.width * bytesPerPixel));
+            Gdx.gl.glBufferData(GL30.GL_PIXEL_UNPACK_BUFFER, capacity, null, GL30.GL_STREAM_DRAW);
+            pboSizes[index] = capacity;
+        }
+
+        int access = GL30.GL_MAP_WRITE_BIT | GL30.GL_MAP_INVALIDATE_BUFFER_BIT;
+        if (synced)
+            access |= GL30.GL_MAP_UNSYNCHRONIZED_BIT;
+        Buffer mapped = Gdx.gl30.glMapBufferRange(GL30.GL_PIXEL_UNPACK_BUFFER, 0, size, access);
+        if (mapped == null) {
+            Gdx.app.error(TAG, "Can't map pixel buffer, error " + Gdx.gl.glGetError() + ", PBO streaming disabled");
+            Gdx.gl.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, 0);
+            disposePBO();
+            pboSupported = false;
+            return false;
+        }
+
+        int position = dataBuffer.position(), limit = dataBuffer.limit();
+        dataBuffer.limit(position + size);
+        ((ByteBuffer) mapped).put(dataBuffer);
+        dataBuffer.limit(limit);
+        dataBuffer.position(position);
+        Gdx.gl30.glUnmapBuffer(GL30.GL_PIXEL_UNPACK_BUFFER);
+
+        // Copy from the PBO, offset instead of pointer
+        setRowLength(null, width, height, rowStride);
+        Gdx.gl.glTexSubImage2D(glTarget, 0, x, y, width, height, glFormat, GL20.GL_UNSIGNED_BYTE, null);
+        setRowLength(null, width, height, width * bytesPerPixel);
+        if (syncBackend != null)
+            fences[index] = syncBackend.glFenceSync();
+
+        // Once bound with 0, all pixel operations behave normal ways.
+        Gdx.gl.glBindBuffer(GL30.GL_PIXEL_UNPACK_BUFFER, 0);
+        return true;
+    }
+
+    /**
+     * @return true if the PBO is free and can be mapped unsynchronized
+     */
+    private boolean waitFence(int index) {
+        long fence = fences[index];
+        if (fence == 0) return syncBackend != null && pboSizes[index] == 0;
+        fences[index] = 0;
+
+        SyncBackend backend = syncBackend;
+        if (backend == null) return false;
+
+        int status = backend.glClientWaitSync(fence, 0);
+        if (status == GL30.GL_TIMEOUT_EXPIRED) {
+            long start = TimeUtils.nanoTime();
+            status = backend.glClientWaitSync(fence, fenceTimeout);
+            long time = TimeUtils.nanoTime() - start;
+            waitCount++;
+            waitTime += time;
+            maxWaitTime = Math.max(maxWaitTime, time);
+            if (status == GL30.GL_TIMEOUT_EXPIRED)
+                timeoutCount++;
+        }
+        backend.glDeleteSync(fence);
+        return status == GL_ALREADY_SIGNALED || status == GL_CONDITION_SATISFIED;
+    }
+
+    private static int getBytesPerPixel(int format) {
+        switch (format) {
+            case GL20.GL_LUMINANCE_ALPHA:
+            case GL30.GL_RG:
+                return 2;
+            case GL20.GL_RGB:
+                return 3;
+            case GL20.GL_RGBA:
+                return 4;
+            default:
+                return 1;
+        }
+    }
+
     public boolean isPBOSupported() {
         return Gdx.gl30 != null;
     }
 
+    /**
+     * @return number of uploads since the last {@link #resetStats()}
+     */
+    public int getUploadCount() {
+        return uploadCount;
+    }
+
+    /**
+     * @return number of uploads that had to wait for the GPU to release their PBO, a large value means the ring
+     * is too small
+     */
+    public int getWaitCount() {
+        return waitCount;
+    }
+
+    /**
+     * @return number of waits that expired after {@link #fenceTimeout}
+     */
+    public int getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * @return total time spent waiting for PBOs in nanoseconds
+     */
+    public long getWaitTime() {
+        return waitTime;
+    }
+
+    /**
+     * @return longest wait for a PBO in nanoseconds
+     */
+    public long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    public void resetStats() {
+        uploadCount = 0;
+        waitCount = 0;
+        timeoutCount = 0;
+        waitTime = 0;
+        maxWaitTime = 0;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
     public int getHandle() {
         return glHandle;
     }
 
+    private void disposePBO() {
+        for (int i = 0; i < pboIds.length; i++) {
+            if (fences[i] != 0 && syncBackend != null)
+                syncBackend.glDeleteSync(fences[i]);
+            fences[i] = 0;
+            if (pboIds[i] != 0)
+                Gdx.gl.glDeleteBuffer(pboIds[i]);
+            pboIds[i] = 0;
+        }
+    }
+
     @Override
     public void dispose() {
         Gdx.gl.glDeleteTexture(glHandle);
-        if (pboSupported) {
-            Gdx.gl.glDeleteBuffer(pboIds[0]);
-            Gdx.gl.glDeleteBuffer(pboIds[1]);
-        }
+        disposePBO();
     }
 }
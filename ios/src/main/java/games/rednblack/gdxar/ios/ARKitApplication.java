@@ -3,23 +3,16 @@ package games.rednblack.gdxar.ios;
 import com.badlogic.gdx.ApplicationListener;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.backends.iosrobovm.IOSApplication;
-import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
-import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.graphics.PerspectiveCamera;
-import com.badlogic.gdx.graphics.g3d.Material;
-import com.badlogic.gdx.graphics.g3d.ModelBatch;
-import com.badlogic.gdx.graphics.g3d.ModelInstance;
-import com.badlogic.gdx.graphics.g3d.model.MeshPart;
-import com.badlogic.gdx.graphics.g3d.model.Node;
-import com.badlogic.gdx.graphics.g3d.model.NodePart;
-import com.badlogic.gdx.graphics.g3d.utils.MeshPartBuilder;
-import com.badlogic.gdx.graphics.g3d.utils.ModelBuilder;
-import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.graphics.g3d.Shader;
 import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.BufferUtils;
 import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.Null;
+import com.badlogic.gdx.utils.ObjectIntMap;
 import com.badlogic.gdx.utils.Pools;
 
 import org.robovm.apple.arkit.*;
@@ -37,7 +30,6 @@ import org.robovm.apple.foundation.NSData;
 import org.robovm.apple.foundation.NSError;
 import org.robovm.apple.foundation.NSMutableSet;
 import org.robovm.apple.foundation.NSSet;
-import org.robovm.apple.foundation.VectorFloat3;
 import org.robovm.apple.imageio.CGImagePropertyOrientation;
 import org.robovm.apple.uikit.UIInterfaceOrientation;
 import org.robovm.apple.uikit.UIView;
@@ -51,12 +43,25 @@ import java.nio.channels.Channels;
 import games.rednblack.gdxar.GdxAR;
 import games.rednblack.gdxar.GdxARConfiguration;
 import games.rednblack.gdxar.GdxAnchor;
+import games.rednblack.gdxar.GdxAugmentedImage;
 import games.rednblack.gdxar.GdxArApplicationListener;
 import games.rednblack.gdxar.GdxFrame;
+import games.rednblack.gdxar.GdxFrameExchange;
 import games.rednblack.gdxar.GdxLightEstimationMode;
+import games.rednblack.gdxar.GdxOcclusionMode;
 import games.rednblack.gdxar.GdxPlaneType;
 import games.rednblack.gdxar.GdxPose;
-import games.rednblack.gdxar.util.DebugShaderProvider;
+import games.rednblack.gdxar.HitTestQueue;
+import games.rednblack.gdxar.HitTestRequest;
+import games.rednblack.gdxar.PlaneGraph;
+import games.rednblack.gdxar.PlaneGrid;
+import games.rednblack.gdxar.PlaneRaycaster;
+import games.rednblack.gdxar.PoseFilter;
+import games.rednblack.gdxar.PosePredictor;
+import games.rednblack.gdxar.TrackableRegistry;
+import games.rednblack.gdxar.util.DebugPlaneRenderer;
+import games.rednblack.gdxar.util.PlaneMaterial;
+import games.rednblack.gdxar.util.PlaneOcclusionRenderer;
 import games.rednblack.gdxar.util.RawAugmentedImageAsset;
 
 /**
@@ -74,6 +79,12 @@ public class ARKitApplication implements ApplicationListener, GdxAR, ARSessionDe
     protected IOSApplication iosApplication;
 
     protected final GdxFrame frameInstance;
+    protected final GdxFrameExchange frameExchange;
+    protected final PosePredictor posePredictor = new PosePredictor();
+    protected final PlaneRaycaster planeRaycaster = new PlaneRaycaster();
+    protected final PlaneGrid planeGrid = new PlaneGrid();
+    protected final HitTestQueue hitTestQueue = new HitTestQueue();
+    protected final PoseFilter poseFilter;
 
     protected boolean hasSurface = false;
     protected boolean renderAR = false;
@@ -82,18 +93,31 @@ public class ARKitApplication implements ApplicationListener, GdxAR, ARSessionDe
     private PerspectiveCamera arCamera;
 
     private ARSession session;
+    // CPU camera image of the current frame, acquired on demand.
+    private CameraImageSource cameraImageSource;
     private ARWorldTrackingConfiguration sessionConfig;
     private ARCoachingOverlayView coachingOverlay = null;
 
     private BackgroundRenderer backgroundRenderer;
-    private ModelBatch debugModelBatch;
+    private DebugPlaneRenderer debugPlaneRenderer;
+    private PlaneOcclusionRenderer planeOcclusionRenderer;
+    /** Keeps the plane shader program compiled when warm up is enabled */
+    private Shader planeShader;
 
     private final CGPoint hitPoint = new CGPoint();
+    private final GdxPose hitPose = new GdxPose();
+
+    /** Frame used to resolve queued hit tests */
+    private ARFrame hitTestFrame;
+    private final HitTestQueue.Resolver hitTestResolver = new HitTestQueue.Resolver() {
+        @Override
+        public boolean resolve(HitTestRequest request) {
+            return resolveHitTest(request);
+        }
+    };
 
-    private final Array<ModelInstance> planeInstances = new Array<>();
-    private final IntMap<ModelInstance> polygonsCache = new IntMap<>();
-    private final ModelBuilder builder = new ModelBuilder();
-    private final float[] tmpVerts = new float[14];
+    /** ARKit reference images have no index, keep the one assigned when the database was built */
+    private final ObjectIntMap<String> augmentedImageIndices = new ObjectIntMap<>();
 
     public ARKitApplication(GdxArApplicationListener gdxArApplicationListener, GdxARConfiguration gdxARConfiguration) {
         this.gdxArApplicationListener = gdxArApplicationListener;
@@ -101,6 +125,9 @@ public class ARKitApplication implements ApplicationListener, GdxAR, ARSessionDe
         this.gdxARConfiguration = new GdxARConfiguration(gdxARConfiguration);
 
         frameInstance = new GdxFrame();
+        frameInstance.setDeltaMode(this.gdxARConfiguration.enableDeltaFrame);
+        frameExchange = new GdxFrameExchange(frameInstance.getTrackableRegistry());
+        poseFilter = new PoseFilter(this.gdxARConfiguration);
     }
 
     public void setIosApplication(IOSApplication iosApplication) {
@@ -109,7 +136,12 @@ public class ARKitApplication implements ApplicationListener, GdxAR, ARSessionDe
 
     @Override
     public void create() {
-        debugModelBatch = new ModelBatch(new DebugShaderProvider());
+        debugPlaneRenderer = new DebugPlaneRenderer();
+        // Depth is not supported yet, planes are used by every occlusion mode
+        if (gdxARConfiguration.occlusionMode != GdxOcclusionMode.DISABLED)
+            planeOcclusionRenderer = new PlaneOcclusionRenderer();
+        if (gdxARConfiguration.enablePlaneShaderWarmUp)
+            planeShader = PlaneMaterial.warmUp();
         String version = Gdx.graphics.getGL20().glGetString(GL20.GL_SHADING_LANGUAGE_VERSION);
         System.out.println("Shaders version " + version);
 
@@ -124,6 +156,7 @@ public class ARKitApplication implements ApplicationListener, GdxAR, ARSessionDe
 
         session = new ARSession();
         session.setDelegate(this);
+        cameraImageSource = new CameraImageSource(session);
         sessionConfig = new ARWorldTrackingConfiguration();
 
         if (iosApplication != null) {
@@ -197,17 +230,42 @@ public class ARKitApplication implements ApplicationListener, GdxAR, ARSessionDe
 
             backgroundRenderer.render();
 
-            if (gdxARConfiguration.debugMode) {
-                Gdx.gl.glLineWidth(10);
-                debugModelBatch.begin(arCamera);
-                debugModelBatch.render(planeInstances);
-                debugModelBatch.end();
-                Gdx.gl.glLineWidth(1);
+            GdxFrame gdxFrame = frameExchange.acquire();
+            if (gdxFrame != null) {
+                gdxFrame.applyCamera(arCamera);
+                gdxFrame.setCameraSource(cameraImageSource);
+                planeRaycaster.update(gdxFrame);
+                if (gdxARConfiguration.enablePlaneGrid)
+                    planeGrid.update(gdxFrame);
+                if (hitTestQueue.size() > 0) {
+                    hitTestFrame = session.getCurrentFrame();
+                    if (hitTestFrame != null) {
+                        hitTestQueue.resolve(hitTestResolver);
+                        hitTestFrame.dispose();
+                        hitTestFrame = null;
+                    }
+                }
+                if (gdxARConfiguration.enablePosePrediction) {
+                    posePredictor.update(gdxFrame);
+                    posePredictor.predictCamera(posePredictor.getDisplayTime(), arCamera);
+                }
+
+                if (planeOcclusionRenderer != null)
+                    planeOcclusionRenderer.render(gdxFrame, arCamera);
+
+                if (gdxARConfiguration.debugMode) {
+                    debugPlaneRenderer.render(gdxFrame, arCamera);
+                }
+
+                gdxArApplicationListener.renderARModels(gdxFrame);
             }
 
-            gdxArApplicationListener.renderARModels(frameInstance);
-
             gdxArApplicationListener.arPipelineEnd();
+            // Images still referenced by the application stay alive until released
+            if (gdxFrame != null)
+                gdxFrame.setCameraSource(null);
+        } else {
+            hitTestQueue.cancelAll();
         }
 
         gdxArApplicationListener.render();
@@ -235,24 +293,18 @@ public class ARKitApplication implements ApplicationListener, GdxAR, ARSessionDe
     @Override
     public void dispose() {
         backgroundRenderer.dispose();
+        debugPlaneRenderer.dispose();
+        if (planeOcclusionRenderer != null)
+            planeOcclusionRenderer.dispose();
+        if (planeShader != null)
+            planeShader.dispose();
         gdxArApplicationListener.dispose();
     }
 
     @Override
     public GdxAnchor requestHitPlaneAnchor(float x, float y, GdxPlaneType planeType) {
         if (!renderAR) return null;
-        ARRaycastTargetAlignment alignment;
-        switch (planeType) {
-            case HORIZONTAL_DOWNWARD_FACING:
-            case HORIZONTAL_UPWARD_FACING:
-                alignment = ARRaycastTargetAlignment.Horizontal;
-                break;
-            case VERTICAL:
-                alignment = ARRaycastTargetAlignment.Vertical;
-                break;
-            default:
-                alignment = ARRaycastTargetAlignment.Any;
-        }
+        ARRaycastTargetAlignment alignment = getAlignment(planeType);
 
         hitPoint.setY(1f - x / Gdx.graphics.getWidth());
         hitPoint.setX(y / Gdx.graphics.getHeight());
@@ -275,7 +327,7 @@ public class ARKitApplication implements ApplicationListener, GdxAR, ARSessionDe
         MatrixFloat4x4 worldTransform = hitTestResult.getWorldTransform();
         ARAnchor anchor = new ARAnchor(worldTransform);
         session.addAnchor(anchor);
-        GdxAnchor gdxAnchor = ARKitToGdxAR.createGdxAnchor(anchor);
+        GdxAnchor gdxAnchor = ARKitToGdxAR.createGdxAnchor(anchor, frameInstance.getTrackableRegistry());
         hitTestResult.dispose();
         anchor.dispose();
         raycastQuery.dispose();
@@ -291,18 +343,7 @@ public class ARKitApplication implements ApplicationListener, GdxAR, ARSessionDe
     @Override
     public GdxPose requestHitPlanePose(float x, float y, GdxPlaneType planeType) {
         if (!renderAR) return null;
-        ARRaycastTargetAlignment alignment;
-        switch (planeType) {
-            case HORIZONTAL_DOWNWARD_FACING:
-            case HORIZONTAL_UPWARD_FACING:
-                alignment = ARRaycastTargetAlignment.Horizontal;
-                break;
-            case VERTICAL:
-                alignment = ARRaycastTargetAlignment.Vertical;
-                break;
-            default:
-                alignment = ARRaycastTargetAlignment.Any;
-        }
+        ARRaycastTargetAlignment alignment = getAlignment(planeType);
 
         hitPoint.setY(1f - x / Gdx.graphics.getWidth());
         hitPoint.setX(y / Gdx.graphics.getHeight());
@@ -330,6 +371,111 @@ public class ARKitApplication implements ApplicationListener, GdxAR, ARSessionDe
         return gdxPose;
     }
 
+    @Override
+    public int requestHitPlanePoses(float[] screenPoints, int count, GdxPlaneType planeType, float[] positions, float[] rotations,
+                                    @Null GdxPlaneType[] planeTypes, boolean[] hits) {
+        if (!renderAR) {
+            for (int i = 0; i < count; i++)
+                hits[i] = false;
+            return 0;
+        }
+
+        ARFrame currentFrame = session.getCurrentFrame();
+        if (currentFrame == null)
+            return planeRaycaster.raycast(screenPoints, count, planeType, positions, rotations, planeTypes, hits);
+
+        ARRaycastTargetAlignment alignment = getAlignment(planeType);
+        int hitCount = 0;
+        for (int i = 0; i < count; i++) {
+            hits[i] = false;
+            ARRaycastResult hitTestResult = raycast(currentFrame, screenPoints[i * 2], screenPoints[i * 2 + 1], alignment);
+            if (hitTestResult == null) continue;
+
+            ARKitToGdxAR.map(hitTestResult.getWorldTransform(), hitPose);
+            Vector3 position = hitPose.getPosition();
+            Quaternion rotation = hitPose.getRotation();
+            positions[i * 3] = position.x;
+            positions[i * 3 + 1] = position.y;
+            positions[i * 3 + 2] = position.z;
+            rotations[i * 4] = rotation.x;
+            rotations[i * 4 + 1] = rotation.y;
+            rotations[i * 4 + 2] = rotation.z;
+            rotations[i * 4 + 3] = rotation.w;
+            if (planeTypes != null)
+                planeTypes[i] = getPlaneType(hitTestResult, planeType);
+            hits[i] = true;
+            hitCount++;
+            hitTestResult.dispose();
+        }
+        currentFrame.dispose();
+        return hitCount;
+    }
+
+    @Override
+    public HitTestRequest queueHitPlanePose(float x, float y, GdxPlaneType planeType, @Null HitTestRequest.Callback callback) {
+        return hitTestQueue.enqueue(x, y, planeType, false, callback);
+    }
+
+    @Override
+    public HitTestRequest queueHitPlaneAnchor(float x, float y, GdxPlaneType planeType, @Null HitTestRequest.Callback callback) {
+        return hitTestQueue.enqueue(x, y, planeType, true, callback);
+    }
+
+    private boolean resolveHitTest(HitTestRequest request) {
+        ARRaycastResult hitTestResult = raycast(hitTestFrame, request.x, request.y, getAlignment(request.planeType));
+        if (hitTestResult == null) return false;
+
+        MatrixFloat4x4 worldTransform = hitTestResult.getWorldTransform();
+        ARKitToGdxAR.map(worldTransform, request.pose);
+        request.hitPlaneType = getPlaneType(hitTestResult, request.planeType);
+        if (request.createAnchor) {
+            ARAnchor anchor = new ARAnchor(worldTransform);
+            session.addAnchor(anchor);
+            request.anchor = ARKitToGdxAR.createGdxAnchor(anchor, frameInstance.getTrackableRegistry());
+            anchor.dispose();
+        }
+        hitTestResult.dispose();
+        return true;
+    }
+
+    /**
+     * Raycast against existing planes, the result must be disposed.
+     */
+    @Null
+    private ARRaycastResult raycast(ARFrame frame, float x, float y, ARRaycastTargetAlignment alignment) {
+        hitPoint.setY(1f - x / Gdx.graphics.getWidth());
+        hitPoint.setX(y / Gdx.graphics.getHeight());
+        ARRaycastQuery raycastQuery = frame
+                .raycastQueryFromPoint(hitPoint, ARRaycastTarget.ExistingPlaneGeometry, alignment);
+        if (raycastQuery == null) return null;
+
+        NSArray<ARRaycastResult> results = session.raycast(raycastQuery);
+        ARRaycastResult hitTestResult = results.size() > 0 ? results.last() : null;
+        raycastQuery.dispose();
+        return hitTestResult;
+    }
+
+    private GdxPlaneType getPlaneType(ARRaycastResult hitTestResult, GdxPlaneType planeType) {
+        ARAnchor anchor = hitTestResult.getAnchor();
+        if (anchor == null) return planeType;
+        if (anchor instanceof ARPlaneAnchor)
+            planeType = ARKitToGdxAR.map(anchor.as(ARPlaneAnchor.class).getAlignment());
+        anchor.dispose();
+        return planeType;
+    }
+
+    private ARRaycastTargetAlignment getAlignment(GdxPlaneType planeType) {
+        switch (planeType) {
+            case HORIZONTAL_DOWNWARD_FACING:
+            case HORIZONTAL_UPWARD_FACING:
+                return ARRaycastTargetAlignment.Horizontal;
+            case VERTICAL:
+                return ARRaycastTargetAlignment.Vertical;
+            default:
+                return ARRaycastTargetAlignment.Any;
+        }
+    }
+
     @Override
     public void setAutofocus(boolean autofocus) {
         if (sessionConfig.isAutoFocusEnabled() == autofocus) return;
@@ -342,6 +488,26 @@ public class ARKitApplication implements ApplicationListener, GdxAR, ARSessionDe
         return arCamera;
     }
 
+    @Override
+    public PosePredictor getPosePredictor() {
+        return posePredictor;
+    }
+
+    @Override
+    public PlaneRaycaster getPlaneRaycaster() {
+        return planeRaycaster;
+    }
+
+    @Override
+    public PlaneGrid getPlaneGrid() {
+        return planeGrid;
+    }
+
+    @Override
+    public PlaneGraph getPlaneGraph() {
+        return frameInstance.getTrackableRegistry().getPlaneGraph();
+    }
+
     @Override
     public void setRenderAR(boolean renderAR) {
         if (this.renderAR == renderAR) return;
@@ -383,6 +549,7 @@ public class ARKitApplication implements ApplicationListener, GdxAR, ARSessionDe
     @Override
     public IntMap<String> buildAugmentedImageDatabase(Array<RawAugmentedImageAsset> images) {
         IntMap<String> map = new IntMap<>();
+        augmentedImageIndices.clear();
         int index = 0;
         NSSet<ARReferenceImage> detectionImages = new NSMutableSet<>();
         for (RawAugmentedImageAsset image : images) {
@@ -394,6 +561,7 @@ public class ARKitApplication implements ApplicationListener, GdxAR, ARSessionDe
             arReferenceImage.setName(image.name);
             detectionImages.add(arReferenceImage);
             map.put(index, image.name);
+            augmentedImageIndices.put(image.name, index);
             index++;
             data.dispose();
             cgDataProvider.dispose();
@@ -426,31 +594,35 @@ public class ARKitApplication implements ApplicationListener, GdxAR, ARSessionDe
         MatrixFloat4x4 projectionMatrix = camera
                 .getProjectionMatrix(currentOrientation,
                         backgroundRenderer.getViewportSize(), arCamera.near, arCamera.far);
-        ARKitToGdxAR.map(projectionMatrix, arCamera.projection);
+        ARKitToGdxAR.map(projectionMatrix, frameInstance.cameraProjection);
 
         MatrixFloat4x4 viewMatrix = camera.viewMatrixForOrientation(currentOrientation);
-        ARKitToGdxAR.map(viewMatrix, arCamera.view);
+        ARKitToGdxAR.map(viewMatrix, frameInstance.cameraView);
         camera.dispose();
 
-        arCamera.combined.set(arCamera.projection);
-        Matrix4.mul(arCamera.combined.val, arCamera.view.val);
-
-        frameInstance.reset();
-        planeInstances.clear();
-        NSArray<ARAnchor> anchors = frame.getAnchors();
-        for (ARAnchor anchor : anchors) {
-            if (anchor instanceof ARPlaneAnchor) {
-                ARPlaneAnchor plane = anchor.as(ARPlaneAnchor.class);
-                if (gdxARConfiguration.debugMode)
-                    addPlane(plane);
-                frameInstance.addPlane(ARKitToGdxAR.createGdxPlane(plane, enableSurfaceGeometry));
-            } else if (anchor instanceof ARImageAnchor) {
-                ARImageAnchor image = anchor.as(ARImageAnchor.class);
-                frameInstance.addAugmentedImage(ARKitToGdxAR.createGdxAugmentedImage(image));
-            } else {
-                frameInstance.addAnchor(ARKitToGdxAR.createGdxAnchor(anchor));
+        frameInstance.timestamp = (long) (frame.getTimestamp() * 1e9);
+
+        boolean deltaMode = frameInstance.isDeltaMode();
+        // In delta mode trackables are updated by anchors callbacks
+        if (!deltaMode) {
+            frameInstance.beginUpdate();
+
+            TrackableRegistry registry = frameInstance.getTrackableRegistry();
+            NSArray<ARAnchor> anchors = frame.getAnchors();
+            for (ARAnchor anchor : anchors) {
+                if (anchor instanceof ARPlaneAnchor) {
+                    ARPlaneAnchor plane = anchor.as(ARPlaneAnchor.class);
+                    frameInstance.addPlane(ARKitToGdxAR.createGdxPlane(plane, enableSurfaceGeometry, registry));
+                } else if (anchor instanceof ARImageAnchor) {
+                    ARImageAnchor image = anchor.as(ARImageAnchor.class);
+                    GdxAugmentedImage augmentedImage = ARKitToGdxAR.createGdxAugmentedImage(image, registry);
+                    augmentedImage.index = augmentedImageIndices.get(augmentedImage.name, -1);
+                    frameInstance.addAugmentedImage(augmentedImage);
+                } else {
+                    frameInstance.addAnchor(ARKitToGdxAR.createGdxAnchor(anchor, registry));
+                }
+                anchor.dispose();
             }
-            anchor.dispose();
         }
 
         frameInstance.lightEstimationMode = gdxARConfiguration.lightEstimationMode;
@@ -462,20 +634,67 @@ public class ARKitApplication implements ApplicationListener, GdxAR, ARSessionDe
         }
 
         frame.dispose();
+
+        poseFilter.apply(frameInstance);
+        frameExchange.publish(frameInstance);
+        // Anchors changes are pushed by session delegate callbacks, start collecting the next ones
+        if (deltaMode)
+            frameInstance.beginUpdate();
     }
 
     @Override
     public void didAddAnchors(ARSession session, NSArray<ARAnchor> anchors) {
+        if (frameInstance.isDeltaMode())
+            updateAnchors(anchors);
     }
 
     @Override
     public void didUpdateAnchors(ARSession session, NSArray<ARAnchor> anchors) {
-
+        if (frameInstance.isDeltaMode())
+            updateAnchors(anchors);
     }
 
     @Override
     public void didRemoveAnchors(ARSession session, NSArray<ARAnchor> anchors) {
+        TrackableRegistry registry = frameInstance.getTrackableRegistry();
+        for (ARAnchor anchor : anchors) {
+            long id = registry.findId(anchor.getIdentifier());
+            if (id != -1) {
+                // ARKit removes planes merged into others, find the one that contains it
+                if (anchor instanceof ARPlaneAnchor)
+                    registry.getPlaneGraph().merge(id, frameInstance.getPlanes());
+
+                if (!frameInstance.isDeltaMode()) {
+                    registry.evict(id);
+                } else if (anchor instanceof ARPlaneAnchor) {
+                    frameInstance.removePlane(id);
+                } else if (anchor instanceof ARImageAnchor) {
+                    frameInstance.removeAugmentedImage(id);
+                } else {
+                    frameInstance.removeAnchor(id);
+                }
+            }
+            anchor.dispose();
+        }
+    }
 
+    private void updateAnchors(NSArray<ARAnchor> anchors) {
+        TrackableRegistry registry = frameInstance.getTrackableRegistry();
+        for (ARAnchor anchor : anchors) {
+            long id = ARKitToGdxAR.getId(anchor, registry);
+            if (anchor instanceof ARPlaneAnchor) {
+                ARPlaneAnchor plane = anchor.as(ARPlaneAnchor.class);
+                ARKitToGdxAR.map(plane, frameInstance.obtainPlane(id), enableSurfaceGeometry);
+            } else if (anchor instanceof ARImageAnchor) {
+                ARImageAnchor image = anchor.as(ARImageAnchor.class);
+                GdxAugmentedImage augmentedImage = frameInstance.obtainAugmentedImage(id);
+                ARKitToGdxAR.map(image, augmentedImage);
+                augmentedImage.index = augmentedImageIndices.get(augmentedImage.name, -1);
+            } else {
+                ARKitToGdxAR.map(anchor, frameInstance.obtainAnchor(id));
+            }
+            anchor.dispose();
+        }
     }
 
     @Override
@@ -517,68 +736,6 @@ public class ARKitApplication implements ApplicationListener, GdxAR, ARSessionDe
 
     }
 
-    private void addPlane(ARPlaneAnchor plane) {
-        ARPlaneGeometry geometry = plane.getGeometry();
-        // check for planes that are no longer valid
-        if (geometry.getVertexCount() == 0) {
-            geometry.dispose();
-            return;
-        }
-
-        int boundaryCount = (int) geometry.getBoundaryVertexCount();
-        VectorFloat3[] vv = geometry.getBoundaryVertices().toArray(boundaryCount);
-        ModelInstance m = getPolygonModel(boundaryCount);
-        updateVertices(m, vv, Color.YELLOW);
-
-        GdxPose gdxPose = Pools.obtain(GdxPose.class);
-        ARKitToGdxAR.map(plane.getTransform(), gdxPose);
-        m.transform.set(gdxPose.getPosition(), gdxPose.getRotation());
-        planeInstances.add(m);
-        Pools.free(gdxPose);
-        geometry.dispose();
-    }
-
-    private ModelInstance getPolygonModel(int vertexCount) {
-        ModelInstance model = polygonsCache.get(vertexCount);
-        if (model != null) return model;
-
-        builder.begin();
-        for (int i = 0; i < vertexCount; i++) {
-            MeshPartBuilder meshPartBuilder = builder.part("line" + i, GL20.GL_LINES, 3, new Material());
-            meshPartBuilder.setColor(Color.WHITE);
-            meshPartBuilder.line(0, 0, 0, 0, 0, 0);
-        }
-
-        model = new ModelInstance(builder.end());
-        polygonsCache.put(vertexCount, model);
-        return model;
-    }
-
-    private void updateVertices(ModelInstance modelInstance, VectorFloat3[] vertices, Color color) {
-        Node node = modelInstance.nodes.get(0);
-        for (int i = 0; i < vertices.length; i++) {
-            int j = i == 0 ? vertices.length - 1 : i - 1;
-            NodePart line = node.parts.get(i);
-            MeshPart lineMesh = line.meshPart;
-            Mesh mesh = lineMesh.mesh;
-            tmpVerts[0] = vertices[j].getX();
-            tmpVerts[1] = vertices[j].getY();
-            tmpVerts[2] = vertices[j].getZ();
-            tmpVerts[3] = color.r;
-            tmpVerts[4] = color.g;
-            tmpVerts[5] = color.b;
-            tmpVerts[6] = color.a;
-            tmpVerts[7] = vertices[i].getX();
-            tmpVerts[8] = vertices[i].getY();
-            tmpVerts[9] = vertices[i].getZ();
-            tmpVerts[10] = color.r;
-            tmpVerts[11] = color.g;
-            tmpVerts[12] = color.b;
-            tmpVerts[13] = color.a;
-            mesh.updateVertices(i * 14, tmpVerts);
-        }
-    }
-
     @Override
     public void coachingOverlayViewDidRequestSessionReset(ARCoachingOverlayView coachingOverlayView) {
 
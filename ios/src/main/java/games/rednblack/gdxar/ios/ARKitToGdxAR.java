@@ -16,6 +16,7 @@ import org.robovm.apple.foundation.VectorFloat4;
 import org.robovm.apple.scenekit.SCNNode;
 import org.robovm.apple.scenekit.SCNVector3;
 import org.robovm.apple.scenekit.SCNVector4;
+import org.robovm.rt.bro.ptr.FloatPtr;
 
 import games.rednblack.gdxar.GdxAnchor;
 import games.rednblack.gdxar.GdxAugmentedImage;
@@ -24,6 +25,7 @@ import games.rednblack.gdxar.GdxPlaneType;
 import games.rednblack.gdxar.GdxPose;
 import games.rednblack.gdxar.GdxTrackingMethod;
 import games.rednblack.gdxar.GdxTrackingState;
+import games.rednblack.gdxar.TrackableRegistry;
 
 /**
  * Utility class that convert ARKit classes into GdxAR
@@ -34,6 +36,7 @@ public class ARKitToGdxAR {
 
     private static final float[] tmpMatrix = new float[16];
     private static final SCNNode tmpNode = new SCNNode();
+    private static float[] tmpPolygon = new float[128];
 
     public static void map(MatrixFloat4x4 matrix, Matrix4 gdxMatrix) {
         VectorFloat4 c1 = matrix.getC1();
@@ -151,8 +154,14 @@ public class ARKitToGdxAR {
         }
     }
 
-    public static GdxPlane createGdxPlane(ARPlaneAnchor plane, boolean enableSurfaceGeometry) {
+    public static GdxPlane createGdxPlane(ARPlaneAnchor plane, boolean enableSurfaceGeometry, TrackableRegistry registry) {
         GdxPlane gdxPlane = Pools.obtain(GdxPlane.class);
+        map(plane, gdxPlane, enableSurfaceGeometry);
+        gdxPlane.id = getId(plane, registry);
+        return gdxPlane;
+    }
+
+    public static void map(ARPlaneAnchor plane, GdxPlane gdxPlane, boolean enableSurfaceGeometry) {
         ARKitToGdxAR.map(plane.getTransform(), gdxPlane.gdxPose);
         gdxPlane.trackingState = GdxTrackingState.TRACKING;
         VectorFloat3 extend = plane.getExtent();
@@ -163,32 +172,53 @@ public class ARKitToGdxAR {
         if (enableSurfaceGeometry) {
             ARPlaneGeometry geometry = plane.getGeometry();
             int boundaryCount = (int) geometry.getBoundaryVertexCount();
-            gdxPlane.vertices.ensureCapacity(boundaryCount * 2);
-            VectorFloat3[] vv = geometry.getBoundaryVertices().toArray(boundaryCount);
-            for (int i = 0; i < vv.length; i++) {
-                gdxPlane.vertices.add(vv[i].getX(), vv[i].getZ());
+            // simd_float3 is padded to 4 floats, read the whole native array at once and keep only x, z
+            if (tmpPolygon.length < boundaryCount * 4)
+                tmpPolygon = new float[boundaryCount * 4];
+            if (boundaryCount > 0)
+                geometry.getBoundaryVertices().as(FloatPtr.class).get(tmpPolygon, 0, boundaryCount * 4);
+            for (int i = 0; i < boundaryCount; i++) {
+                tmpPolygon[i * 2] = tmpPolygon[i * 4];
+                tmpPolygon[i * 2 + 1] = tmpPolygon[i * 4 + 2];
             }
+            gdxPlane.setVertices(tmpPolygon, 0, boundaryCount * 2);
             geometry.dispose();
+        } else {
+            gdxPlane.setVertices(tmpPolygon, 0, 0);
         }
-        return gdxPlane;
     }
 
-    public static GdxAugmentedImage createGdxAugmentedImage(ARImageAnchor img) {
+    public static GdxAugmentedImage createGdxAugmentedImage(ARImageAnchor img, TrackableRegistry registry) {
         GdxAugmentedImage augmentedImage = Pools.obtain(GdxAugmentedImage.class);
+        map(img, augmentedImage);
+        augmentedImage.id = getId(img, registry);
+        return augmentedImage;
+    }
+
+    public static void map(ARImageAnchor img, GdxAugmentedImage augmentedImage) {
         ARKitToGdxAR.map(img.getTransform(), augmentedImage.gdxPose);
         boolean isTracked = img.isTracked();
         augmentedImage.trackingState = GdxTrackingState.TRACKING;
         augmentedImage.trackingMethod = isTracked ? GdxTrackingMethod.FULL_TRACKING : GdxTrackingMethod.LAST_KNOWN_POSE;
         augmentedImage.name = img.getName();
-
-        return augmentedImage;
     }
 
-    public static GdxAnchor createGdxAnchor(ARAnchor anchor) {
+    public static GdxAnchor createGdxAnchor(ARAnchor anchor, TrackableRegistry registry) {
         GdxAnchor gdxAnchor = Pools.obtain(GdxAnchor.class);
+        map(anchor, gdxAnchor);
+        gdxAnchor.id = getId(anchor, registry);
+        return gdxAnchor;
+    }
+
+    public static void map(ARAnchor anchor, GdxAnchor gdxAnchor) {
         map(anchor.getTransform(), gdxAnchor.gdxPose);
         gdxAnchor.trackingState = GdxTrackingState.TRACKING;
-        gdxAnchor.id = anchor.getIdentifier().hashCode();
-        return gdxAnchor;
+    }
+
+    /**
+     * ARKit anchors are identified by an UUID, it's used as key to get a stable id from the registry.
+     */
+    public static long getId(ARAnchor anchor, TrackableRegistry registry) {
+        return registry.getId(anchor.getIdentifier());
     }
 }
@@ -15,6 +15,8 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 
+import games.rednblack.gdxar.util.ProgramBinaryCache;
+
 /**
  * Background rendering for an ARKit. This renders the camera texture in the background of the scene.
  *
@@ -58,7 +60,7 @@ class BackgroundRenderer {
     public BackgroundRenderer() {
         backgroundRendererHelper = new BackgroundRendererHelper();
         backgroundRendererHelper.createOnGlThread();
-        shader = new ShaderProgram(vertexShaderCode, fragmentShaderCode);
+        shader = ProgramBinaryCache.compile(vertexShaderCode, fragmentShaderCode);
         if (!shader.isCompiled()) {
             System.out.println(shader.getLog());
         }
@@ -65,6 +65,8 @@ public class BackgroundRendererHelper {
 
     public void createOnGlThread() {
         viewport = new CGSize(Gdx.graphics.getBackBufferWidth(), Gdx.graphics.getBackBufferHeight());
+        if (Gdx.gl30 != null)
+            StreamTexture.setSyncBackend(new GLSyncHandler());
         yTexture = new StreamTexture(GL20.GL_LUMINANCE);
         uvTexture = new StreamTexture(GL20.GL_LUMINANCE_ALPHA);
     }
@@ -96,23 +98,26 @@ public class BackgroundRendererHelper {
         CVPixelBuffer cameraImage = frame.getCapturedImage();
         int width = (int) cameraImage.getWidthOfPlane(0);
         int height = (int) cameraImage.getHeightOfPlane(0);
+        int rowStride = (int) cameraImage.getBytesPerRowOfPlane(0);
         cameraImage.lockBaseAddress(CVPixelBufferLockFlags.ReadOnly);
         VoidPtr baseAddress = cameraImage.getBaseAddressOfPlane(0);
 
         if (baseAddress != null) {
-            int size = width * height;
+            // Rows can be padded, size changes if the camera format changes
+            int size = rowStride * height;
             ByteBuffer buffer = baseAddress.as(BytePtr.class).asByteBuffer(size);
-            yTexture.update(buffer, width, height);
+            yTexture.update(buffer, width, height, rowStride);
         }
 
         width = (int) cameraImage.getWidthOfPlane(1);
         height = (int) cameraImage.getHeightOfPlane(1);
+        rowStride = (int) cameraImage.getBytesPerRowOfPlane(1);
         baseAddress = cameraImage.getBaseAddressOfPlane(1);
 
         if (baseAddress != null) {
-            int size = width * height * 2;
+            int size = rowStride * height;
             ByteBuffer buffer = baseAddress.as(BytePtr.class).asByteBuffer(size);
-            uvTexture.update(buffer, width, height);
+            uvTexture.update(buffer, width, height, rowStride);
         }
 
         cameraImage.unlockBaseAddress(CVPixelBufferLockFlags.ReadOnly);
@@ -0,0 +1,79 @@
+package games.rednblack.gdxar.ios;
+
+import com.badlogic.gdx.utils.Disposable;
+
+import org.robovm.apple.arkit.ARCamera;
+import org.robovm.apple.arkit.ARFrame;
+import org.robovm.apple.arkit.ARSession;
+import org.robovm.apple.corevideo.CVPixelBuffer;
+import org.robovm.apple.corevideo.CVPixelBufferLockFlags;
+import org.robovm.apple.foundation.MatrixFloat3x3;
+import org.robovm.rt.bro.ptr.BytePtr;
+import org.robovm.rt.bro.ptr.VoidPtr;
+
+import java.nio.ByteBuffer;
+
+import games.rednblack.gdxar.GdxCameraImage;
+
+/**
+ * Provide the captured YCbCr bi-planar image of the current ARKit frame to {@link GdxCameraImage}. Planes are
+ * wrapped without copies while the pixel buffer is locked, it's unlocked and released with the last reference.
+ *
+ * @author fgnm
+ */
+class CameraImageSource implements GdxCameraImage.Source {
+    private final ARSession session;
+
+    CameraImageSource(ARSession session) {
+        this.session = session;
+    }
+
+    @Override
+    public GdxCameraImage acquire() {
+        final ARFrame frame = session.getCurrentFrame();
+        if (frame == null) return null;
+
+        final CVPixelBuffer pixelBuffer = frame.getCapturedImage();
+        pixelBuffer.lockBaseAddress(CVPixelBufferLockFlags.ReadOnly);
+        Disposable nativeImage = new Disposable() {
+            @Override
+            public void dispose() {
+                pixelBuffer.unlockBaseAddress(CVPixelBufferLockFlags.ReadOnly);
+                pixelBuffer.dispose();
+                frame.dispose();
+            }
+        };
+
+        VoidPtr yAddress = pixelBuffer.getBaseAddressOfPlane(0);
+        VoidPtr uvAddress = pixelBuffer.getBaseAddressOfPlane(1);
+        if (yAddress == null || uvAddress == null) {
+            nativeImage.dispose();
+            return null;
+        }
+
+        GdxCameraImage cameraImage = new GdxCameraImage();
+        int width = (int) pixelBuffer.getWidthOfPlane(0);
+        int height = (int) pixelBuffer.getHeightOfPlane(0);
+        int yRowStride = (int) pixelBuffer.getBytesPerRowOfPlane(0);
+        ByteBuffer yBuffer = yAddress.as(BytePtr.class).asByteBuffer(yRowStride * height);
+        cameraImage.setYPlane(yBuffer.asReadOnlyBuffer(), width, height, yRowStride, 1);
+
+        // Cb and Cr are interleaved, V is a view of the same plane starting at the second byte
+        int uvRowStride = (int) pixelBuffer.getBytesPerRowOfPlane(1);
+        ByteBuffer uvBuffer = uvAddress.as(BytePtr.class).asByteBuffer(uvRowStride * (int) pixelBuffer.getHeightOfPlane(1));
+        ByteBuffer uBuffer = uvBuffer.asReadOnlyBuffer();
+        uvBuffer.position(1);
+        ByteBuffer vBuffer = uvBuffer.slice().asReadOnlyBuffer();
+        cameraImage.setUVPlanes(uBuffer, vBuffer, uvRowStride, 2);
+
+        // Column major, focal lengths on the diagonal and principal point in the last column
+        ARCamera camera = frame.getCamera();
+        MatrixFloat3x3 intrinsics = camera.getIntrinsics();
+        cameraImage.setIntrinsics(intrinsics.getC1().getX(), intrinsics.getC2().getY(),
+                intrinsics.getC3().getX(), intrinsics.getC3().getY());
+        camera.dispose();
+
+        cameraImage.setNativeImage((long) (frame.getTimestamp() * 1e9), nativeImage);
+        return cameraImage;
+    }
+}
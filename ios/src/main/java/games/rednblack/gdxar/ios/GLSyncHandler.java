@@ -0,0 +1,46 @@
+package games.rednblack.gdxar.ios;
+
+import com.badlogic.gdx.graphics.GL30;
+
+import org.robovm.rt.bro.Bro;
+import org.robovm.rt.bro.annotation.Bridge;
+import org.robovm.rt.bro.annotation.Library;
+import org.robovm.rt.bro.annotation.Pointer;
+
+import games.rednblack.gdxar.util.StreamTexture;
+
+/**
+ * Sync objects API of GL ES 3.0 for {@link StreamTexture}, bound directly from the OpenGLES framework.
+ *
+ * @author fgnm
+ */
+@Library("OpenGLES")
+class GLSyncHandler implements StreamTexture.SyncBackend {
+    static {
+        Bro.bind(GLSyncHandler.class);
+    }
+
+    @Override
+    public long glFenceSync() {
+        return fenceSync(GL30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+    }
+
+    @Override
+    public int glClientWaitSync(long sync, long timeout) {
+        return clientWaitSync(sync, GL30.GL_SYNC_FLUSH_COMMANDS_BIT, timeout);
+    }
+
+    @Override
+    public void glDeleteSync(long sync) {
+        deleteSync(sync);
+    }
+
+    @Bridge(symbol = "glFenceSync")
+    private static native @Pointer long fenceSync(int condition, int flags);
+
+    @Bridge(symbol = "glClientWaitSync")
+    private static native int clientWaitSync(@Pointer long sync, int flags, long timeout);
+
+    @Bridge(symbol = "glDeleteSync")
+    private static native void deleteSync(@Pointer long sync);
+}